@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.commands;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * An immutable, pre-validated TSPL2 command.
+ * <p>
+ * The source command is validated and encoded once when frozen; afterwards the
+ * encoded bytes are written as they are. Frozen commands do not keep a reference
+ * to their source, so changing the source afterwards has no effect, and they can be
+ * shared between labels and sender threads. This makes header elements like
+ * <code>SIZE</code>, <code>GAP</code>, <code>DIRECTION</code> and <code>CLS</code>
+ * free to reuse.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ * @see TSPLCommand#freeze(Charset)
+ */
+public final class FrozenCommand implements TSPLCommand {
+    private final Class<? extends TSPLCommand> commandType;
+    private final Charset charset;
+    private final byte[] bytes;
+    private final String command;
+
+    private FrozenCommand(Class<? extends TSPLCommand> commandType, Charset charset,
+                          byte[] bytes, String command) {
+        this.commandType = commandType;
+        this.charset = charset;
+        this.bytes = bytes;
+        this.command = command;
+    }
+
+    /**
+     * validates and encodes the given command.
+     *
+     * @param command command to freeze
+     * @param charset charset to encode with
+     * @return the frozen command, or the given one if it is already frozen with the
+     * same charset
+     */
+    public static FrozenCommand of(TSPLCommand command, Charset charset) {
+        if (command instanceof FrozenCommand
+                && ((FrozenCommand) command).charset.equals(charset)) {
+            return (FrozenCommand) command;
+        }
+
+        Class<? extends TSPLCommand> commandType = command instanceof FrozenCommand
+                ? ((FrozenCommand) command).commandType : command.getClass();
+
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer(64, charset);
+        command.writeTo(buffer);
+        return new FrozenCommand(commandType, charset, buffer.toByteArray(), buffer.toString());
+    }
+
+    /**
+     * @return class of the command this one was frozen from
+     */
+    public Class<? extends TSPLCommand> getCommandType() {
+        return commandType;
+    }
+
+    /**
+     * @return charset of the encoded bytes
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return copy of the encoded bytes
+     */
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * writes the cached bytes, or re-encodes the cached command when the buffer
+     * uses a different charset.
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
+        if (charset.equals(buffer.getCharset())) {
+            buffer.append(bytes);
+        } else {
+            buffer.append(command);
+        }
+    }
+
+    /**
+     * @return this command
+     */
+    @Override
+    public FrozenCommand freeze() {
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FrozenCommand)) {
+            return false;
+        }
+        FrozenCommand that = (FrozenCommand) o;
+        return commandType.equals(that.commandType) && charset.equals(that.charset)
+                && Arrays.equals(bytes, that.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * commandType.hashCode() + Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "FrozenCommand(" + commandType.getSimpleName() + ", " + command.trim() + ")";
+    }
+}
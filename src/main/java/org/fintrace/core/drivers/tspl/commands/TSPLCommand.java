@@ -15,6 +15,10 @@
  */
 package org.fintrace.core.drivers.tspl.commands;
 
+import java.nio.charset.Charset;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
 /**
  * TSPL2 Command set
  *
@@ -28,4 +32,36 @@ public interface TSPLCommand {
      * @return
      */
     String getCommand();
+
+    /**
+     * writes the TSPL2 command into the given buffer. Commands of this driver
+     * write their bytes directly, the default implementation falls back to
+     * {@link #getCommand()}.
+     *
+     * @param buffer buffer to write into
+     */
+    default void writeTo(TSPLCommandBuffer buffer) {
+        buffer.append(getCommand());
+    }
+
+    /**
+     * validates and encodes this command once with US-ASCII.
+     *
+     * @return immutable copy of this command
+     * @see #freeze(Charset)
+     */
+    default FrozenCommand freeze() {
+        return freeze(US_ASCII);
+    }
+
+    /**
+     * validates and encodes this command once. The returned command caches the encoded
+     * bytes and can be shared between labels and threads.
+     *
+     * @param charset charset to encode with, should be the one of the connection client
+     * @return immutable copy of this command
+     */
+    default FrozenCommand freeze(Charset charset) {
+        return FrozenCommand.of(this, charset);
+    }
 }
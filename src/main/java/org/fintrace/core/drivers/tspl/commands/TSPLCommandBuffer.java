@@ -0,0 +1,514 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.commands;
+
+import org.fintrace.core.drivers.tspl.commands.system.MeasurementSystem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Growable byte buffer into which {@link TSPLCommand}s encode themselves.
+ * <p>
+ * Keywords, separators and numbers are written as ASCII bytes directly into the
+ * backing array, only user content (text, barcode data, ...) goes through the
+ * configured charset. This avoids the intermediate <code>StringBuilder</code>,
+ * <code>String</code> and <code>getBytes</code> copies of the
+ * {@link TSPLCommand#getCommand()} path.
+ * </p>
+ * <p>
+ * A buffer can be {@link #clear() cleared} and re-used for the next label. It is
+ * not thread safe.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public class TSPLCommandBuffer {
+    private static final int DEFAULT_CAPACITY = 512;
+    private static final byte[] NULL_BYTES = {'n', 'u', 'l', 'l'};
+    private static final int MAX_DECIMALS = 9;
+    private static final int INCH_DECIMALS = 3;
+    private static final int MM_DECIMALS = 2;
+    private static final double FIXED_POINT_LIMIT = 1e15;
+    private static final float MIN_PLAIN_FLOAT = 1e-3f;
+    private static final float MAX_PLAIN_FLOAT = 1e7f;
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L,
+            1000000L, 10000000L, 100000000L, 1000000000L};
+    private static final byte[] INT_MIN_BYTES = Integer.toString(Integer.MIN_VALUE)
+            .getBytes(US_ASCII);
+
+    private final Charset charset;
+    private final boolean asciiCompatible;
+    private byte[] buf;
+    private int count;
+
+    /**
+     * Creates a buffer which encodes content as US-ASCII.
+     */
+    public TSPLCommandBuffer() {
+        this(DEFAULT_CAPACITY, US_ASCII);
+    }
+
+    /**
+     * @param charset charset used for the content of the commands
+     */
+    public TSPLCommandBuffer(Charset charset) {
+        this(DEFAULT_CAPACITY, charset);
+    }
+
+    /**
+     * @param initialCapacity initial size of the backing array in bytes
+     * @param charset         charset used for the content of the commands
+     */
+    public TSPLCommandBuffer(int initialCapacity, Charset charset) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Negative initial capacity: " + initialCapacity);
+        }
+        this.charset = charset;
+        this.asciiCompatible = US_ASCII.equals(charset) || UTF_8.equals(charset)
+                || ISO_8859_1.equals(charset);
+        this.buf = new byte[initialCapacity];
+    }
+
+    /**
+     * Encodes a single command and returns it as String. Used by the commands to
+     * derive {@link TSPLCommand#getCommand()} from their byte encoding. UTF-8 encodes
+     * any text, so the String holds the text of the command unchanged.
+     *
+     * @param command command to encode
+     * @return the TSPL2 command
+     */
+    public static String encodeToString(TSPLCommand command) {
+        return encodeToString(command, UTF_8);
+    }
+
+    /**
+     * Encodes a single command with the given charset and decodes it with the same
+     * charset, e.g. to show the command as the printer receives it.
+     *
+     * @param command command to encode
+     * @param charset charset of the encoding
+     * @return the TSPL2 command, text the charset cannot encode replaced
+     */
+    public static String encodeToString(TSPLCommand command, Charset charset) {
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer(64, charset);
+        command.writeTo(buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * @return the charset used for the content of the commands
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * appends a single byte
+     *
+     * @param b byte to append
+     * @return this buffer
+     */
+    public TSPLCommandBuffer append(byte b) {
+        ensureCapacity(count + 1);
+        buf[count++] = b;
+        return this;
+    }
+
+    /**
+     * appends the given bytes as they are
+     *
+     * @param bytes bytes to append
+     * @return this buffer
+     */
+    public TSPLCommandBuffer append(byte[] bytes) {
+        return append(bytes, 0, bytes.length);
+    }
+
+    /**
+     * appends <code>length</code> bytes starting at <code>offset</code>
+     *
+     * @param bytes  source array
+     * @param offset start offset in the source array
+     * @param length number of bytes to append
+     * @return this buffer
+     */
+    public TSPLCommandBuffer append(byte[] bytes, int offset, int length) {
+        ensureCapacity(count + length);
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+        return this;
+    }
+
+    /**
+     * appends the string encoded with the buffer's charset. <code>null</code> is
+     * written as "null", same as <code>StringBuilder</code> does.
+     *
+     * @param s string to append
+     * @return this buffer
+     */
+    public TSPLCommandBuffer append(String s) {
+        if (s == null) {
+            return append(NULL_BYTES);
+        }
+
+        int length = s.length();
+        ensureCapacity(count + length);
+        int position = count;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80 || !asciiCompatible) {
+                // slow path, let the charset deal with the remaining characters
+                count = position;
+                return append(s.substring(i).getBytes(charset));
+            }
+            buf[position++] = (byte) c;
+        }
+        count = position;
+        return this;
+    }
+
+    /**
+     * appends the decimal representation of the value
+     *
+     * @param value value to append
+     * @return this buffer
+     */
+    public TSPLCommandBuffer append(int value) {
+        if (value == Integer.MIN_VALUE) {
+            return append(INT_MIN_BYTES);
+        }
+
+        int abs = value < 0 ? -value : value;
+        int length = stringSize(abs) + (value < 0 ? 1 : 0);
+        ensureCapacity(count + length);
+
+        int position = count + length;
+        do {
+            buf[--position] = (byte) ('0' + abs % 10);
+            abs /= 10;
+        } while (abs != 0);
+
+        if (value < 0) {
+            buf[--position] = '-';
+        }
+        count += length;
+        return this;
+    }
+
+    /**
+     * appends the decimal representation of the value or "null".
+     *
+     * @param value value to append
+     * @return this buffer
+     */
+    public TSPLCommandBuffer append(Integer value) {
+        if (value == null) {
+            return append(NULL_BYTES);
+        }
+        return append(value.intValue());
+    }
+
+    /**
+     * appends the decimal representation of the value
+     *
+     * @param value value to append
+     * @return this buffer
+     */
+    public TSPLCommandBuffer append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+
+        if (value < 0) {
+            append((byte) '-');
+            value = -value;
+        }
+        writeDigits(value, stringSize(value));
+        return this;
+    }
+
+    /**
+     * appends the value without decimals if it is a whole number, otherwise with the
+     * fewest decimals that still read back as the same float, as
+     * {@link Float#toString(float)} writes it. The digits are written by
+     * {@link #append(float, int)} without allocating; only values written in
+     * scientific notation (below 0.001 or from 10<sup>7</sup>) fall back to
+     * {@link Float#toString(float)}. Use {@link #append(float, int)} for a fixed
+     * precision.
+     *
+     * @param value value to append
+     * @return this buffer
+     */
+    public TSPLCommandBuffer append(float value) {
+        if (value - (int) value == 0) {
+            return append((int) value);
+        }
+
+        float magnitude = Math.abs(value);
+        if (magnitude >= MIN_PLAIN_FLOAT && magnitude < MAX_PLAIN_FLOAT) {
+            for (int decimals = 1; decimals <= MAX_DECIMALS; decimals++) {
+                // half even, like Float.toString on a tie between two shortest values
+                long units = (long) Math.rint((double) magnitude * POWERS_OF_TEN[decimals]);
+                if ((float) ((double) units / POWERS_OF_TEN[decimals]) == magnitude) {
+                    return appendFixed(value < 0, units, decimals);
+                }
+            }
+        }
+        return append(Float.toString(value));
+    }
+
+    /**
+     * appends the value without decimals if it is a whole number, otherwise as
+     * the float representation.
+     *
+     * @param value value to append
+     * @return this buffer
+     * @throws NullPointerException if the value is <code>null</code>
+     */
+    public TSPLCommandBuffer append(Float value) {
+        return append(value.floatValue());
+    }
+
+    /**
+     * appends the value rounded (half up) to at most the given number of decimals.
+     * Trailing zeros and the decimal point of whole numbers are omitted, so
+     * <code>2.50</code> is written as <code>2.5</code> and <code>3.0</code> as
+     * <code>3</code>. Nothing is allocated except for values out of the fixed point
+     * range (more than 15 digits, NaN, infinity), which fall back to
+     * {@link Float#toString(float)}.
+     *
+     * @param value    value to append
+     * @param decimals maximum number of decimals, 0 to {@value #MAX_DECIMALS}
+     * @return this buffer
+     */
+    public TSPLCommandBuffer append(float value, int decimals) {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("Decimals out of range: " + decimals);
+        }
+
+        double scaled = Math.abs((double) value) * POWERS_OF_TEN[decimals];
+        if (!(scaled < FIXED_POINT_LIMIT)) {
+            return append(Float.toString(value));
+        }
+
+        return appendFixed(value < 0, Math.round(scaled), decimals);
+    }
+
+    /**
+     * writes a fixed point number of <code>units</code> of 10<sup>-decimals</sup>,
+     * omitting the trailing zeros.
+     */
+    private TSPLCommandBuffer appendFixed(boolean negative, long units, int decimals) {
+        if (units == 0) {
+            return append((byte) '0');
+        }
+        if (negative) {
+            append((byte) '-');
+        }
+
+        long integer = units / POWERS_OF_TEN[decimals];
+        long fraction = units % POWERS_OF_TEN[decimals];
+        writeDigits(integer, stringSize(integer));
+
+        if (fraction != 0) {
+            int digits = decimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            append((byte) '.');
+            writeDigits(fraction, digits);
+        }
+        return this;
+    }
+
+    /**
+     * appends a length with the precision of its measurement system: whole dots,
+     * {@value #INCH_DECIMALS} decimals for inches and {@value #MM_DECIMALS} for
+     * millimetres (finer than one dot at 600 dpi). The unit itself is not written.
+     *
+     * @param value             value to append
+     * @param measurementSystem unit of the value, <code>null</code> for
+     *                          {@link #append(float)}
+     * @return this buffer
+     */
+    public TSPLCommandBuffer append(float value, MeasurementSystem measurementSystem) {
+        if (measurementSystem == null) {
+            return append(value);
+        }
+
+        switch (measurementSystem) {
+            case DOT:
+                return append(value, 0);
+            case METRIC:
+                return append(value, MM_DECIMALS);
+            default:
+                return append(value, INCH_DECIMALS);
+        }
+    }
+
+    /**
+     * appends a length with the precision of its measurement system.
+     *
+     * @param value             value to append
+     * @param measurementSystem unit of the value
+     * @return this buffer
+     * @throws NullPointerException if the value is <code>null</code>
+     * @see #append(float, MeasurementSystem)
+     */
+    public TSPLCommandBuffer append(Float value, MeasurementSystem measurementSystem) {
+        return append(value.floatValue(), measurementSystem);
+    }
+
+    /**
+     * appends the encoded form of the given command.
+     *
+     * @param command command to append
+     * @return this buffer
+     */
+    public TSPLCommandBuffer append(TSPLCommand command) {
+        command.writeTo(this);
+        return this;
+    }
+
+    /**
+     * @return number of bytes written to this buffer
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * discards the bytes written after the given size.
+     *
+     * @param size new size, not larger than the current one
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > count) {
+            throw new IndexOutOfBoundsException("Size: " + size + ", Current: " + count);
+        }
+        count = size;
+    }
+
+    /**
+     * discards the content of this buffer, keeping the allocated array for re-use.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * @return copy of the content of this buffer
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    /**
+     * Returns a read-only view over the content of this buffer. The view is only
+     * valid until the buffer is modified.
+     *
+     * @return read-only buffer positioned at 0 and limited to {@link #size()}
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+    }
+
+    /**
+     * Direct access to the backing array. Only the first {@link #size()} bytes are
+     * valid.
+     *
+     * @return the backing array
+     */
+    public byte[] array() {
+        return buf;
+    }
+
+    /**
+     * writes the content of this buffer to the given stream.
+     *
+     * @param out stream to write to
+     * @throws IOException in case of I/O errors
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    /**
+     * copies the content of this buffer into the given byte buffer.
+     *
+     * @param target destination buffer
+     * @throws java.nio.BufferOverflowException if there is insufficient space in
+     *                                          the target
+     */
+    public void writeTo(ByteBuffer target) {
+        target.put(buf, 0, count);
+    }
+
+    /**
+     * @return the content of the buffer decoded with the buffer's charset
+     */
+    @Override
+    public String toString() {
+        return new String(buf, 0, count, charset);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(minCapacity, buf.length << 1));
+        }
+    }
+
+    /**
+     * writes the non negative value as exactly <code>digits</code> digits,
+     * left padded with zeros.
+     */
+    private void writeDigits(long value, int digits) {
+        ensureCapacity(count + digits);
+        int position = count + digits;
+        while (position > count) {
+            buf[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+    }
+
+    private static int stringSize(long x) {
+        int size = 1;
+        while (x >= 10) {
+            x /= 10;
+            size++;
+        }
+        return size;
+    }
+
+    private static int stringSize(int x) {
+        int size = 1;
+        while (x >= 10) {
+            x /= 10;
+            size++;
+        }
+        return size;
+    }
+}
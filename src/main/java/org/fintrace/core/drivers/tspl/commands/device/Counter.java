@@ -19,6 +19,7 @@ import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.DriverConstants;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.EMPTY_SPACE;
@@ -66,6 +67,14 @@ public class Counter implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
 
         if (counterNumber == null) {
             throw new LabelParserException("SET COUNTER: counter number is required");
@@ -83,20 +92,18 @@ public class Counter implements TSPLCommand {
             throw new LabelParserException("SET COUNTER: Invalid increment of the counter.");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(DriverConstants.SET_PREFIX);
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(DriverConstants.SET_PREFIX);
+        buffer.append(EMPTY_SPACE)
                 .append("COUNTER")
                 .append(EMPTY_SPACE)
                 .append("@").append(counterNumber)
                 .append(EMPTY_SPACE);
 
         if (step >= 0) {
-            commandBuilder.append("+");
+            buffer.append("+");
         }
 
-        commandBuilder.append(step)
+        buffer.append(step)
                 .append(LF);
-
-        return commandBuilder.toString();
     }
 }
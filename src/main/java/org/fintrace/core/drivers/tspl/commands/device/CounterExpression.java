@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.device;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -54,6 +55,14 @@ public class CounterExpression implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (counterNumber == null) {
             throw new LabelParserException("@n \"expression\": counter number is required");
         }
@@ -62,12 +71,10 @@ public class CounterExpression implements TSPLCommand {
             throw new LabelParserException("@n \"expression\": Counters are only available 0-60");
         }
 
-        StringBuilder commandBuilder = new StringBuilder("@");
-        commandBuilder.append(counterNumber)
+        buffer.append("@");
+        buffer.append(counterNumber)
                 .append("=")
                 .append(ESCAPED_DOUBLE_QUOTE).append(expression).append(ESCAPED_DOUBLE_QUOTE)
                 .append(LF);
-
-        return commandBuilder.toString();
     }
 }
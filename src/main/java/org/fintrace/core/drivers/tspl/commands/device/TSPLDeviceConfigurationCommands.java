@@ -17,6 +17,7 @@ package org.fintrace.core.drivers.tspl.commands.device;
 
 import org.fintrace.core.drivers.tspl.DriverConstants;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.commands.values.BackCommandValues;
 import org.fintrace.core.drivers.tspl.commands.values.CommandValues;
 import org.fintrace.core.drivers.tspl.commands.values.EncoderCommandValues;
@@ -24,6 +25,7 @@ import org.fintrace.core.drivers.tspl.commands.values.HeadCommandValues;
 import org.fintrace.core.drivers.tspl.commands.values.PartialCutterValues;
 import org.fintrace.core.drivers.tspl.commands.values.PeelCommandValues;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.fintrace.core.drivers.tspl.DriverConstants.EMPTY_SPACE;
 
 /**
@@ -110,6 +112,7 @@ public enum TSPLDeviceConfigurationCommands implements TSPLCommand {
 
     private DeviceConfigCommand command;
     private CommandValues commandValue;
+    private byte[] commandBytes;
 
     /**
      * @param command
@@ -119,11 +122,19 @@ public enum TSPLDeviceConfigurationCommands implements TSPLCommand {
                                     CommandValues commandValue) {
         this.command = command;
         this.commandValue = commandValue;
+        this.commandBytes = getCommand().getBytes(US_ASCII);
     }
 
     /**
      * {@inheritDoc}
      */
+    /**
+     * @return the setting changed by this command
+     */
+    public DeviceConfigCommand getConfigCommand() {
+        return command;
+    }
+
     @Override
     public String getCommand() {
         StringBuilder commandBuilder = new StringBuilder(DriverConstants.SET_PREFIX);
@@ -134,4 +145,12 @@ public enum TSPLDeviceConfigurationCommands implements TSPLCommand {
 
         return commandBuilder.toString();
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
+        buffer.append(commandBytes);
+    }
 }
@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -107,6 +108,14 @@ public class AztecBarcode implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("AZTEC: x and y positions are required");
         }
@@ -126,56 +135,55 @@ public class AztecBarcode implements TSPLCommand {
             throw new LabelParserException("AZTEC: invalid error control parameter");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(AZTEC.name());
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(AZTEC.name());
+        buffer.append(EMPTY_SPACE)
                 .append(xCoordinate).append(COMMA)
                 .append(yCoordinate).append(COMMA)
                 .append(rotation.getRotation()).append(COMMA);
 
         if (moduleSize == null) {
-            commandBuilder.append("6").append(COMMA);
+            buffer.append("6").append(COMMA);
         } else {
-            commandBuilder.append(moduleSize).append(COMMA);
+            buffer.append(moduleSize).append(COMMA);
         }
 
         if (errorControl == null) {
-            commandBuilder.append("0").append(COMMA);
+            buffer.append("0").append(COMMA);
         } else {
-            commandBuilder.append(errorControl).append(COMMA);
+            buffer.append(errorControl).append(COMMA);
         }
 
-        commandBuilder.append(escapeFlag).append(COMMA);
+        buffer.append(String.valueOf(escapeFlag)).append(COMMA);
 
         if (menu == null) {
-            commandBuilder.append("0").append(COMMA);
+            buffer.append("0").append(COMMA);
         } else {
-            commandBuilder.append(menu ? "1" : "0").append(COMMA);
+            buffer.append(menu ? "1" : "0").append(COMMA);
         }
 
         if (multi == null) {
-            commandBuilder.append("6").append(COMMA);
+            buffer.append("6").append(COMMA);
         } else {
-            commandBuilder.append(multi).append(COMMA);
+            buffer.append(multi).append(COMMA);
         }
 
         if (rev == null) {
-            commandBuilder.append("0").append(COMMA);
+            buffer.append("0").append(COMMA);
         } else {
-            commandBuilder.append(rev ? "1" : "0").append(COMMA);
+            buffer.append(rev ? "1" : "0").append(COMMA);
         }
 
         if (bytes != null) {
-            commandBuilder.append(bytes).append(COMMA)
+            buffer.append(bytes).append(COMMA)
                     .append("\"");
         }
 
-        commandBuilder.append(content);
+        buffer.append(content);
 
         if (bytes != null) {
-            commandBuilder.append("\"");
+            buffer.append("\"");
         }
 
-        commandBuilder.append(LF);
-        return commandBuilder.toString();
+        buffer.append(LF);
     }
 }
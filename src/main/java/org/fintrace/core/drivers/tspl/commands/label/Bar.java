@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -72,6 +73,14 @@ public class Bar implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("BAR: x and y positions are required");
         }
@@ -84,11 +93,11 @@ public class Bar implements TSPLCommand {
             throw new LabelParserException("BAR: height is required");
         }
 
-        return LabelFormatCommand.BAR.name() + EMPTY_SPACE
-                + xCoordinate + COMMA
-                + yCoordinate + COMMA
-                + width + COMMA
-                + height
-                + LF;
+        buffer.append(LabelFormatCommand.BAR.name()).append(EMPTY_SPACE)
+                .append(xCoordinate).append(COMMA)
+                .append(yCoordinate).append(COMMA)
+                .append(width).append(COMMA)
+                .append(height)
+                .append(LF);
     }
 }
@@ -18,10 +18,10 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
-import static org.fintrace.core.drivers.tspl.commands.label.TSPLLabelUtils.hasFloatDecimals;
 
 /**
  * This command prints 1D barcodes.
@@ -537,6 +537,14 @@ public class Barcode implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("BARCODE: x and y positions are required");
         }
@@ -549,32 +557,21 @@ public class Barcode implements TSPLCommand {
             throw new LabelParserException("BARCODE: content is required");
         }
 
-        if (hrcAlignment == null) {
-            hrcAlignment = BarcodeHRCAlignment.NO_HRC_DISPLAY;
-        }
-
-        if (rotation == null) {
-            rotation = BarcodeRotation.NO_ROTATION;
-        }
+        BarcodeHRCAlignment hrcAlignment = this.hrcAlignment == null
+                ? BarcodeHRCAlignment.NO_HRC_DISPLAY : this.hrcAlignment;
+        BarcodeRotation rotation = this.rotation == null
+                ? BarcodeRotation.NO_ROTATION : this.rotation;
 
-        StringBuilder commandBuilder = new StringBuilder(LabelFormatCommand.BARCODE.name());
-        commandBuilder.append(EMPTY_SPACE);
+        buffer.append(LabelFormatCommand.BARCODE.name());
+        buffer.append(EMPTY_SPACE);
 
-        if (!hasFloatDecimals(xCoordinate)) {
-            commandBuilder.append(xCoordinate.intValue());
-        } else {
-            commandBuilder.append(xCoordinate);
-        }
+        buffer.append(xCoordinate);
 
-        commandBuilder.append(COMMA);
+        buffer.append(COMMA);
 
-        if (!hasFloatDecimals(yCoordinate)) {
-            commandBuilder.append(yCoordinate.intValue());
-        } else {
-            commandBuilder.append(yCoordinate);
-        }
+        buffer.append(yCoordinate);
 
-        commandBuilder.append(COMMA)
+        buffer.append(COMMA)
                 .append(EMPTY_SPACE)
                 .append(ESCAPED_DOUBLE_QUOTE)
                 .append(codeType.getCodeType()).append(ESCAPED_DOUBLE_QUOTE).append(COMMA)
@@ -585,12 +582,10 @@ public class Barcode implements TSPLCommand {
                 .append(wide).append(COMMA);
 
         if (alignment != null) {
-            commandBuilder.append(alignment.getAlignment()).append(COMMA);
+            buffer.append(alignment.getAlignment()).append(COMMA);
         }
 
-        commandBuilder.append(ESCAPED_DOUBLE_QUOTE).append(content).append(ESCAPED_DOUBLE_QUOTE)
+        buffer.append(ESCAPED_DOUBLE_QUOTE).append(content).append(ESCAPED_DOUBLE_QUOTE)
                 .append(LF);
-
-        return commandBuilder.toString();
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.commands.label;
+
+import lombok.Builder;
+import lombok.Data;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
+
+/**
+ * A label formatting command with the region (in dots) it draws into.
+ * <p>
+ * Writes the wrapped command unchanged, the region is only known to the driver. It
+ * lets connection clients with incremental updates enabled
+ * {@link Erase erase} and redraw just this element when it changes, which is not
+ * possible for commands whose size depends on their content, e.g. TEXT or BARCODE.
+ * The region must cover everything the command draws.
+ * </p>
+ * <pre>
+ * BoundedElement.builder()
+ *         .element(Barcode.builder()...build())
+ *         .xCoordinate(10).yCoordinate(100).width(400).height(120)
+ *         .build();
+ * </pre>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+@Data
+@Builder
+public class BoundedElement implements TSPLCommand {
+
+    /**
+     * The wrapped label formatting command
+     */
+    private TSPLCommand element;
+
+    /**
+     * The x-coordinate of the region (in dots)
+     */
+    private Integer xCoordinate;
+
+    /**
+     * The y-coordinate of the region (in dots)
+     */
+    private Integer yCoordinate;
+
+    /**
+     * The region width in x-axis direction (in dots)
+     */
+    private Integer width;
+
+    /**
+     * The region height in y-axis direction (in dots)
+     */
+    private Integer height;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
+        if (element == null) {
+            throw new LabelParserException("BOUNDED: element is required");
+        }
+
+        if (xCoordinate == null || yCoordinate == null) {
+            throw new LabelParserException("BOUNDED: x and y positions are required");
+        }
+
+        if (width == null || height == null) {
+            throw new LabelParserException("BOUNDED: please specify width and height");
+        }
+
+        element.writeTo(buffer);
+    }
+}
@@ -18,9 +18,9 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
-import static org.fintrace.core.drivers.tspl.commands.label.TSPLLabelUtils.hasFloatDecimals;
 
 /**
  * This command draws rectangles on the label.<br>
@@ -89,8 +89,16 @@ public class Box implements TSPLCommand {
      */
     @Override
     public String getCommand() {
-        StringBuilder commandBuilder = new StringBuilder(LabelFormatCommand.BOX.name());
-        commandBuilder.append(EMPTY_SPACE)
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
+        buffer.append(LabelFormatCommand.BOX.name());
+        buffer.append(EMPTY_SPACE)
                 .append(xCoordinate).append(COMMA)
                 .append(yCoordinate).append(COMMA)
                 .append(xEndCoordinate).append(COMMA)
@@ -98,16 +106,10 @@ public class Box implements TSPLCommand {
                 .append(lineThickness);
 
         if (radius != null) {
-            commandBuilder.append(COMMA);
-            if (!hasFloatDecimals(radius)) {
-                commandBuilder.append(radius.intValue());
-            } else {
-                commandBuilder.append(radius);
-            }
+            buffer.append(COMMA);
+            buffer.append(radius);
         }
 
-        commandBuilder.append(LF);
-
-        return commandBuilder.toString();
+        buffer.append(LF);
     }
 }
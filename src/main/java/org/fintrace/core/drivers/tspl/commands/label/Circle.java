@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -64,6 +65,14 @@ public class Circle implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (xStart == null || yStart == null) {
             throw new LabelParserException("CIRCLE: x and y positions are required");
         }
@@ -76,14 +85,12 @@ public class Circle implements TSPLCommand {
             throw new LabelParserException("CIRCLE: please specify thickness");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(CIRCLE.name());
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(CIRCLE.name());
+        buffer.append(EMPTY_SPACE)
                 .append(xStart).append(COMMA)
                 .append(yStart).append(COMMA)
                 .append(diameter).append(COMMA)
                 .append(thickness)
                 .append(LF);
-
-        return commandBuilder.toString();
     }
 }
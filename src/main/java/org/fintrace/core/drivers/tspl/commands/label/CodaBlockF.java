@@ -18,10 +18,10 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
-import static org.fintrace.core.drivers.tspl.commands.label.TSPLLabelUtils.hasFloatDecimals;
 
 /**
  * This command draws CODABLOCK F mode barcode.
@@ -70,6 +70,14 @@ public class CodaBlockF implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("CODABLOCK: x and y co-ordinates are required");
         }
@@ -78,38 +86,28 @@ public class CodaBlockF implements TSPLCommand {
             throw new LabelParserException("CODABLOCK: please specify a rotation");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(LabelFormatCommand.CODABLOCK.name());
-        commandBuilder.append(EMPTY_SPACE);
+        buffer.append(LabelFormatCommand.CODABLOCK.name());
+        buffer.append(EMPTY_SPACE);
 
-        if (!hasFloatDecimals(xCoordinate)) {
-            commandBuilder.append(xCoordinate.intValue());
-        } else {
-            commandBuilder.append(xCoordinate);
-        }
+        buffer.append(xCoordinate);
 
-        commandBuilder.append(COMMA);
+        buffer.append(COMMA);
 
-        if (!hasFloatDecimals(yCoordinate)) {
-            commandBuilder.append(yCoordinate.intValue());
-        } else {
-            commandBuilder.append(yCoordinate);
-        }
+        buffer.append(yCoordinate);
 
-        commandBuilder.append(COMMA)
+        buffer.append(COMMA)
                 .append(rotation.getRotation()).append(COMMA);
 
         if (rowHeight != null) {
-            commandBuilder.append(rowHeight).append(COMMA);
+            buffer.append(rowHeight).append(COMMA);
         }
 
         if (moduleWidth != null) {
-            commandBuilder.append(moduleWidth).append(COMMA);
+            buffer.append(moduleWidth).append(COMMA);
         }
 
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(EMPTY_SPACE)
                 .append(ESCAPED_DOUBLE_QUOTE).append(content).append(ESCAPED_DOUBLE_QUOTE)
                 .append(LF);
-
-        return commandBuilder.toString();
     }
 }
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.commands.label;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * A label template whose <code>&lt;&lt;&lt;name&gt;&gt;&gt;</code> placeholders are
+ * parsed only once.
+ * <p>
+ * The template is split into pre-encoded literal byte segments and parameter slots,
+ * so rendering a label is a single pass that copies the literals and encodes the
+ * parameter values into a (re-usable) {@link TSPLCommandBuffer}. Values are written
+ * as they are, there is no regular expression involved, thus <code>$</code> and
+ * <code>\</code> in values are safe.
+ * </p>
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ * </p>
+ *
+ * <pre>
+ * CompiledTemplate template = CompiledTemplate.compile(
+ *         "TEXT 10,10,\"3\",0,1,1,\"&lt;&lt;&lt;name&gt;&gt;&gt;\"\n");
+ * TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+ * template.render(buffer, "John");
+ * client.send(buffer);
+ * </pre>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public final class CompiledTemplate {
+    static final String PLACEHOLDER_START = "<<<";
+    static final String PLACEHOLDER_END = ">>>";
+
+    /**
+     * literal segments, one more than the number of slots.
+     * <code>literals[i]</code> is written before <code>slots[i]</code>
+     */
+    private final byte[][] literals;
+
+    /**
+     * parameter index for each placeholder occurrence
+     */
+    private final int[] slots;
+
+    /**
+     * distinct parameter names in order of first appearance
+     */
+    private final List<String> parameterNames;
+
+    /**
+     * encoded placeholders, written back when a parameter is missing in a map
+     */
+    private final byte[][] placeholders;
+
+    private final Charset charset;
+    private final int literalLength;
+
+    private CompiledTemplate(byte[][] literals, int[] slots, List<String> parameterNames,
+                             Charset charset) {
+        this.charset = charset;
+        this.literals = literals;
+        this.slots = slots;
+        this.parameterNames = Collections.unmodifiableList(parameterNames);
+        this.placeholders = new byte[parameterNames.size()][];
+        for (int i = 0; i < placeholders.length; i++) {
+            placeholders[i] = (PLACEHOLDER_START + parameterNames.get(i) + PLACEHOLDER_END)
+                    .getBytes(charset);
+        }
+
+        int length = 0;
+        for (byte[] literal : literals) {
+            length += literal.length;
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * compiles the template, literals are encoded as US-ASCII.
+     *
+     * @param template label template with <code>&lt;&lt;&lt;name&gt;&gt;&gt;</code>
+     *                 placeholders
+     * @return compiled template
+     */
+    public static CompiledTemplate compile(String template) {
+        return compile(template, US_ASCII);
+    }
+
+    /**
+     * compiles the template.
+     *
+     * @param template label template with <code>&lt;&lt;&lt;name&gt;&gt;&gt;</code>
+     *                 placeholders
+     * @param charset  charset of the literal parts. Should be the same as the one of
+     *                 the buffers the template is rendered into.
+     * @return compiled template
+     */
+    public static CompiledTemplate compile(String template, Charset charset) {
+        if (template == null) {
+            throw new LabelParserException("Template: template is required");
+        }
+
+        List<byte[]> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+
+        int position = 0;
+        while (true) {
+            int start = template.indexOf(PLACEHOLDER_START, position);
+            int end = start < 0 ? -1
+                    : template.indexOf(PLACEHOLDER_END, start + PLACEHOLDER_START.length());
+            if (end < 0) {
+                break;
+            }
+
+            String name = template.substring(start + PLACEHOLDER_START.length(), end);
+            int slot = names.indexOf(name);
+            if (slot < 0) {
+                slot = names.size();
+                names.add(name);
+            }
+
+            literals.add(template.substring(position, start).getBytes(charset));
+            slots.add(slot);
+            position = end + PLACEHOLDER_END.length();
+        }
+        literals.add(template.substring(position).getBytes(charset));
+
+        int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+
+        return new CompiledTemplate(literals.toArray(new byte[0][]), slotArray, names, charset);
+    }
+
+    /**
+     * @return charset of the literal parts
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return distinct parameter names, in order of their first appearance in the
+     * template. The position in this list is the index expected by
+     * {@link #render(TSPLCommandBuffer, String...)}.
+     */
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    /**
+     * @param name parameter name
+     * @return index of the parameter or -1 if the template has no such parameter
+     */
+    public int indexOf(String name) {
+        return parameterNames.indexOf(name);
+    }
+
+    /**
+     * renders the template with positional values.
+     *
+     * @param buffer buffer to write into
+     * @param values one value per parameter, in the order of {@link #getParameterNames()}
+     */
+    public void render(TSPLCommandBuffer buffer, String... values) {
+        if (values.length != parameterNames.size()) {
+            throw new LabelParserException("Template: expected " + parameterNames.size()
+                    + " values but got " + values.length);
+        }
+
+        buffer.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            String value = values[slots[i]];
+            if (value == null) {
+                throw new LabelParserException("Template: no value for "
+                        + parameterNames.get(slots[i]));
+            }
+            buffer.append(value).append(literals[i + 1]);
+        }
+    }
+
+    /**
+     * renders the template with named values. Placeholders without a value in the map
+     * are written as they are, same as {@link TSPLLabelUtils#parseAndGetLabelContent}.
+     *
+     * @param buffer     buffer to write into
+     * @param parameters parameter values by name
+     */
+    public void render(TSPLCommandBuffer buffer, Map<String, String> parameters) {
+        buffer.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            String value = parameters.get(parameterNames.get(slots[i]));
+            if (value == null) {
+                buffer.append(placeholders[slots[i]]);
+            } else {
+                buffer.append(value);
+            }
+            buffer.append(literals[i + 1]);
+        }
+    }
+
+    /**
+     * renders the template with named values into a new byte array.
+     *
+     * @param parameters parameter values by name
+     * @return the rendered label
+     * @see #render(TSPLCommandBuffer, Map)
+     */
+    public byte[] render(Map<String, String> parameters) {
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer(literalLength + 16 * slots.length,
+                charset);
+        render(buffer, parameters);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "CompiledTemplate{parameters=" + parameterNames
+                + ", segments=" + literals.length + ", slots=" + Arrays.toString(slots) + "}";
+    }
+}
@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -159,6 +160,14 @@ public class DataMatrix implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("DMATRIX: x and y co-ordinates are required");
         }
@@ -175,40 +184,38 @@ public class DataMatrix implements TSPLCommand {
             throw new LabelParserException("DMATRIX: content is required");
         }
 
-        StringBuilder dataMatrix = new StringBuilder(DMATRIX.name());
-        dataMatrix.append(EMPTY_SPACE)
+        buffer.append(DMATRIX.name());
+        buffer.append(EMPTY_SPACE)
                 .append(xCoordinate).append(COMMA)
                 .append(yCoordinate).append(COMMA)
                 .append(width).append(COMMA)
                 .append(height).append(COMMA);
         if (escapeSequenceCharacter != null) {
-            dataMatrix.append("c").append(escapeSequenceCharacter).append(COMMA);
+            buffer.append("c").append(escapeSequenceCharacter).append(COMMA);
         }
 
         if (moduleSize != null) {
-            dataMatrix.append("x").append(moduleSize).append(COMMA);
+            buffer.append("x").append(moduleSize).append(COMMA);
         }
 
         if (rotation != null) {
-            dataMatrix.append("r").append(rotation.getRotation()).append(COMMA);
+            buffer.append("r").append(rotation.getRotation()).append(COMMA);
         }
 
         if (isRectangle != null) {
-            dataMatrix.append("a").append(isRectangle ? 1 : 0).append(COMMA);
+            buffer.append("a").append(isRectangle ? 1 : 0).append(COMMA);
         }
 
         if (nbRows != null) {
-            dataMatrix.append(nbRows).append(COMMA);
+            buffer.append(nbRows).append(COMMA);
         }
 
         if (nbCols != null) {
-            dataMatrix.append(nbCols).append(COMMA);
+            buffer.append(nbCols).append(COMMA);
         }
 
-        dataMatrix.append(EMPTY_SPACE)
+        buffer.append(EMPTY_SPACE)
                 .append(ESCAPED_DOUBLE_QUOTE).append(content).append(ESCAPED_DOUBLE_QUOTE)
                 .append(LF);
-
-        return dataMatrix.toString();
     }
 }
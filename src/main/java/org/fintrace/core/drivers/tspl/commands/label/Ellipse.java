@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -71,6 +72,14 @@ public class Ellipse implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("ELLIPSE: x and y positions are required");
         }
@@ -87,15 +96,13 @@ public class Ellipse implements TSPLCommand {
             throw new LabelParserException("ELLIPSE: please specify line thickness");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(ELLIPSE.name());
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(ELLIPSE.name());
+        buffer.append(EMPTY_SPACE)
                 .append(xCoordinate).append(COMMA)
                 .append(yCoordinate).append(COMMA)
                 .append(width).append(COMMA)
                 .append(height).append(COMMA)
                 .append(lineThickness)
                 .append(LF);
-
-        return commandBuilder.toString();
     }
 }
@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -80,6 +81,14 @@ public class Erase implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("ERASE: x and y positions are required");
         }
@@ -92,14 +101,12 @@ public class Erase implements TSPLCommand {
             throw new LabelParserException("ERASE: please specify height");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(LabelFormatCommand.ERASE.name());
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(LabelFormatCommand.ERASE.name());
+        buffer.append(EMPTY_SPACE)
                 .append(xCoordinate).append(COMMA)
                 .append(yCoordinate).append(COMMA)
                 .append(width).append(COMMA)
                 .append(height)
                 .append(LF);
-
-        return commandBuilder.toString();
     }
 }
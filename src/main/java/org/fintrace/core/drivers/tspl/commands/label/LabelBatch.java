@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.commands.label;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.connection.TSPLConnectionClient;
+import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
+
+/**
+ * A batch of labels sharing one {@link LabelPrototype}, with the varying values stored
+ * in columns.
+ * <p>
+ * The layout is kept once in the prototype, each parameter gets one array holding the
+ * value of every row: <code>String[]</code> or pre-encoded <code>byte[][]</code> for
+ * {@link LabelPrototype.ParameterType#TEXT} parameters and <code>int[]</code> or
+ * <code>float[]</code> for {@link LabelPrototype.ParameterType#NUMBER} parameters. No
+ * per label objects are created, neither while building the batch nor while encoding
+ * it row by row.
+ * </p>
+ * <pre>
+ * LabelBatch batch = LabelBatch.builder(prototype, trackingNumbers.length)
+ *         .column("tracking", trackingNumbers)
+ *         .column("x", xPositions)
+ *         .build();
+ * batch.sendTo(client);
+ * </pre>
+ * The column arrays are not copied, they must not be changed while the batch is in use.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public final class LabelBatch {
+    private final LabelPrototype prototype;
+    private final int size;
+    private final Object[] columns;
+
+    private LabelBatch(LabelPrototype prototype, int size, Object[] columns) {
+        this.prototype = prototype;
+        this.size = size;
+        this.columns = columns;
+    }
+
+    /**
+     * @param prototype layout of the labels
+     * @param size      number of labels (rows)
+     * @return builder to add the columns
+     */
+    public static Builder builder(LabelPrototype prototype, int size) {
+        return new Builder(prototype, size);
+    }
+
+    /**
+     * @return layout of the labels
+     */
+    public LabelPrototype getPrototype() {
+        return prototype;
+    }
+
+    /**
+     * @return number of labels
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * encodes one label.
+     *
+     * @param row    index of the label
+     * @param buffer buffer to write into
+     */
+    public void writeRow(int row, TSPLCommandBuffer buffer) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+        }
+
+        ColumnWriter writer = new ColumnWriter();
+        writer.row = row;
+        prototype.render(buffer, writer);
+    }
+
+    /**
+     * sends the labels one by one, re-using a single buffer for all of them.
+     *
+     * @param client client to send to. Its charset must be the one of the prototype.
+     */
+    public void sendTo(TSPLConnectionClient client) {
+        if (!prototype.getCharset().equals(client.getCharset())) {
+            throw new LabelParserException("Batch: prototype charset " + prototype.getCharset()
+                    + " does not match client charset " + client.getCharset());
+        }
+
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer(prototype.getStaticLength() * 2,
+                prototype.getCharset());
+        ColumnWriter writer = new ColumnWriter();
+        for (int row = 0; row < size; row++) {
+            buffer.clear();
+            writer.row = row;
+            prototype.render(buffer, writer);
+            client.send(buffer);
+        }
+    }
+
+    /**
+     * Writes the values of one row, re-used for all the rows of a batch.
+     */
+    private final class ColumnWriter implements LabelPrototype.ParameterWriter {
+        private int row;
+
+        @Override
+        public void write(TSPLCommandBuffer buffer, int parameter) {
+            Object column = columns[parameter];
+            if (column instanceof int[]) {
+                buffer.append(((int[]) column)[row]);
+            } else if (column instanceof float[]) {
+                buffer.append(((float[]) column)[row]);
+            } else if (column instanceof byte[][]) {
+                buffer.append(((byte[][]) column)[row]);
+            } else {
+                buffer.append(((String[]) column)[row]);
+            }
+        }
+    }
+
+    /**
+     * Collects the columns of a {@link LabelBatch}.
+     */
+    public static final class Builder {
+        private final LabelPrototype prototype;
+        private final int size;
+        private final Object[] columns;
+
+        private Builder(LabelPrototype prototype, int size) {
+            if (prototype == null) {
+                throw new LabelParserException("Batch: prototype is required");
+            }
+            if (size < 0) {
+                throw new LabelParserException("Batch: size must not be negative");
+            }
+            this.prototype = prototype;
+            this.size = size;
+            this.columns = new Object[prototype.getParameterNames().size()];
+        }
+
+        /**
+         * @param name   text parameter
+         * @param values value of every row
+         * @return this builder
+         */
+        public Builder column(String name, String[] values) {
+            checkLength(name, values.length);
+            for (String value : values) {
+                // a null value would only fail in the middle of sending the batch
+                if (value == null) {
+                    throw new LabelParserException("Batch: null value in column " + name);
+                }
+            }
+            return column(name, LabelPrototype.ParameterType.TEXT, values);
+        }
+
+        /**
+         * @param name   text parameter
+         * @param values value of every row, already encoded with the charset of the
+         *               prototype
+         * @return this builder
+         */
+        public Builder column(String name, byte[][] values) {
+            checkLength(name, values.length);
+            for (byte[] value : values) {
+                if (value == null) {
+                    throw new LabelParserException("Batch: null value in column " + name);
+                }
+            }
+            return column(name, LabelPrototype.ParameterType.TEXT, values);
+        }
+
+        /**
+         * @param name   number parameter
+         * @param values value of every row
+         * @return this builder
+         */
+        public Builder column(String name, int[] values) {
+            checkLength(name, values.length);
+            return column(name, LabelPrototype.ParameterType.NUMBER, values);
+        }
+
+        /**
+         * @param name   number parameter
+         * @param values value of every row
+         * @return this builder
+         */
+        public Builder column(String name, float[] values) {
+            checkLength(name, values.length);
+            return column(name, LabelPrototype.ParameterType.NUMBER, values);
+        }
+
+        /**
+         * @return the batch
+         */
+        public LabelBatch build() {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] == null) {
+                    throw new LabelParserException("Batch: no column for "
+                            + prototype.getParameterNames().get(i));
+                }
+            }
+            return new LabelBatch(prototype, size, columns.clone());
+        }
+
+        private void checkLength(String name, int length) {
+            if (length != size) {
+                throw new LabelParserException("Batch: column " + name + " has " + length
+                        + " values but the batch has " + size + " rows");
+            }
+        }
+
+        private Builder column(String name, LabelPrototype.ParameterType type, Object values) {
+            int parameter = prototype.indexOf(name);
+            if (parameter < 0) {
+                throw new LabelParserException("Batch: unknown parameter " + name);
+            }
+            if (prototype.getParameterType(parameter) != type) {
+                throw new LabelParserException("Batch: " + name + " is a "
+                        + prototype.getParameterType(parameter) + " parameter");
+            }
+            columns[parameter] = values;
+            return this;
+        }
+    }
+}
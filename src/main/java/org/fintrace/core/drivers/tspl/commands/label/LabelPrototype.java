@@ -0,0 +1,411 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.commands.label;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.fintrace.core.drivers.tspl.commands.label.CompiledTemplate.PLACEHOLDER_END;
+import static org.fintrace.core.drivers.tspl.commands.label.CompiledTemplate.PLACEHOLDER_START;
+
+/**
+ * A {@link TSPLLabel} compiled once into a re-usable prototype with bound parameters.
+ * <p>
+ * The label is built as usual through the element builders. Any String field (e.g.
+ * <code>Text.content</code>, <code>Barcode.content</code> or <code>QRCode.content</code>)
+ * may contain <code>&lt;&lt;&lt;name&gt;&gt;&gt;</code> placeholders, which become
+ * {@link ParameterType#TEXT} parameters. The position of an element can be bound to
+ * {@link ParameterType#NUMBER} parameters with
+ * {@link Builder#bindPosition(TSPLCommand, String, String)}; the element then only needs
+ * a dummy position for compilation.
+ * </p>
+ * <p>
+ * Compiling encodes every element once, so all of their validation runs at that time.
+ * The static parts are kept as pre-encoded bytes and only the bound values are formatted
+ * for each label.
+ * </p>
+ * <pre>
+ * Text name = Text.builder().xCoordinate(0).yCoordinate(0).fontName("3")
+ *         .xMultiplicationFactor(1f).yMultiplicationFactor(1f)
+ *         .content("&lt;&lt;&lt;name&gt;&gt;&gt;").build();
+ * LabelPrototype prototype = LabelPrototype.builder(TSPLLabel.builder()
+ *         .element(size).element(clearBuffer).element(name).element(print).build())
+ *         .bindPosition(name, "x", "y")
+ *         .build();
+ *
+ * prototype.render(buffer, "John", 10, 20);
+ * </pre>
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public final class LabelPrototype {
+
+    /**
+     * Type of the value of a prototype parameter.
+     */
+    public enum ParameterType {
+        /**
+         * Free text, written with the charset of the buffer.
+         */
+        TEXT,
+
+        /**
+         * A number (position in dots). Whole numbers are written without decimals.
+         */
+        NUMBER
+    }
+
+    private final byte[][] literals;
+    private final int[] slots;
+    private final List<String> parameterNames;
+    private final ParameterType[] parameterTypes;
+    private final Charset charset;
+    private final int staticLength;
+
+    private LabelPrototype(byte[][] literals, int[] slots, List<String> parameterNames,
+                           ParameterType[] parameterTypes, Charset charset) {
+        this.literals = literals;
+        this.slots = slots;
+        this.parameterNames = Collections.unmodifiableList(parameterNames);
+        this.parameterTypes = parameterTypes;
+        this.charset = charset;
+
+        int length = 0;
+        for (byte[] literal : literals) {
+            length += literal.length;
+        }
+        this.staticLength = length;
+    }
+
+    /**
+     * compiles the label using only <code>&lt;&lt;&lt;name&gt;&gt;&gt;</code> placeholders.
+     *
+     * @param label label to compile
+     * @return the prototype
+     */
+    public static LabelPrototype compile(TSPLLabel label) {
+        return builder(label).build();
+    }
+
+    /**
+     * @param label label to compile
+     * @return builder to declare additional bindings
+     */
+    public static Builder builder(TSPLLabel label) {
+        return new Builder(label);
+    }
+
+    /**
+     * @return distinct parameter names, in order of their first appearance in the label.
+     * The position in this list is the index expected by
+     * {@link #render(TSPLCommandBuffer, Object...)}.
+     */
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    /**
+     * @param index parameter index
+     * @return type of the parameter
+     */
+    public ParameterType getParameterType(int index) {
+        return parameterTypes[index];
+    }
+
+    /**
+     * @param name parameter name
+     * @return index of the parameter or -1 if the prototype has no such parameter
+     */
+    public int indexOf(String name) {
+        return parameterNames.indexOf(name);
+    }
+
+    /**
+     * @return charset used for the static parts
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return number of pre-encoded bytes written for every label
+     */
+    public int getStaticLength() {
+        return staticLength;
+    }
+
+    /**
+     * renders one label with positional values.
+     *
+     * @param buffer buffer to write into
+     * @param values one value per parameter, in the order of {@link #getParameterNames()}.
+     *               {@link ParameterType#TEXT} accepts any object (written with its
+     *               <code>toString()</code>), {@link ParameterType#NUMBER} requires a
+     *               {@link Number}.
+     */
+    public void render(TSPLCommandBuffer buffer, Object... values) {
+        if (values.length != parameterNames.size()) {
+            throw new LabelParserException("Prototype: expected " + parameterNames.size()
+                    + " values but got " + values.length);
+        }
+
+        buffer.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            writeValue(buffer, slots[i], values[slots[i]]);
+            buffer.append(literals[i + 1]);
+        }
+    }
+
+    /**
+     * renders one label with named values.
+     *
+     * @param buffer buffer to write into
+     * @param values values by parameter name, all the parameters are required
+     */
+    public void render(TSPLCommandBuffer buffer, Map<String, ?> values) {
+        buffer.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            writeValue(buffer, slots[i], values.get(parameterNames.get(slots[i])));
+            buffer.append(literals[i + 1]);
+        }
+    }
+
+    /**
+     * renders one label, letting the writer format the values.
+     *
+     * @param buffer buffer to write into
+     * @param writer writes the value of a parameter
+     */
+    void render(TSPLCommandBuffer buffer, ParameterWriter writer) {
+        buffer.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            writer.write(buffer, slots[i]);
+            buffer.append(literals[i + 1]);
+        }
+    }
+
+    /**
+     * writes a single parameter value, validating it against the parameter type.
+     */
+    void writeValue(TSPLCommandBuffer buffer, int parameter, Object value) {
+        if (value == null) {
+            throw new LabelParserException("Prototype: no value for "
+                    + parameterNames.get(parameter));
+        }
+
+        if (parameterTypes[parameter] == ParameterType.NUMBER) {
+            if (!(value instanceof Number)) {
+                throw new LabelParserException("Prototype: " + parameterNames.get(parameter)
+                        + " must be a number");
+            }
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                buffer.append(((Number) value).intValue());
+            } else {
+                buffer.append(((Number) value).floatValue());
+            }
+        } else {
+            buffer.append(value.toString());
+        }
+    }
+
+    /**
+     * Source of parameter values for {@link #render(TSPLCommandBuffer, ParameterWriter)}.
+     */
+    interface ParameterWriter {
+        void write(TSPLCommandBuffer buffer, int parameter);
+    }
+
+    /**
+     * Compiles a {@link TSPLLabel} into a {@link LabelPrototype}.
+     */
+    public static final class Builder {
+        private final TSPLLabel label;
+        private final Map<TSPLCommand, String[]> positions = new IdentityHashMap<>();
+        private Charset charset = US_ASCII;
+
+        private final List<byte[]> literals = new ArrayList<>();
+        private final List<Integer> slots = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<ParameterType> types = new ArrayList<>();
+        private TSPLCommandBuffer current;
+
+        private Builder(TSPLLabel label) {
+            if (label == null || label.getElements() == null) {
+                throw new LabelParserException("Prototype: label is required");
+            }
+            this.label = label;
+        }
+
+        /**
+         * @param charset charset for the static parts. Should be the same as the one of
+         *                the buffers the prototype is rendered into. Default US-ASCII.
+         * @return this builder
+         */
+        public Builder charset(Charset charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * binds the x and/or y position of the element to number parameters. Works for
+         * all label formatting commands, whose syntax starts with <code>NAME x,y,</code>.
+         *
+         * @param element    element of the label (same instance)
+         * @param xParameter parameter name for the x-coordinate, <code>null</code> to keep
+         *                   the x-coordinate of the element
+         * @param yParameter parameter name for the y-coordinate, <code>null</code> to keep
+         *                   the y-coordinate of the element
+         * @return this builder
+         */
+        public Builder bindPosition(TSPLCommand element, String xParameter, String yParameter) {
+            if (!containsElement(element)) {
+                throw new LabelParserException("Prototype: element is not part of the label");
+            }
+            positions.put(element, new String[]{xParameter, yParameter});
+            return this;
+        }
+
+        /**
+         * encodes and validates all the elements and builds the prototype.
+         *
+         * @return the prototype
+         */
+        public LabelPrototype build() {
+            literals.clear();
+            slots.clear();
+            names.clear();
+            types.clear();
+            current = new TSPLCommandBuffer(charset);
+
+            TSPLCommandBuffer elementBuffer = new TSPLCommandBuffer(charset);
+            for (TSPLCommand element : label.getElements()) {
+                elementBuffer.clear();
+                element.writeTo(elementBuffer);
+                compileElement(element, elementBuffer.array(), elementBuffer.size());
+            }
+            literals.add(current.toByteArray());
+
+            int[] slotArray = new int[slots.size()];
+            for (int i = 0; i < slotArray.length; i++) {
+                slotArray[i] = slots.get(i);
+            }
+
+            return new LabelPrototype(literals.toArray(new byte[0][]), slotArray,
+                    new ArrayList<>(names), types.toArray(new ParameterType[0]), charset);
+        }
+
+        private void compileElement(TSPLCommand element, byte[] bytes, int length) {
+            int from = 0;
+
+            String[] position = positions.get(element);
+            if (position != null) {
+                int x = indexOf(bytes, (byte) ' ', 0, length) + 1;
+                int xEnd = x > 0 ? indexOf(bytes, (byte) ',', x, length) : -1;
+                int yEnd = xEnd > 0 ? indexOf(bytes, (byte) ',', xEnd + 1, length) : -1;
+                if (yEnd < 0) {
+                    throw new LabelParserException("Prototype: position can not be bound for "
+                            + new String(bytes, 0, length, charset).trim());
+                }
+
+                if (position[0] != null) {
+                    current.append(bytes, from, x - from);
+                    addSlot(position[0], ParameterType.NUMBER);
+                    from = xEnd;
+                }
+                if (position[1] != null) {
+                    current.append(bytes, from, xEnd + 1 - from);
+                    addSlot(position[1], ParameterType.NUMBER);
+                    from = yEnd;
+                }
+            }
+
+            byte[] start = PLACEHOLDER_START.getBytes(US_ASCII);
+            byte[] end = PLACEHOLDER_END.getBytes(US_ASCII);
+            while (true) {
+                int placeholder = indexOf(bytes, start, from, length);
+                int placeholderEnd = placeholder < 0 ? -1
+                        : indexOf(bytes, end, placeholder + start.length, length);
+                if (placeholderEnd < 0) {
+                    break;
+                }
+
+                current.append(bytes, from, placeholder - from);
+                addSlot(new String(bytes, placeholder + start.length,
+                        placeholderEnd - placeholder - start.length, charset), ParameterType.TEXT);
+                from = placeholderEnd + end.length;
+            }
+
+            current.append(bytes, from, length - from);
+        }
+
+        private void addSlot(String name, ParameterType type) {
+            int parameter = names.indexOf(name);
+            if (parameter < 0) {
+                parameter = names.size();
+                names.add(name);
+                types.add(type);
+            } else if (types.get(parameter) != type) {
+                throw new LabelParserException("Prototype: " + name
+                        + " is used both as text and as number");
+            }
+
+            literals.add(current.toByteArray());
+            current.clear();
+            slots.add(parameter);
+        }
+
+        private boolean containsElement(TSPLCommand element) {
+            for (TSPLCommand candidate : label.getElements()) {
+                if (candidate == element) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int indexOf(byte[] bytes, byte b, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == b) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int indexOf(byte[] bytes, byte[] pattern, int from, int to) {
+            outer:
+            for (int i = from; i <= to - pattern.length; i++) {
+                for (int j = 0; j < pattern.length; j++) {
+                    if (bytes[i + j] != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+    }
+}
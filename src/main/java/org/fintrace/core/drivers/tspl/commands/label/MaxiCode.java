@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -102,6 +103,14 @@ public class MaxiCode implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
 
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("MAXICODE: x and y positions are required");
@@ -129,44 +138,42 @@ public class MaxiCode implements TSPLCommand {
             throw new LabelParserException("MAXICODE: post for mode is 6 alphanumeric");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(LabelFormatCommand.MAXICODE.name());
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(LabelFormatCommand.MAXICODE.name());
+        buffer.append(EMPTY_SPACE)
                 .append(xCoordinate).append(COMMA)
                 .append(yCoordinate).append(COMMA)
                 .append(mode).append(COMMA);
 
         if (mode == 2 || mode == 3) {
-            commandBuilder.append(serviceClass).append(COMMA)
+            buffer.append(serviceClass).append(COMMA)
                     .append(countryCode).append(COMMA);
 
             if (mode == 3) {
-                commandBuilder.append(ESCAPED_DOUBLE_QUOTE);
+                buffer.append(ESCAPED_DOUBLE_QUOTE);
             }
-            commandBuilder.append(postCode);
+            buffer.append(postCode);
 
             if (mode == 3) {
-                commandBuilder.append(ESCAPED_DOUBLE_QUOTE);
+                buffer.append(ESCAPED_DOUBLE_QUOTE);
             }
-            commandBuilder.append(COMMA)
+            buffer.append(COMMA)
                     .append(ESCAPED_DOUBLE_QUOTE)
                     .append(content).append(ESCAPED_DOUBLE_QUOTE);
         } else {
             if (expressionLength == null) {
-                commandBuilder.append(ESCAPED_DOUBLE_QUOTE);
+                buffer.append(ESCAPED_DOUBLE_QUOTE);
             } else {
-                commandBuilder.append("L").append(expressionLength)
+                buffer.append("L").append(expressionLength)
                         .append(COMMA);
             }
 
-            commandBuilder.append(content);
+            buffer.append(content);
 
             if (expressionLength == null) {
-                commandBuilder.append(ESCAPED_DOUBLE_QUOTE);
+                buffer.append(ESCAPED_DOUBLE_QUOTE);
             }
         }
 
-        commandBuilder.append(LF);
-
-        return commandBuilder.toString();
+        buffer.append(LF);
     }
 }
@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import java.util.Map;
@@ -130,6 +131,14 @@ public class PDF417 implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("PDF417: x and y positions are required");
         }
@@ -154,8 +163,8 @@ public class PDF417 implements TSPLCommand {
             throw new LabelParserException("PDF417: content is more than 2048 characters");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(LabelFormatCommand.PDF417.name());
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(LabelFormatCommand.PDF417.name());
+        buffer.append(EMPTY_SPACE)
                 .append(xCoordinate).append(COMMA)
                 .append(yCoordinate).append(COMMA)
                 .append(width).append(COMMA)
@@ -164,67 +173,65 @@ public class PDF417 implements TSPLCommand {
 
         if (options != null) {
             if (options.containsKey("P")) {
-                commandBuilder.append("P").append(((Integer) options.get("P")).intValue())
+                buffer.append("P").append(((Integer) options.get("P")).intValue())
                         .append(COMMA);
             }
 
             if (options.containsKey("E")) {
-                commandBuilder.append("E").append(((Integer) options.get("E")).intValue())
+                buffer.append("E").append(((Integer) options.get("E")).intValue())
                         .append(COMMA);
             }
 
             if (options.containsKey("M")) {
-                commandBuilder.append("M").append(((Integer) options.get("M")).intValue())
+                buffer.append("M").append(((Integer) options.get("M")).intValue())
                         .append(COMMA);
             }
 
             if (options.containsKey("U")) {
-                commandBuilder.append("U").append(options.get("U"))
+                buffer.append("U").append(String.valueOf(options.get("U")))
                         .append(COMMA);
             }
 
             if (options.containsKey("W")) {
-                commandBuilder.append("W").append(((Integer) options.get("W")).intValue())
+                buffer.append("W").append(((Integer) options.get("W")).intValue())
                         .append(COMMA);
             }
 
             if (options.containsKey("H")) {
-                commandBuilder.append("H").append(((Integer) options.get("H")).intValue())
+                buffer.append("H").append(((Integer) options.get("H")).intValue())
                         .append(COMMA);
             }
 
             if (options.containsKey("R")) {
-                commandBuilder.append("R").append(((Integer) options.get("R")).intValue())
+                buffer.append("R").append(((Integer) options.get("R")).intValue())
                         .append(COMMA);
             }
 
             if (options.containsKey("C")) {
-                commandBuilder.append("C").append(((Integer) options.get("C")).intValue())
+                buffer.append("C").append(((Integer) options.get("C")).intValue())
                         .append(COMMA);
             }
 
             if (options.containsKey("T")) {
-                commandBuilder.append("T").append(((Integer) options.get("T")).intValue())
+                buffer.append("T").append(((Integer) options.get("T")).intValue())
                         .append(COMMA);
             }
 
             if (options.containsKey("L")) {
-                commandBuilder.append("L").append(((Integer) options.get("L")).intValue())
+                buffer.append("L").append(((Integer) options.get("L")).intValue())
                         .append(COMMA);
             }
         }
 
         if (options == null || !options.containsKey("L")) {
-            commandBuilder.append(ESCAPED_DOUBLE_QUOTE);
+            buffer.append(ESCAPED_DOUBLE_QUOTE);
         }
-        commandBuilder.append(content);
+        buffer.append(content);
 
         if (options == null || !options.containsKey("L")) {
-            commandBuilder.append(ESCAPED_DOUBLE_QUOTE);
+            buffer.append(ESCAPED_DOUBLE_QUOTE);
         }
 
-        commandBuilder.append(LF);
-
-        return commandBuilder.toString();
+        buffer.append(LF);
     }
 }
@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -170,6 +171,14 @@ public class QRCode implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
 
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("QRCODE: x and y positions are required");
@@ -191,8 +200,8 @@ public class QRCode implements TSPLCommand {
             throw new LabelParserException("QRCODE: please specify rotation");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(LabelFormatCommand.QRCODE.name());
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(LabelFormatCommand.QRCODE.name());
+        buffer.append(EMPTY_SPACE)
                 .append(xCoordinate).append(COMMA)
                 .append(yCoordinate).append(COMMA)
                 .append(errorCorrectionLevel.name()).append(COMMA)
@@ -201,25 +210,23 @@ public class QRCode implements TSPLCommand {
                 .append(rotation.getRotation()).append(COMMA);
 
         if (justification != null) {
-            commandBuilder.append("J").append(justification).append(COMMA);
+            buffer.append("J").append(justification).append(COMMA);
         }
 
         if (model != null) {
-            commandBuilder.append(model.name()).append(COMMA);
+            buffer.append(model.name()).append(COMMA);
         }
 
         if (mask != null) {
-            commandBuilder.append(mask.name()).append(COMMA);
+            buffer.append(mask.name()).append(COMMA);
         }
 
         if (area != null) {
-            commandBuilder.append("X").append(area).append(COMMA);
+            buffer.append("X").append(area).append(COMMA);
         }
 
-        commandBuilder.append(ESCAPED_DOUBLE_QUOTE)
+        buffer.append(ESCAPED_DOUBLE_QUOTE)
                 .append(content).append(ESCAPED_DOUBLE_QUOTE)
                 .append(LF);
-
-        return commandBuilder.toString();
     }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.commands.label;
+
+import lombok.Builder;
+import lombok.Data;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.device.Counter;
+import org.fintrace.core.drivers.tspl.commands.device.CounterExpression;
+import org.fintrace.core.drivers.tspl.commands.system.Print;
+import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A run of serial numbered labels printed with a printer counter.
+ * <p>
+ * Instead of one label per serial number, every chunk of the run is a single label:
+ * it sets the counter step (<code>SET COUNTER</code>) and the first serial number of
+ * the chunk (<code>@n="..."</code>), draws the layout once and prints it with
+ * <code>PRINT k</code>. The printer increments the counter for each printed label.
+ * </p>
+ * <p>
+ * The layout refers to the serial number with {@link #reference(int)} inside the
+ * content of its elements. It must not contain PRINT.
+ * </p>
+ * <pre>
+ * SerialRun run = SerialRun.builder()
+ *         .layout(TSPLLabel.builder()
+ *                 .element(size).element(clearBuffer)
+ *                 .element(Text.builder()...content("SN-" + SerialRun.reference(0)).build())
+ *                 .build())
+ *         .start(1000).count(10000).width(8).chunkSize(2500)
+ *         .build();
+ * for (SerialRun.Chunk chunk : run.getChunks()) {
+ *     client.send(chunk.getLabel());
+ * }
+ * </pre>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+@Data
+@Builder
+public class SerialRun {
+    /**
+     * Largest number of labels of a single PRINT
+     */
+    public static final int MAX_PRINT_COUNT = 999999999;
+
+    /**
+     * Longest initial string of a counter (101 bytes with the terminator)
+     */
+    public static final int MAX_WIDTH = 100;
+
+    /**
+     * Counter to use (0 - 60)
+     */
+    @Builder.Default
+    private Integer counterNumber = 0;
+
+    /**
+     * The first serial number
+     */
+    private Long start;
+
+    /**
+     * The increment between two labels, can be negative
+     */
+    @Builder.Default
+    private Integer step = 1;
+
+    /**
+     * The number of labels
+     */
+    private Integer count;
+
+    /**
+     * Serial numbers are left padded with zeros to this width. Defaults to the number
+     * of digits of the largest serial number of the run.
+     */
+    private Integer width;
+
+    /**
+     * Largest number of labels in a chunk, defaults to {@link #MAX_PRINT_COUNT}
+     */
+    @Builder.Default
+    private Integer chunkSize = MAX_PRINT_COUNT;
+
+    /**
+     * Elements of the label, referring to the counter with {@link #reference(int)}
+     */
+    private TSPLLabel layout;
+
+    /**
+     * content fragment which inserts the counter into a quoted string of TEXT,
+     * BARCODE, QRCODE, ... contents. It closes the quote, appends the counter and opens
+     * the quote again, e.g. <code>"SN-" + reference(0)</code> becomes
+     * <code>"SN-"+@0+""</code>.
+     *
+     * @param counterNumber counter (0 - 60)
+     * @return the fragment
+     */
+    public static String reference(int counterNumber) {
+        return "\"+@" + counterNumber + "+\"";
+    }
+
+    /**
+     * validates the run and splits it into chunks.
+     *
+     * @return the chunks, in print order
+     */
+    public List<Chunk> getChunks() {
+        if (start == null || count == null) {
+            throw new LabelParserException("SERIAL RUN: start and count are required");
+        }
+
+        if (count < 0 || chunkSize == null || chunkSize < 1 || chunkSize > MAX_PRINT_COUNT) {
+            throw new LabelParserException("SERIAL RUN: count must not be negative and chunk "
+                    + "size must be 1-" + MAX_PRINT_COUNT);
+        }
+
+        if (layout == null || layout.getElements() == null) {
+            throw new LabelParserException("SERIAL RUN: layout is required");
+        }
+
+        for (TSPLCommand element : layout.getElements()) {
+            if (element instanceof Print) {
+                throw new LabelParserException("SERIAL RUN: layout must not contain PRINT");
+            }
+        }
+
+        long last = start + (long) step * Math.max(count - 1, 0);
+        if (start < 0 || last < 0) {
+            throw new LabelParserException("SERIAL RUN: serial numbers must not be negative");
+        }
+
+        int digits = Math.max(Long.toString(start).length(), Long.toString(last).length());
+        int padding = width == null ? digits : width;
+        if (padding < digits || padding > MAX_WIDTH) {
+            throw new LabelParserException("SERIAL RUN: width must be " + digits + "-"
+                    + MAX_WIDTH + " for serial numbers up to " + Math.max(start, last));
+        }
+
+        Counter counter = Counter.builder().counterNumber(counterNumber).step(step).build();
+        List<Chunk> chunks = new ArrayList<>();
+        for (int done = 0; done < count; done += chunkSize) {
+            int size = Math.min(chunkSize, count - done);
+            long first = start + (long) step * done;
+
+            TSPLLabel label = TSPLLabel.builder()
+                    .element(counter)
+                    .element(CounterExpression.builder().counterNumber(counterNumber)
+                            .expression(format(first, padding)).build())
+                    .elements(layout.getElements())
+                    .element(Print.builder().nbLabels(size).build())
+                    .build();
+            // validate once, before anything is printed
+            label.getTsplCode();
+
+            chunks.add(new Chunk(chunks.size(), first, first + (long) step * (size - 1), size,
+                    label));
+        }
+        return Collections.unmodifiableList(chunks);
+    }
+
+    private static String format(long value, int width) {
+        StringBuilder builder = new StringBuilder(width);
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            builder.append('0');
+        }
+        return builder.append(digits).toString();
+    }
+
+    /**
+     * A part of a {@link SerialRun}, printed by a single label.
+     */
+    @Data
+    public static class Chunk {
+        /**
+         * Position of the chunk in the run
+         */
+        private final int index;
+
+        /**
+         * Serial number of the first label
+         */
+        private final long firstSerial;
+
+        /**
+         * Serial number of the last label
+         */
+        private final long lastSerial;
+
+        /**
+         * Number of labels
+         */
+        private final int count;
+
+        /**
+         * Label printing the chunk
+         */
+        private final TSPLLabel label;
+    }
+}
@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -97,6 +98,14 @@ public class TLC39 implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
 
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("TLC39: x and y positions are required");
@@ -134,44 +143,42 @@ public class TLC39 implements TSPLCommand {
             throw new LabelParserException("TLC39: Serial number is required");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(LabelFormatCommand.TLC39.name());
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(LabelFormatCommand.TLC39.name());
+        buffer.append(EMPTY_SPACE)
                 .append(xCoordinate).append(COMMA)
                 .append(yCoordinate).append(COMMA)
                 .append(rotation.getRotation()).append(COMMA);
 
         if (height != null) {
-            commandBuilder.append(height).append(COMMA);
+            buffer.append(height).append(COMMA);
         }
 
         if (narrow != null) {
-            commandBuilder.append(narrow).append(COMMA);
+            buffer.append(narrow).append(COMMA);
         }
 
         if (wide != null) {
-            commandBuilder.append(wide).append(COMMA);
+            buffer.append(wide).append(COMMA);
         }
 
         if (cellWidth != null) {
-            commandBuilder.append(cellWidth).append(COMMA);
+            buffer.append(cellWidth).append(COMMA);
         }
 
         if (cellHeight != null) {
-            commandBuilder.append(cellHeight).append(COMMA);
+            buffer.append(cellHeight).append(COMMA);
         }
 
-        commandBuilder.append(ESCAPED_DOUBLE_QUOTE)
+        buffer.append(ESCAPED_DOUBLE_QUOTE)
                 .append(eciNumber).append(COMMA)
                 .append(serialNumber);
 
         if (additionalData != null) {
-            commandBuilder.append(COMMA)
+            buffer.append(COMMA)
                     .append(additionalData);
         }
 
-        commandBuilder.append(ESCAPED_DOUBLE_QUOTE)
+        buffer.append(ESCAPED_DOUBLE_QUOTE)
                 .append(LF);
-
-        return commandBuilder.toString();
     }
 }
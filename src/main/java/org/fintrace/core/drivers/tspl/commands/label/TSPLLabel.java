@@ -18,11 +18,18 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import lombok.Singular;
+import org.fintrace.core.drivers.tspl.commands.FrozenCommand;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
 /**
  * @author Venkaiah Chowdary Koneru
  */
@@ -38,6 +45,68 @@ public class TSPLLabel {
      * @return
      */
     public String getTsplCode() {
-        return elements.stream().map(TSPLCommand::getCommand).collect(Collectors.joining(""));
+        return getElements().stream().map(TSPLCommand::getCommand).collect(Collectors.joining(""));
+    }
+
+    /**
+     * writes the TSPL2 code of all the elements into the given buffer, without
+     * building the intermediate Strings of {@link #getTsplCode()}.
+     *
+     * @param buffer buffer to write into
+     */
+    public void writeTo(TSPLCommandBuffer buffer) {
+        for (TSPLCommand element : getElements()) {
+            element.writeTo(buffer);
+        }
+    }
+
+    /**
+     * validates and encodes all the elements once with US-ASCII.
+     *
+     * @return frozen copy of this label
+     * @see #freeze(Charset)
+     */
+    public TSPLLabel freeze() {
+        return freeze(US_ASCII);
+    }
+
+    /**
+     * validates and encodes all the elements once. The returned label holds
+     * {@link FrozenCommand}s in a final, unmodifiable list and can not be changed, so it
+     * is not affected by later changes to the elements of this label and can be shared
+     * between threads.
+     *
+     * @param charset charset to encode with, should be the one of the connection client
+     * @return frozen copy of this label
+     */
+    public TSPLLabel freeze(Charset charset) {
+        List<TSPLCommand> source = getElements();
+        List<TSPLCommand> frozen = new ArrayList<>(source.size());
+        for (TSPLCommand element : source) {
+            frozen.add(element.freeze(charset));
+        }
+        return new FrozenLabel(Collections.unmodifiableList(frozen));
+    }
+
+    /**
+     * label returned by {@link #freeze(Charset)}, its elements are final.
+     */
+    private static final class FrozenLabel extends TSPLLabel {
+        private final List<TSPLCommand> frozenElements;
+
+        private FrozenLabel(List<TSPLCommand> frozenElements) {
+            super(null);
+            this.frozenElements = frozenElements;
+        }
+
+        @Override
+        public List<TSPLCommand> getElements() {
+            return frozenElements;
+        }
+
+        @Override
+        public void setElements(List<TSPLCommand> elements) {
+            throw new UnsupportedOperationException("Frozen label can not be changed");
+        }
     }
 }
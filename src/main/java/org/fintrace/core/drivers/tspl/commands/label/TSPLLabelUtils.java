@@ -33,6 +33,11 @@ public final class TSPLLabelUtils {
 
     /**
      * parses the content and replaces any <<< >>> occurrences
+     * <p>
+     * The template is parsed on every call. When the same template is rendered
+     * repeatedly, compile it once with {@link CompiledTemplate#compile(String)} and
+     * re-use it.
+     * </p>
      *
      * @param labelTemplate
      * @param parameters
@@ -40,14 +45,7 @@ public final class TSPLLabelUtils {
      */
     public static byte[] parseAndGetLabelContent(String labelTemplate,
                                                  Map<String, String> parameters) {
-
-        String localTemplate = labelTemplate;
-        for (Map.Entry<String, String> entry : parameters.entrySet()) {
-            localTemplate = localTemplate.replaceAll("<<<" + entry.getKey()
-                    + ">>>", entry.getValue());
-        }
-
-        return localTemplate.getBytes(US_ASCII);
+        return CompiledTemplate.compile(labelTemplate, US_ASCII).render(parameters);
     }
 
     /**
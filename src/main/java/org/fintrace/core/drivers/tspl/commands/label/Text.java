@@ -18,10 +18,10 @@ package org.fintrace.core.drivers.tspl.commands.label;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
-import static org.fintrace.core.drivers.tspl.commands.label.TSPLLabelUtils.hasFloatDecimals;
 
 /**
  * This command prints text on label.
@@ -197,6 +197,14 @@ public class Text implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (xCoordinate == null || yCoordinate == null) {
             throw new LabelParserException("TEXT: x and y positions are required");
         }
@@ -217,44 +225,34 @@ public class Text implements TSPLCommand {
             throw new LabelParserException("TEXT: content is required");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(LabelFormatCommand.TEXT.name());
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(LabelFormatCommand.TEXT.name());
+        buffer.append(EMPTY_SPACE)
                 .append(xCoordinate).append(COMMA)
                 .append(yCoordinate).append(COMMA)
                 .append(ESCAPED_DOUBLE_QUOTE).append(fontName).append(ESCAPED_DOUBLE_QUOTE)
                 .append(COMMA);
 
         if (rotation != null) {
-            commandBuilder.append(rotation.getRotation()).append(COMMA);
+            buffer.append(rotation.getRotation()).append(COMMA);
         }
 
         // For "ROMAN.TTF" true type font, xMultiplicationFactor parameter is ignored.
 
-        if (!hasFloatDecimals(xMultiplicationFactor)) {
-            commandBuilder.append(xMultiplicationFactor.intValue());
-        } else {
-            commandBuilder.append(xMultiplicationFactor);
-        }
+        buffer.append(xMultiplicationFactor);
 
-        commandBuilder.append(COMMA);
+        buffer.append(COMMA);
 
 
 
-        if (!hasFloatDecimals(yMultiplicationFactor)) {
-            commandBuilder.append(yMultiplicationFactor.intValue());
-        } else {
-            commandBuilder.append(yMultiplicationFactor);
-        }
+        buffer.append(yMultiplicationFactor);
 
-        commandBuilder.append(COMMA);
+        buffer.append(COMMA);
 
         if (alignment != null) {
-            commandBuilder.append(alignment.getAlignment()).append(COMMA);
+            buffer.append(alignment.getAlignment()).append(COMMA);
         }
 
-        commandBuilder.append(ESCAPED_DOUBLE_QUOTE).append(content).append(ESCAPED_DOUBLE_QUOTE)
+        buffer.append(ESCAPED_DOUBLE_QUOTE).append(content).append(ESCAPED_DOUBLE_QUOTE)
                 .append(LF);
-
-        return commandBuilder.toString();
     }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.commands.status;
+
+/**
+ * Conditions flagged by the status replies of {@link TSPLStatusPollCommands#STATUS}
+ * and {@link TSPLStatusPollCommands#STATUS_LONG}.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public enum PrinterCondition {
+    /**
+     * print head is open.
+     */
+    HEAD_OPEN(true),
+
+    /**
+     * paper jam.
+     */
+    PAPER_JAM(true),
+
+    /**
+     * out of paper.
+     */
+    PAPER_OUT(true),
+
+    /**
+     * out of ribbon.
+     */
+    RIBBON_OUT(true),
+
+    /**
+     * printer is paused.
+     */
+    PAUSE(false),
+
+    /**
+     * printer is printing.
+     */
+    PRINTING(false),
+
+    /**
+     * any other error, the printer error message of the extended status.
+     */
+    OTHER_ERROR(true),
+
+    /**
+     * backing label (extended status).
+     */
+    BACKING_LABEL(false),
+
+    /**
+     * cutting (extended status).
+     */
+    CUTTING(false),
+
+    /**
+     * form feed (extended status).
+     */
+    FORM_FEED(false),
+
+    /**
+     * waiting to press the print key (extended status).
+     */
+    WAITING_FOR_PRINT_KEY(false),
+
+    /**
+     * waiting to take the label (extended status).
+     */
+    WAITING_TO_TAKE_LABEL(false),
+
+    /**
+     * imaging (extended status).
+     */
+    IMAGING(false),
+
+    /**
+     * receive buffer is full (extended status).
+     */
+    BUFFER_FULL(false),
+
+    /**
+     * print head overheat (extended status).
+     */
+    HEAD_OVERHEAT(true),
+
+    /**
+     * stepping motor overheat (extended status).
+     */
+    MOTOR_OVERHEAT(true),
+
+    /**
+     * print head error (extended status).
+     */
+    HEAD_ERROR(true),
+
+    /**
+     * cutter jam (extended status).
+     */
+    CUTTER_JAM(true),
+
+    /**
+     * insufficient memory (extended status).
+     */
+    OUT_OF_MEMORY(true),
+
+    /**
+     * ribbon jam (extended status).
+     */
+    RIBBON_JAM(true);
+
+    private final boolean error;
+    private final long mask;
+
+    /**
+     * @param error whether the printer cannot print until it is resolved
+     */
+    PrinterCondition(boolean error) {
+        this.error = error;
+        this.mask = 1L << ordinal();
+    }
+
+    /**
+     * @return <code>true</code> if the printer cannot print until the condition
+     * is resolved
+     */
+    public boolean isError() {
+        return error;
+    }
+
+    /**
+     * @return bit of the condition in {@link PrinterStatus#getConditionBits()}
+     */
+    public long mask() {
+        return mask;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.commands.status;
+
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Printer status reported by {@link TSPLStatusPollCommands#STATUS} (one status byte)
+ * or {@link TSPLStatusPollCommands#STATUS_LONG} (&lt;STX&gt;, four status bytes,
+ * &lt;ETX&gt;&lt;CR&gt;&lt;LF&gt;). The status bytes are decoded into a bit set of
+ * {@link PrinterCondition}s; the status is immutable and stamped with the time it
+ * was received.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public final class PrinterStatus {
+    private static final byte STX = 2;
+    private static final byte ETX = 3;
+
+    /**
+     * conditions of the bits of the status byte.
+     */
+    private static final PrinterCondition[] STATUS_BITS = {
+            PrinterCondition.HEAD_OPEN, PrinterCondition.PAPER_JAM, PrinterCondition.PAPER_OUT,
+            PrinterCondition.RIBBON_OUT, PrinterCondition.PAUSE, PrinterCondition.PRINTING,
+            null, PrinterCondition.OTHER_ERROR};
+
+    /**
+     * conditions of the bits of the extended status byte #3.
+     */
+    private static final PrinterCondition[] ERROR_BITS = {
+            PrinterCondition.HEAD_OVERHEAT, PrinterCondition.MOTOR_OVERHEAT,
+            PrinterCondition.HEAD_ERROR, PrinterCondition.CUTTER_JAM,
+            PrinterCondition.OUT_OF_MEMORY, null, null, null};
+
+    /**
+     * conditions of the bits of the extended status byte #4.
+     */
+    private static final PrinterCondition[] MEDIA_BITS = {
+            PrinterCondition.PAPER_OUT, PrinterCondition.PAPER_JAM, PrinterCondition.RIBBON_OUT,
+            PrinterCondition.RIBBON_JAM, null, PrinterCondition.HEAD_OPEN, null, null};
+
+    private static final long ERRORS;
+
+    /**
+     * conditions in which the printer does not take more labels.
+     */
+    private static final long BLOCKING;
+
+    static {
+        long errors = 0;
+        for (PrinterCondition condition : PrinterCondition.values()) {
+            if (condition.isError()) {
+                errors |= condition.mask();
+            }
+        }
+        ERRORS = errors;
+        BLOCKING = errors | PrinterCondition.PAUSE.mask() | PrinterCondition.BUFFER_FULL.mask();
+    }
+
+    private final long conditions;
+    private final int statusBytes;
+    private final boolean extended;
+    private final long receivedNanos;
+
+    private PrinterStatus(long conditions, int statusBytes, boolean extended, long receivedNanos) {
+        this.conditions = conditions;
+        this.statusBytes = statusBytes;
+        this.extended = extended;
+        this.receivedNanos = receivedNanos;
+    }
+
+    /**
+     * Decodes the reply of a status poll, stamped with the current
+     * {@link System#nanoTime()}. The position of the buffer is not changed.
+     *
+     * @param reply the reply of a status poll
+     * @return the status
+     * @throws IllegalArgumentException if the reply is not a status reply
+     */
+    public static PrinterStatus parse(ByteBuffer reply) {
+        int length = reply.remaining();
+        int start = reply.position();
+        long now = System.nanoTime();
+        if (length == 1) {
+            int status = reply.get(start) & 0xFF;
+            return new PrinterStatus(decode(status), status, false, now);
+        } else if (length >= 6 && reply.get(start) == STX && reply.get(start + 5) == ETX) {
+            int status = reply.getInt(start + 1);
+            return new PrinterStatus(decodeExtended(status), status, true, now);
+        }
+        throw new IllegalArgumentException("Not a status reply of " + length + " bytes");
+    }
+
+    /**
+     * Decodes the reply of a status poll into condition bits without allocating.
+     * The position of the buffer is not changed.
+     *
+     * @param reply the reply of a status poll
+     * @return the {@link PrinterCondition#mask()}s of the flagged conditions, or
+     * <code>-1</code> if the reply is not a status reply
+     */
+    public static long decode(ByteBuffer reply) {
+        int length = reply.remaining();
+        int start = reply.position();
+        if (length == 1) {
+            return decode(reply.get(start) & 0xFF);
+        } else if (length >= 6 && reply.get(start) == STX && reply.get(start + 5) == ETX) {
+            return decodeExtended(reply.getInt(start + 1));
+        }
+        return -1;
+    }
+
+    private static long decode(int status) {
+        return bits(STATUS_BITS, status);
+    }
+
+    private static long decodeExtended(int status) {
+        long conditions = message((byte) (status >>> 24));
+        if ((status >>> 16 & 0x08) != 0) {
+            conditions |= PrinterCondition.BUFFER_FULL.mask();
+        }
+        return conditions | bits(ERROR_BITS, status >>> 8 & 0xFF) | bits(MEDIA_BITS, status & 0xFF);
+    }
+
+    private static long bits(PrinterCondition[] table, int status) {
+        long conditions = 0;
+        for (int bit = 0; bit < 8; bit++) {
+            if ((status & 1 << bit) != 0 && table[bit] != null) {
+                conditions |= table[bit].mask();
+            }
+        }
+        return conditions;
+    }
+
+    /**
+     * the extended status byte #1 is a message code, not a bit set.
+     */
+    private static long message(byte message) {
+        switch (message) {
+            case '`':
+                return PrinterCondition.PAUSE.mask();
+            case 'B':
+                return PrinterCondition.BACKING_LABEL.mask();
+            case 'C':
+                return PrinterCondition.CUTTING.mask();
+            case 'E':
+                return PrinterCondition.OTHER_ERROR.mask();
+            case 'F':
+                return PrinterCondition.FORM_FEED.mask();
+            case 'K':
+                return PrinterCondition.WAITING_FOR_PRINT_KEY.mask();
+            case 'L':
+                return PrinterCondition.WAITING_TO_TAKE_LABEL.mask();
+            case 'P':
+                return PrinterCondition.PRINTING.mask();
+            case 'W':
+                return PrinterCondition.IMAGING.mask();
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return <code>true</code> for the four byte status of
+     * {@link TSPLStatusPollCommands#STATUS_LONG}
+     */
+    public boolean isExtended() {
+        return extended;
+    }
+
+    /**
+     * @return the status bytes of the reply
+     */
+    public byte[] getStatusBytes() {
+        if (!extended) {
+            return new byte[]{(byte) statusBytes};
+        }
+        return new byte[]{(byte) (statusBytes >>> 24), (byte) (statusBytes >>> 16),
+                (byte) (statusBytes >>> 8), (byte) statusBytes};
+    }
+
+    /**
+     * @return the {@link PrinterCondition#mask()}s of the flagged conditions
+     */
+    public long getConditionBits() {
+        return conditions;
+    }
+
+    /**
+     * @param condition condition to test
+     * @return <code>true</code> if the printer reported the condition
+     */
+    public boolean has(PrinterCondition condition) {
+        return (conditions & condition.mask()) != 0;
+    }
+
+    /**
+     * @return the flagged conditions
+     */
+    public EnumSet<PrinterCondition> getConditions() {
+        EnumSet<PrinterCondition> set = EnumSet.noneOf(PrinterCondition.class);
+        for (PrinterCondition condition : PrinterCondition.values()) {
+            if (has(condition)) {
+                set.add(condition);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @return <code>true</code> if the printer is ready to print labels, no condition
+     * is flagged
+     */
+    public boolean isReady() {
+        return conditions == 0;
+    }
+
+    /**
+     * @return <code>true</code> if an {@link PrinterCondition#isError() error} is flagged
+     */
+    public boolean hasError() {
+        return (conditions & ERRORS) != 0;
+    }
+
+    /**
+     * @return <code>true</code> if the printer does not take more labels: an
+     * {@link PrinterCondition#isError() error} is flagged, the printer is paused or its
+     * receive buffer is full
+     */
+    public boolean isBlocking() {
+        return (conditions & BLOCKING) != 0;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the reply was decoded
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    /**
+     * @param unit unit of the age
+     * @return time since the reply was decoded
+     */
+    public long getAge(TimeUnit unit) {
+        return unit.convert(System.nanoTime() - receivedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * statuses are equal if the printer reported the same status bytes, the time they
+     * were received is not compared.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof PrinterStatus
+                && statusBytes == ((PrinterStatus) o).statusBytes
+                && extended == ((PrinterStatus) o).extended;
+    }
+
+    @Override
+    public int hashCode() {
+        return extended ? ~statusBytes : statusBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "PrinterStatus" + getConditions();
+    }
+}
@@ -16,7 +16,9 @@
 package org.fintrace.core.drivers.tspl.commands.status;
 
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.fintrace.core.drivers.tspl.DriverConstants.LF;
 import static org.fintrace.core.drivers.tspl.DriverConstants.STATUS_COMMAND_PREFIX;
 
@@ -164,6 +166,7 @@ public enum TSPLStatusPollCommands implements TSPLCommand {
 
     private String description;
     private String command;
+    private byte[] commandBytes;
 
     /**
      * @param command
@@ -172,6 +175,7 @@ public enum TSPLStatusPollCommands implements TSPLCommand {
     TSPLStatusPollCommands(String command, String description) {
         this.command = command;
         this.description = description;
+        this.commandBytes = getCommand().getBytes(US_ASCII);
     }
 
     /**
@@ -192,4 +196,12 @@ public enum TSPLStatusPollCommands implements TSPLCommand {
     public String getCommand() {
         return ((char) 27 + STATUS_COMMAND_PREFIX + command + LF);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
+        buffer.append(commandBytes);
+    }
 }
@@ -18,7 +18,9 @@ package org.fintrace.core.drivers.tspl.commands.system;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.fintrace.core.drivers.tspl.DriverConstants.LF;
 
 /**
@@ -37,6 +39,8 @@ import static org.fintrace.core.drivers.tspl.DriverConstants.LF;
 @Data
 @Builder
 public class ClearBuffer implements TSPLCommand {
+    private static final byte[] COMMAND_BYTES = (SystemCommand.CLS.name() + LF)
+            .getBytes(US_ASCII);
 
     /**
      * {@inheritDoc}
@@ -45,4 +49,12 @@ public class ClearBuffer implements TSPLCommand {
     public String getCommand() {
         return SystemCommand.CLS.name() + LF;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
+        buffer.append(COMMAND_BYTES);
+    }
 }
@@ -17,7 +17,9 @@ package org.fintrace.core.drivers.tspl.commands.system;
 
 import lombok.Builder;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.fintrace.core.drivers.tspl.DriverConstants.LF;
 import static org.fintrace.core.drivers.tspl.commands.system.SystemCommand.CUT;
 
@@ -32,6 +34,7 @@ import static org.fintrace.core.drivers.tspl.commands.system.SystemCommand.CUT;
  */
 @Builder
 public class Cut implements TSPLCommand {
+    private static final byte[] COMMAND_BYTES = (CUT.name() + LF).getBytes(US_ASCII);
 
     /**
      * {@inheritDoc}
@@ -40,4 +43,12 @@ public class Cut implements TSPLCommand {
     public String getCommand() {
         return CUT.name() + LF;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
+        buffer.append(COMMAND_BYTES);
+    }
 }
@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.system;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.EMPTY_SPACE;
@@ -50,13 +51,21 @@ public class Density implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (darkness == null) {
             throw new LabelParserException("ParseException DENSITY Command: "
                     + "darkness can't be empty");
         }
 
-        return SystemCommand.DENSITY.name()
-                + EMPTY_SPACE + darkness
-                + LF;
+        buffer.append(SystemCommand.DENSITY.name())
+                .append(EMPTY_SPACE).append(darkness)
+                .append(LF);
     }
 }
@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.system;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -45,22 +46,28 @@ public class Direction implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (printPositionAsFeed == null) {
             throw new LabelParserException("ParseException Direction Command: print "
                     + "position must be set");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(DIRECTION.name());
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(DIRECTION.name());
+        buffer.append(EMPTY_SPACE)
                 .append(printPositionAsFeed ? "1" : "0");
 
         if (printMirrorImage != null) {
-            commandBuilder.append(COMMA)
+            buffer.append(COMMA)
                     .append(printMirrorImage ? "1" : "0");
         }
 
-        commandBuilder.append(LF);
-
-        return commandBuilder.toString();
+        buffer.append(LF);
     }
 }
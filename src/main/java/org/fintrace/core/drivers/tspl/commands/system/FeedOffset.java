@@ -18,10 +18,10 @@ package org.fintrace.core.drivers.tspl.commands.system;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
-import static org.fintrace.core.drivers.tspl.commands.label.TSPLLabelUtils.hasFloatDecimals;
 
 /**
  * This command defines the selective, extra label feeding length
@@ -46,22 +46,24 @@ public class FeedOffset implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (offsetDistance == null) {
             throw new LabelParserException("ParseException OFFSET Command: offset can't be empty");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(SystemCommand.OFFSET.name());
-        commandBuilder.append(EMPTY_SPACE);
+        buffer.append(SystemCommand.OFFSET.name());
+        buffer.append(EMPTY_SPACE);
 
-        if (!hasFloatDecimals(offsetDistance)) {
-            commandBuilder.append(offsetDistance.intValue());
-        } else {
-            commandBuilder.append(offsetDistance);
-        }
+        buffer.append(offsetDistance);
 
-        commandBuilder.append(EMPTY_SPACE).append(UNIT_MM)
+        buffer.append(EMPTY_SPACE).append(UNIT_MM)
                 .append(LF);
-
-        return commandBuilder.toString();
     }
 }
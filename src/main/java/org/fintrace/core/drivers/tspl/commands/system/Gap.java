@@ -18,10 +18,10 @@ package org.fintrace.core.drivers.tspl.commands.system;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
-import static org.fintrace.core.drivers.tspl.commands.label.TSPLLabelUtils.hasFloatDecimals;
 
 /**
  * Defines the gap distance between two labels.<br>
@@ -58,42 +58,40 @@ public class Gap implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (labelDistance == null && labelOffsetDistance != null) {
             throw new LabelParserException("ParseException GAP Command: "
                     + "label distance and label offset should be specified");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(SystemCommand.GAP.name());
-        commandBuilder.append(EMPTY_SPACE);
+        buffer.append(SystemCommand.GAP.name());
+        buffer.append(EMPTY_SPACE);
 
-        if (!hasFloatDecimals(labelDistance)) {
-            commandBuilder.append(labelDistance.intValue());
-        } else {
-            commandBuilder.append(labelDistance);
-        }
+        buffer.append(labelDistance);
 
         if (measurementSystem == MeasurementSystem.METRIC) {
-            commandBuilder.append(EMPTY_SPACE).append(UNIT_MM);
+            buffer.append(EMPTY_SPACE).append(UNIT_MM);
         } else if (measurementSystem == MeasurementSystem.DOT) {
-            commandBuilder.append(EMPTY_SPACE).append("dot");
+            buffer.append(EMPTY_SPACE).append("dot");
         }
 
-        commandBuilder.append(COMMA);
+        buffer.append(COMMA);
 
-        if (!hasFloatDecimals(labelOffsetDistance)) {
-            commandBuilder.append(labelOffsetDistance.intValue());
-        } else {
-            commandBuilder.append(labelOffsetDistance);
-        }
+        buffer.append(labelOffsetDistance);
 
         if (measurementSystem == MeasurementSystem.METRIC) {
-            commandBuilder.append(EMPTY_SPACE).append(UNIT_MM);
+            buffer.append(EMPTY_SPACE).append(UNIT_MM);
         } else if (measurementSystem == MeasurementSystem.DOT) {
-            commandBuilder.append(EMPTY_SPACE).append("dot");
+            buffer.append(EMPTY_SPACE).append("dot");
         }
 
-        commandBuilder.append(LF);
-
-        return commandBuilder.toString();
+        buffer.append(LF);
     }
 }
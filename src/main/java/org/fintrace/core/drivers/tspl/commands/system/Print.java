@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.system;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
@@ -53,22 +54,28 @@ public class Print implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (nbLabels == null) {
             throw new LabelParserException("ParseException PRINT Command: "
                     + "number of sets of labels is required");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(PRINT.name());
-        commandBuilder.append(EMPTY_SPACE)
+        buffer.append(PRINT.name());
+        buffer.append(EMPTY_SPACE)
                 .append(nbLabels);
 
         if (nbCopies != null) {
-            commandBuilder.append(COMMA)
+            buffer.append(COMMA)
                     .append(nbCopies);
         }
 
-        commandBuilder.append(LF);
-
-        return commandBuilder.toString();
+        buffer.append(LF);
     }
 }
@@ -18,6 +18,7 @@ package org.fintrace.core.drivers.tspl.commands.system;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.EMPTY_SPACE;
 import static org.fintrace.core.drivers.tspl.DriverConstants.LF;
@@ -63,14 +64,20 @@ public class PrinterInfo implements TSPLCommand {
      */
     @Override
     public String getCommand() {
-        StringBuilder commandBuilder = new StringBuilder(SELFTEST.name());
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
+        buffer.append(SELFTEST.name());
         if (page != null) {
-            commandBuilder.append(EMPTY_SPACE)
+            buffer.append(EMPTY_SPACE)
                     .append(page.name());
         }
 
-        commandBuilder.append(LF);
-
-        return commandBuilder.toString();
+        buffer.append(LF);
     }
 }
@@ -18,10 +18,10 @@ package org.fintrace.core.drivers.tspl.commands.system;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.*;
-import static org.fintrace.core.drivers.tspl.commands.label.TSPLLabelUtils.hasFloatDecimals;
 
 
 /**
@@ -58,42 +58,40 @@ public class Size implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (labelWidth == null || labelLength == null) {
             throw new LabelParserException("ParseException SIZE Command: "
                     + "label width and label length should be specified");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(SystemCommand.SIZE.name());
-        commandBuilder.append(EMPTY_SPACE);
+        buffer.append(SystemCommand.SIZE.name());
+        buffer.append(EMPTY_SPACE);
 
-        if (!hasFloatDecimals(labelWidth)) {
-            commandBuilder.append(labelWidth.intValue());
-        } else {
-            commandBuilder.append(labelWidth);
-        }
+        buffer.append(labelWidth);
 
         if (sizeMeasurementSystem == MeasurementSystem.METRIC) {
-            commandBuilder.append(EMPTY_SPACE).append(UNIT_MM);
+            buffer.append(EMPTY_SPACE).append(UNIT_MM);
         } else if (sizeMeasurementSystem == MeasurementSystem.DOT) {
-            commandBuilder.append(EMPTY_SPACE).append("dot");
+            buffer.append(EMPTY_SPACE).append("dot");
         }
 
-        commandBuilder.append(COMMA);
+        buffer.append(COMMA);
 
-        if (!hasFloatDecimals(labelLength)) {
-            commandBuilder.append(labelLength.intValue());
-        } else {
-            commandBuilder.append(labelLength);
-        }
+        buffer.append(labelLength);
 
         if (sizeMeasurementSystem == MeasurementSystem.METRIC) {
-            commandBuilder.append(EMPTY_SPACE).append(UNIT_MM);
+            buffer.append(EMPTY_SPACE).append(UNIT_MM);
         } else if (sizeMeasurementSystem == MeasurementSystem.DOT) {
-            commandBuilder.append(EMPTY_SPACE).append("dot");
+            buffer.append(EMPTY_SPACE).append("dot");
         }
 
-        commandBuilder.append(LF);
-
-        return commandBuilder.toString();
+        buffer.append(LF);
     }
 }
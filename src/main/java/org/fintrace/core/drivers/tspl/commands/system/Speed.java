@@ -18,11 +18,11 @@ package org.fintrace.core.drivers.tspl.commands.system;
 import lombok.Builder;
 import lombok.Data;
 import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.EMPTY_SPACE;
 import static org.fintrace.core.drivers.tspl.DriverConstants.LF;
-import static org.fintrace.core.drivers.tspl.commands.label.TSPLLabelUtils.hasFloatDecimals;
 
 /**
  * This command defines the print speed.<br>
@@ -47,21 +47,23 @@ public class Speed implements TSPLCommand {
      */
     @Override
     public String getCommand() {
+        return TSPLCommandBuffer.encodeToString(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(TSPLCommandBuffer buffer) {
         if (printSpeed == null) {
             throw new LabelParserException("ParseException SPEED Command: speed can't be empty");
         }
 
-        StringBuilder commandBuilder = new StringBuilder(SystemCommand.SPEED.name());
-        commandBuilder.append(EMPTY_SPACE);
-
-        if (!hasFloatDecimals(printSpeed)) {
-            commandBuilder.append(printSpeed.intValue());
-        } else {
-            commandBuilder.append(printSpeed);
-        }
+        buffer.append(SystemCommand.SPEED.name());
+        buffer.append(EMPTY_SPACE);
 
-        commandBuilder.append(LF);
+        buffer.append(printSpeed);
 
-        return commandBuilder.toString();
+        buffer.append(LF);
     }
 }
@@ -15,39 +15,171 @@
  */
 package org.fintrace.core.drivers.tspl.connection;
 
+import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.commands.status.PrinterStatus;
 import org.fintrace.core.drivers.tspl.exceptions.ConnectionClientException;
+import org.fintrace.core.drivers.tspl.exceptions.PrinterException;
+import org.fintrace.core.drivers.tspl.listeners.ByteDataListener;
 import org.fintrace.core.drivers.tspl.listeners.ClientListener;
 import org.fintrace.core.drivers.tspl.listeners.DataListener;
+import org.fintrace.core.drivers.tspl.listeners.MessageView;
+import org.fintrace.core.drivers.tspl.listeners.OverflowPolicy;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
 
 /**
  * Generic client connection implementation for TSPL2 device
  * <p>
- * IMPORTANT : Each notifications fired by this class for each of its registered
- * listeners is done by their own independent thread. This means new thread for
- * each notification. Thus, the listener implementation added into this
- * socket do not need to implement "Fast Return" method and will not clog the
- * selector thread.
+ * IMPORTANT : The notifications fired by this class are not run by the connection
+ * threads. Each registered listener has its own bounded queue of events, delivered
+ * one at a time and in order by the listener executor (see
+ * {@link #setListenerExecutor(Executor)}). Thus, the listener implementation added
+ * into this socket do not need to implement "Fast Return" method and will not clog
+ * the selector thread, while e.g. a <code>messageSent</code> is always delivered
+ * before the <code>messageReceived</code> that followed it.
+ * </p>
+ * <p>
+ * Messages are written in send order under the session lock. Senders do all their
+ * waiting before taking it: for the {@link FlowControl flow control}, a pending spool
+ * replay, the {@link CongestionWindow pacing window} and room in the transport (see
+ * {@link #awaitTransmit(int)}), so that status polls always get through.
  * </p>
  *
  * @author Venkaiah Chowdary Koneru
  */
 public abstract class AbstractConnectionClient implements TSPLConnectionClient {
-    protected List<ClientListener> clientListeners = new ArrayList<>();
-    protected List<DataListener> dataListeners = new ArrayList<>();
-    protected ExecutorService listenerExecutorService = Executors.newCachedThreadPool();
-    protected boolean isConnected = Boolean.FALSE;
-    protected boolean alive = Boolean.FALSE;
+    protected List<ClientListener> clientListeners = new CopyOnWriteArrayList<>();
+    protected List<DataListener> dataListeners = new CopyOnWriteArrayList<>();
+    protected List<ByteDataListener> byteDataListeners = new CopyOnWriteArrayList<>();
+    protected ExecutorService listenerExecutorService;
+
+    /**
+     * state of the connection, changed by compare and set so that concurrent connects,
+     * disconnects and I/O callbacks agree on one outcome.
+     */
+    private final AtomicReference<ConnectionState> state =
+            new AtomicReference<>(ConnectionState.DISCONNECTED);
+
+    private static final char ESC = 27;
+
+    /**
+     * default size at which coalesced messages are written without waiting.
+     */
+    public static final int DEFAULT_COALESCING_BYTES = 16 * 1024;
+
+    /**
+     * default number of events waiting for a listener.
+     */
+    public static final int DEFAULT_LISTENER_QUEUE_CAPACITY = 4096;
+
+    /**
+     * default number of events delivered to a listener in one executor task.
+     */
+    public static final int DEFAULT_LISTENER_BATCH_SIZE = 64;
+
+    /**
+     * incremental updates erasing more than this part of the label area fall back to
+     * a full redraw.
+     */
+    private static final float MAX_ERASE_RATIO = 0.5f;
 
     private Charset charset = US_ASCII;
 
+    /**
+     * per sender thread buffer, re-used for encoding the labels.
+     */
+    private final ThreadLocal<TSPLCommandBuffer> labelBuffers = new ThreadLocal<>();
+
+    /**
+     * setup commands applied on the current printer session, also the lock which keeps
+     * the messages in send order with the session state.
+     */
+    private final SetupState setupState = new SetupState();
+
+    /**
+     * label last drawn into the image buffer of the printer.
+     */
+    private final PrintedImage printedImage = new PrintedImage();
+
+    /**
+     * set to forget the session with the next message. A flag instead of the lock, so
+     * that I/O threads can reset the session while a sender waits for them.
+     */
+    private volatile boolean sessionLost = false;
+    private volatile boolean setupElision = false;
+    private volatile boolean imageReuse = false;
+    private volatile boolean incrementalUpdates = false;
+    private volatile int coalescingBytes = DEFAULT_COALESCING_BYTES;
+    private volatile long coalescingDelayNanos = 0;
+
+    /**
+     * event queue of each registered listener.
+     */
+    private final ConcurrentMap<Object, ListenerQueue> listenerQueues = new ConcurrentHashMap<>();
+    private volatile Executor listenerExecutor;
+    private volatile int listenerQueueCapacity = DEFAULT_LISTENER_QUEUE_CAPACITY;
+    private volatile OverflowPolicy listenerOverflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private volatile int listenerBatchSize = DEFAULT_LISTENER_BATCH_SIZE;
+    private final AtomicLong droppedListenerEvents = new AtomicLong();
+
+    /**
+     * splits the received bytes into replies.
+     */
+    private volatile FrameDecoder frameDecoder = new ReplyFrameDecoder();
+    private volatile PrinterStatus lastStatus;
+    private final FlowControl flowControl = new FlowControl();
+    private volatile CongestionWindow congestionWindow;
+    private volatile SpoolSession spoolSession;
+    // written under the session lock
+    private volatile long sentMessages;
+
+    /**
+     * queries waiting for their reply, in send order per reply shape.
+     */
+    private final ConcurrentMap<ReplyShape, Queue<PendingQuery<?>>> pendingQueries =
+            new ConcurrentHashMap<>();
+
+    /**
+     * hands the decoded replies to {@link #frameReceived(ReplyShape, ByteBuffer)}.
+     */
+    protected final FrameDecoder.FrameHandler frameHandler = this::frameReceived;
+
+    /**
+     * scratch buffer for incremental updates, guarded by the session lock.
+     */
+    private TSPLCommandBuffer incrementBuffer;
+
+    protected AbstractConnectionClient() {
+        this(Executors.newCachedThreadPool());
+    }
+
+    /**
+     * @param listenerExecutorService thread pool running the listener notifications
+     */
+    protected AbstractConnectionClient(ExecutorService listenerExecutorService) {
+        this.listenerExecutorService = listenerExecutorService;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -62,6 +194,7 @@ public abstract class AbstractConnectionClient implements TSPLConnectionClient {
     @Override
     public void removeClientListener(ClientListener listener) {
         this.clientListeners.remove(listener);
+        removeListenerQueue(listener);
     }
 
     /**
@@ -78,6 +211,24 @@ public abstract class AbstractConnectionClient implements TSPLConnectionClient {
     @Override
     public void removeDataListener(DataListener listener) {
         this.dataListeners.remove(listener);
+        removeListenerQueue(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addByteDataListener(ByteDataListener listener) {
+        this.byteDataListeners.add(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeByteDataListener(ByteDataListener listener) {
+        this.byteDataListeners.remove(listener);
+        removeListenerQueue(listener);
     }
 
     /**
@@ -85,7 +236,43 @@ public abstract class AbstractConnectionClient implements TSPLConnectionClient {
      */
     @Override
     public boolean isConnected() {
-        return isConnected;
+        return state.get() == ConnectionState.CONNECTED;
+    }
+
+    /**
+     * @return the state of the connection
+     */
+    public ConnectionState getConnectionState() {
+        return state.get();
+    }
+
+    /**
+     * Moves the connection to the next state if it is in the expected one.
+     *
+     * @param expected the state the connection has to be in
+     * @param next     the new state
+     * @return <code>true</code> if the state was changed
+     */
+    protected boolean compareAndSetState(ConnectionState expected, ConnectionState next) {
+        return state.compareAndSet(expected, next);
+    }
+
+    /**
+     * Moves the connection to the given state unconditionally.
+     *
+     * @param next the new state
+     * @return the previous state
+     */
+    protected ConnectionState getAndSetState(ConnectionState next) {
+        return state.getAndSet(next);
+    }
+
+    /**
+     * @return <code>true</code> if a data listener of any kind is registered, so that
+     * the messages need to be kept for the notifications
+     */
+    protected boolean hasDataListeners() {
+        return !dataListeners.isEmpty() || !byteDataListeners.isEmpty();
     }
 
     /**
@@ -94,9 +281,30 @@ public abstract class AbstractConnectionClient implements TSPLConnectionClient {
      * @param message
      */
     protected void notifyMessageReceived(String message) {
-        dataListeners.forEach(dataListener -> listenerExecutorService.execute(() ->
+        dataListeners.forEach(dataListener -> post(dataListener, () ->
                 dataListener.messageReceived(message)
         ));
+        if (!byteDataListeners.isEmpty()) {
+            MessageView view = MessageView.of(message, charset);
+            byteDataListeners.forEach(listener -> post(listener, () ->
+                    listener.messageReceived(view)
+            ));
+        }
+    }
+
+    /**
+     * Notifies all the data listeners about the received message, the String
+     * listeners decode it on their own thread.
+     *
+     * @param message received bytes, not modified afterwards
+     */
+    protected void notifyMessageReceived(MessageView message) {
+        dataListeners.forEach(dataListener -> post(dataListener, () ->
+                dataListener.messageReceived(message.asString())
+        ));
+        byteDataListeners.forEach(listener -> post(listener, () ->
+                listener.messageReceived(message)
+        ));
     }
 
     /**
@@ -105,9 +313,30 @@ public abstract class AbstractConnectionClient implements TSPLConnectionClient {
      * @param message
      */
     protected void notifyMessageSent(String message) {
-        dataListeners.forEach(dataListener -> listenerExecutorService.execute(() ->
+        dataListeners.forEach(dataListener -> post(dataListener, () ->
                 dataListener.messageSent(message)
         ));
+        if (!byteDataListeners.isEmpty()) {
+            MessageView view = MessageView.of(message, charset);
+            byteDataListeners.forEach(listener -> post(listener, () ->
+                    listener.messageSent(view)
+            ));
+        }
+    }
+
+    /**
+     * Notifies all the data listeners about the submitted message, the String
+     * listeners decode it on their own thread.
+     *
+     * @param message sent bytes, not modified afterwards
+     */
+    protected void notifyMessageSent(MessageView message) {
+        dataListeners.forEach(dataListener -> post(dataListener, () ->
+                dataListener.messageSent(message.asString())
+        ));
+        byteDataListeners.forEach(listener -> post(listener, () ->
+                listener.messageSent(message)
+        ));
     }
 
     /**
@@ -118,13 +347,38 @@ public abstract class AbstractConnectionClient implements TSPLConnectionClient {
      */
     protected void notifyMessageSendFailed(final ConnectionClientException exception,
                                            final String messageToSend) {
+        resetSession();
         /*
-         * For each listener, create a separate independent thread for firing
-         * the listener methods.
+         * Queue the event for each listener, its listener methods are fired
+         * in order by the listener executor.
          */
-        dataListeners.forEach(dataListener -> listenerExecutorService.execute(() ->
+        dataListeners.forEach(dataListener -> post(dataListener, () ->
                 dataListener.messageSendFailed(exception, messageToSend)
         ));
+        if (!byteDataListeners.isEmpty()) {
+            MessageView view = MessageView.of(messageToSend, charset);
+            byteDataListeners.forEach(listener -> post(listener, () ->
+                    listener.messageSendFailed(exception, view)
+            ));
+        }
+    }
+
+    /**
+     * Notifies all the data listeners about the failure to send message, the String
+     * listeners decode it on their own thread.
+     *
+     * @param exception     cause of the failure
+     * @param messageToSend bytes which could not be sent, not modified afterwards
+     */
+    protected void notifyMessageSendFailed(final ConnectionClientException exception,
+                                           final MessageView messageToSend) {
+        resetSession();
+        dataListeners.forEach(dataListener -> post(dataListener, () ->
+                dataListener.messageSendFailed(exception, messageToSend.asString())
+        ));
+        byteDataListeners.forEach(listener -> post(listener, () ->
+                listener.messageSendFailed(exception, messageToSend)
+        ));
     }
 
     /**
@@ -132,11 +386,17 @@ public abstract class AbstractConnectionClient implements TSPLConnectionClient {
      * connection establishment to the TSPL2 device.
      */
     protected void notifyConnection() {
+        forgetPrinter();
+        SpoolSession spoolSession = this.spoolSession;
+        if (spoolSession != null && spoolSession.isPending()) {
+            // sent by the next message at the latest, in front of it
+            getListenerExecutor().execute(this::replaySpool);
+        }
         /*
-         * For each listener, create a separate independent thread for firing
-         * the listener methods.
+         * Queue the event for each listener, its listener methods are fired
+         * in order by the listener executor.
          */
-        clientListeners.forEach(clientListener -> listenerExecutorService.execute(() ->
+        clientListeners.forEach(clientListener -> post(clientListener, () ->
                 clientListener.connectionEstablished(AbstractConnectionClient.this)
         ));
     }
@@ -146,11 +406,12 @@ public abstract class AbstractConnectionClient implements TSPLConnectionClient {
      * to the TSPL2 device.
      */
     protected void notifyConnectionLost() {
+        forgetPrinter();
         /*
-         * For each listener, create a separate independent thread for firing
-         * the listener methods.
+         * Queue the event for each listener, its listener methods are fired
+         * in order by the listener executor.
          */
-        clientListeners.forEach(clientListener -> listenerExecutorService.execute(() ->
+        clientListeners.forEach(clientListener -> post(clientListener, () ->
                 clientListener.connectionLost(AbstractConnectionClient.this)
         ));
     }
@@ -160,11 +421,12 @@ public abstract class AbstractConnectionClient implements TSPLConnectionClient {
      * to the TSPL2 device.
      */
     protected void notifyConnectionFailed() {
+        resetSession();
         /*
-         * For each listener, create a separate independent thread for firing
-         * the listener methods.
+         * Queue the event for each listener, its listener methods are fired
+         * in order by the listener executor.
          */
-        clientListeners.forEach(clientListener -> listenerExecutorService.execute(() ->
+        clientListeners.forEach(clientListener -> post(clientListener, () ->
                 clientListener.connectionIsFailing(AbstractConnectionClient.this, null)
         ));
     }
@@ -173,17 +435,960 @@ public abstract class AbstractConnectionClient implements TSPLConnectionClient {
      *
      */
     protected void notifyDisconnected() {
+        forgetPrinter();
         /*
-         * For each listener, create a separate independent thread for firing
-         * the listener methods.
+         * Queue the event for each listener, its listener methods are fired
+         * in order by the listener executor.
          */
-        clientListeners.forEach(clientListener -> listenerExecutorService.execute(() ->
+        clientListeners.forEach(clientListener -> post(clientListener, () ->
                 clientListener.connectionLost(AbstractConnectionClient.this)
         ));
     }
 
+    /**
+     * forgets what is known about the printer, the connection changed.
+     */
+    private void forgetPrinter() {
+        resetSession();
+        frameDecoder.reset();
+        failQueries(new ConnectionClientException("Connection closed."));
+        lastStatus = null;
+        flow(null);
+        CongestionWindow window = congestionWindow;
+        if (window != null) {
+            window.reset();
+        }
+    }
+
+    /**
+     * registers the reply expected for a raw message, guarded by the session lock so
+     * that the expectations are in send order.
+     */
+    private void expectReply(byte[] message, int length) {
+        ReplyShape shape = ReplyShape.of(message, length);
+        if (shape != null) {
+            frameDecoder.expect(shape);
+            queriesOf(shape).add(PendingQuery.RAW);
+            pollSent(shape);
+        }
+    }
+
+    /**
+     * lets the congestion window know which labels a status poll acknowledges.
+     */
+    private void pollSent(ReplyShape shape) {
+        CongestionWindow window = congestionWindow;
+        if (window != null && isPoll(shape)) {
+            window.pollSent();
+        }
+    }
+
+    private static boolean isPoll(ReplyShape shape) {
+        return shape == ReplyShape.STATUS || shape == ReplyShape.STATUS_LONG;
+    }
+
+    private Queue<PendingQuery<?>> queriesOf(ReplyShape shape) {
+        return pendingQueries.computeIfAbsent(shape, s -> new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * fails the queries waiting for a reply, the connection is gone.
+     */
+    private void failQueries(ConnectionClientException cause) {
+        for (Queue<PendingQuery<?>> queries : pendingQueries.values()) {
+            PendingQuery<?> query;
+            while ((query = queries.poll()) != null) {
+                query.fail(cause);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletableFuture<T> query(TSPLCommand command, ReplyShape shape,
+                                          Function<ByteBuffer, T> parser, long timeout,
+                                          TimeUnit unit) {
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer(64, charset);
+        command.writeTo(buffer);
+        boolean immediate = buffer.size() > 0 && buffer.array()[0] == ESC;
+
+        PendingQuery<T> query = new PendingQuery<>(parser);
+        CompletableFuture<Void> sent;
+        synchronized (setupState) {
+            if (!isConnected()) {
+                throw new PrinterException("Printer is not connected");
+            }
+            rawMessage(immediate, false);
+            frameDecoder.expect(shape);
+            queriesOf(shape).add(query);
+            pollSent(shape);
+            try {
+                sent = transmitAsync(buffer);
+            } catch (RuntimeException e) {
+                abandon(shape, query, false);
+                throw e;
+            }
+        }
+        sent.whenComplete((v, e) -> {
+            if (e != null) {
+                query.fail(e);
+                abandon(shape, query, false);
+            }
+        });
+        query.getFuture().whenComplete((r, e) -> {
+            if (e instanceof TimeoutException) {
+                abandon(shape, query, true);
+            }
+        });
+        query.timeout(timeout, unit);
+        return query.getFuture();
+    }
+
+    /**
+     * The query timed out or was not sent, so its reply may never come. Unless it was
+     * answered meanwhile, one reply of its shape is taken for lost by the decoder and the
+     * congestion window, instead of handing each later reply of the shape to the query
+     * before its own. The queries waiting for other shapes are left alone.
+     *
+     * @param shape    shape of the reply of the query
+     * @param query    the abandoned query
+     * @param timedOut whether the printer failed to answer, rather than the query to be sent
+     */
+    private void abandon(ReplyShape shape, PendingQuery<?> query, boolean timedOut) {
+        synchronized (setupState) {
+            Queue<PendingQuery<?>> queries = pendingQueries.get(shape);
+            if (queries == null || !queries.remove(query)) {
+                return;
+            }
+            frameDecoder.replyLost(shape);
+            CongestionWindow window = congestionWindow;
+            if (window != null && isPoll(shape)) {
+                window.pollLost(timedOut);
+            }
+        }
+    }
+
+    /**
+     * Receives a reply frame decoded by the {@link FrameDecoder}, completes the query
+     * waiting for it and notifies the data listeners about it.
+     *
+     * @param shape shape of the reply
+     * @param frame bytes of the reply, only valid during the call
+     */
+    protected void frameReceived(ReplyShape shape, ByteBuffer frame) {
+        if (shape == ReplyShape.STATUS || shape == ReplyShape.STATUS_LONG) {
+            updateStatus(frame);
+        }
+        if (shape != ReplyShape.UNSOLICITED) {
+            Queue<PendingQuery<?>> queries = pendingQueries.get(shape);
+            PendingQuery<?> query = queries == null ? null : queries.poll();
+            if (query != null) {
+                query.complete(frame.duplicate());
+            }
+        }
+        if (hasDataListeners()) {
+            ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+            copy.put(frame.duplicate());
+            copy.flip();
+            notifyMessageReceived(new MessageView(copy, charset));
+        }
+    }
+
+    /**
+     * keeps the status reported by the reply of a status poll, queried or sent raw.
+     */
+    private void updateStatus(ByteBuffer frame) {
+        PrinterStatus status;
+        try {
+            status = PrinterStatus.parse(frame);
+        } catch (IllegalArgumentException e) {
+            // not a status, the last known status is kept
+            status = null;
+        }
+        CongestionWindow window = congestionWindow;
+        if (window != null) {
+            window.statusReceived(status);
+        }
+        if (status == null) {
+            return;
+        }
+        lastStatus = status;
+        if (flowControl.isEnabled()) {
+            flow(status.isBlocking() ? status : null);
+        }
+    }
+
+    /**
+     * suspends sending for a blocking status, resumes it for <code>null</code>.
+     */
+    private void flow(PrinterStatus blocking) {
+        if (!flowControl.update(blocking)) {
+            return;
+        }
+        clientListeners.forEach(clientListener -> post(clientListener, blocking != null
+                ? () -> clientListener.sendingSuspended(AbstractConnectionClient.this, blocking)
+                : () -> clientListener.sendingResumed(AbstractConnectionClient.this)));
+    }
+
+    /**
+     * Enables or disables status driven flow control, disabled by default. While
+     * enabled, a status reply reporting that the printer does not take more labels
+     * (see {@link PrinterStatus#isBlocking()}) suspends sending: senders of labels and
+     * messages wait until a status reply reports recovery, or the connection is
+     * re-established or closed. Status polls and other immediate (&lt;ESC&gt;) commands
+     * are still sent.
+     * <p>
+     * The status is only known from status polls, use a {@link StatusPoller} to keep
+     * it current.
+     * </p>
+     *
+     * @param flowControl <code>true</code> to suspend sending on a blocking status
+     */
+    public void setFlowControl(boolean flowControl) {
+        this.flowControl.setEnabled(flowControl);
+        PrinterStatus status = lastStatus;
+        flow(flowControl && status != null && status.isBlocking() ? status : null);
+    }
+
+    public boolean isFlowControl() {
+        return flowControl.isEnabled();
+    }
+
+    /**
+     * Limits how long senders wait while sending is suspended or the
+     * {@link #setPacingWindow(int) pacing window} is full, after which the send fails
+     * with a {@link PrinterException}.
+     *
+     * @param timeout longest wait, <code>0</code> (default) waits until sending resumes
+     * @param unit    unit of the timeout
+     */
+    public void setFlowControlTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("flow control timeout must not be negative");
+        }
+        flowControl.setTimeoutNanos(unit.toNanos(timeout));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSuspended() {
+        return flowControl.isSuspended();
+    }
+
+    /**
+     * Paces the labels sent with {@link #send(TSPLLabel)} so that only a few of them
+     * wait in the printer, disabled by default. The labels in flight, sent but not
+     * known to be taken by the printer, are limited by a window which grows by one label
+     * whenever a status reply reports no blocking condition (ready, or still printing),
+     * and is halved when the printer falls behind: a blocking status, such as a full
+     * receive buffer, or a timed out status query. Senders wait for room in the
+     * window, at most for the {@link #setFlowControlTimeout(long, TimeUnit) flow control
+     * timeout}.
+     * <p>
+     * Labels are only acknowledged by status polls, use a {@link StatusPoller} along
+     * with pacing. Raw messages are not paced.
+     * </p>
+     *
+     * @param maxWindow largest number of labels in flight, <code>0</code> disables
+     *                  pacing
+     */
+    public void setPacingWindow(int maxWindow) {
+        if (maxWindow < 0) {
+            throw new IllegalArgumentException("pacing window must not be negative");
+        }
+        CongestionWindow previous = congestionWindow;
+        congestionWindow = maxWindow == 0 ? null : new CongestionWindow(maxWindow);
+        if (previous != null) {
+            // wakes up the senders waiting for the previous window
+            previous.reset();
+        }
+    }
+
+    /**
+     * @return the current pacing window in labels, <code>0</code> if pacing is disabled
+     */
+    public int getPacingWindow() {
+        CongestionWindow window = congestionWindow;
+        return window == null ? 0 : window.getWindow();
+    }
+
+    /**
+     * @return number of paced labels sent but not yet acknowledged by a status reply
+     */
+    public int getLabelsInFlight() {
+        CongestionWindow window = congestionWindow;
+        return window == null ? 0 : window.getInFlight();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PrinterStatus getLastStatus() {
+        return lastStatus;
+    }
+
+    /**
+     * Counts the labels and messages other than immediate (&lt;ESC&gt;) commands sent
+     * by this client, e.g. to notice activity between two status polls.
+     *
+     * @return number of labels and non-immediate messages sent
+     */
+    public long getSentMessageCount() {
+        return sentMessages;
+    }
+
+    /**
+     * @return the event loop serving the connection, <code>null</code> if it is not
+     * served by one
+     */
+    EventLoop eventLoop() {
+        return null;
+    }
+
+    /**
+     * Sets the decoder splitting the received bytes into replies. Set it before
+     * connecting.
+     *
+     * @param frameDecoder decoder, a {@link ReplyFrameDecoder} by default
+     */
+    public void setFrameDecoder(FrameDecoder frameDecoder) {
+        if (frameDecoder == null) {
+            throw new IllegalArgumentException("frame decoder is required");
+        }
+        this.frameDecoder = frameDecoder;
+    }
+
+    public FrameDecoder getFrameDecoder() {
+        return frameDecoder;
+    }
+
+    /**
+     * @return <code>false</code> on an event loop thread or under the session lock,
+     * where waiting for a listener would stall the other connections or senders
+     */
+    boolean mayWaitForListeners() {
+        return !EventLoop.inAnyEventLoop() && !Thread.holdsLock(setupState);
+    }
+
+    /**
+     * queues the event for the listener.
+     */
+    private void post(Object listener, Runnable event) {
+        listenerQueues.computeIfAbsent(listener, l -> new ListenerQueue(this)).post(event);
+    }
+
+    private void removeListenerQueue(Object listener) {
+        if (!clientListeners.contains(listener) && !dataListeners.contains(listener)
+                && !byteDataListeners.contains(listener)) {
+            // the queue delivers the events already posted
+            listenerQueues.remove(listener);
+        }
+    }
+
+    /**
+     * Sets the executor delivering the listener events, e.g. an executor of virtual
+     * threads. Each listener uses at most one thread of the executor at a time. By
+     * default, the thread pool of the client is used.
+     *
+     * @param listenerExecutor executor, <code>null</code> for the default one
+     */
+    public void setListenerExecutor(Executor listenerExecutor) {
+        this.listenerExecutor = listenerExecutor;
+    }
+
+    public Executor getListenerExecutor() {
+        Executor executor = listenerExecutor;
+        return executor != null ? executor : listenerExecutorService;
+    }
+
+    /**
+     * @param listenerQueueCapacity the number of events which may wait for a listener,
+     *                              {@link #DEFAULT_LISTENER_QUEUE_CAPACITY} by default
+     */
+    public void setListenerQueueCapacity(int listenerQueueCapacity) {
+        if (listenerQueueCapacity <= 0) {
+            throw new IllegalArgumentException("listener queue capacity must be positive");
+        }
+        this.listenerQueueCapacity = listenerQueueCapacity;
+    }
+
+    public int getListenerQueueCapacity() {
+        return listenerQueueCapacity;
+    }
+
+    /**
+     * @param listenerOverflowPolicy what happens to the events of a listener with a full
+     *                               queue, {@link OverflowPolicy#DROP_OLDEST} by default
+     */
+    public void setListenerOverflowPolicy(OverflowPolicy listenerOverflowPolicy) {
+        if (listenerOverflowPolicy == null) {
+            throw new IllegalArgumentException("overflow policy is required");
+        }
+        this.listenerOverflowPolicy = listenerOverflowPolicy;
+    }
+
+    public OverflowPolicy getListenerOverflowPolicy() {
+        return listenerOverflowPolicy;
+    }
+
+    /**
+     * @param listenerBatchSize the number of events delivered to a listener before its
+     *                          executor task gives way to others,
+     *                          {@link #DEFAULT_LISTENER_BATCH_SIZE} by default
+     */
+    public void setListenerBatchSize(int listenerBatchSize) {
+        if (listenerBatchSize <= 0) {
+            throw new IllegalArgumentException("listener batch size must be positive");
+        }
+        this.listenerBatchSize = listenerBatchSize;
+    }
+
+    public int getListenerBatchSize() {
+        return listenerBatchSize;
+    }
+
+    /**
+     * @return the number of listener events discarded by the overflow policy
+     */
+    public long getDroppedListenerEvents() {
+        return droppedListenerEvents.get();
+    }
+
+    void listenerEventDropped() {
+        droppedListenerEvents.incrementAndGet();
+    }
+
+    /**
+     * Sends a raw message. Unless it is an immediate (&lt;ESC&gt;) command, the
+     * printer session state is reset as the message may change the settings or the
+     * image buffer.
+     *
+     * @param message TSPL2 commands
+     */
     public void send(String message) {
-        send(message.getBytes(charset));
+        boolean immediate = !message.isEmpty() && message.charAt(0) == ESC;
+        byte[] bytes = message.getBytes(charset);
+        if (!immediate) {
+            flowControl.await();
+            replayFirst();
+            awaitTransmit(bytes.length);
+        }
+        try {
+            synchronized (setupState) {
+                rawMessage(immediate, SetupState.containsReset(message));
+                expectReply(bytes, bytes.length);
+                if (!immediate && spoolSession != null) {
+                    transmitSpooled(new TSPLCommandBuffer(bytes.length, charset).append(bytes));
+                } else {
+                    send(bytes);
+                }
+            }
+        } finally {
+            releaseTransmit();
+        }
+    }
+
+    /**
+     * Sends the encoded commands. Unless they are an immediate (&lt;ESC&gt;) command,
+     * the printer session state is reset as they may change the settings or the image
+     * buffer.
+     *
+     * @param buffer buffer holding the encoded commands
+     */
+    @Override
+    public void send(TSPLCommandBuffer buffer) {
+        sendAsync(buffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Void> sendAsync(TSPLCommandBuffer buffer) {
+        boolean immediate = buffer.size() > 0 && buffer.array()[0] == ESC;
+        if (!immediate) {
+            flowControl.await();
+            replayFirst();
+            awaitTransmit(buffer.size());
+        }
+        try {
+            return sendAsync(buffer, immediate, null);
+        } finally {
+            releaseTransmit();
+        }
+    }
+
+    /**
+     * sends the encoded commands, counting them as a label of the window if given.
+     */
+    private CompletableFuture<Void> sendAsync(TSPLCommandBuffer buffer, boolean immediate,
+                                              CongestionWindow window) {
+        synchronized (setupState) {
+            rawMessage(immediate, immediate && SetupState.containsReset(buffer.toString()));
+            expectReply(buffer.array(), buffer.size());
+            CompletableFuture<Void> sent = immediate
+                    ? transmitAsync(buffer) : transmitSpooled(buffer);
+            if (window != null) {
+                window.sent();
+            }
+            return sent;
+        }
+    }
+
+    /**
+     * Encodes the label directly into a re-usable byte buffer of the calling thread
+     * and sends it.
+     * <p>
+     * When enabled, the client keeps track of the printer session to send less:
+     * <ul>
+     * <li>setup commands (SIZE, GAP, SPEED, DENSITY, DIRECTION and SET ...) which are
+     * identical to the ones already applied are left out, see
+     * {@link #setSetupElision(boolean)}</li>
+     * <li>when the label draws exactly what the image buffer of the printer already
+     * holds, only its PRINT command is sent, see {@link #setImageReuse(boolean)}</li>
+     * </ul>
+     * Labels are always sent in full while a {@link #setSpool(PrintSpool) spool} is
+     * set, so that they can be replayed on their own.
+     *
+     * @param label tsc label with required elements
+     */
+    @Override
+    public void send(TSPLLabel label) {
+        sendAsync(label);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see #send(TSPLLabel)
+     */
+    @Override
+    public CompletableFuture<Void> sendAsync(TSPLLabel label) {
+        flowControl.await();
+        CongestionWindow window = congestionWindow;
+        if (window == null) {
+            return sendLabel(label, null);
+        }
+
+        window.acquire(flowControl.getTimeoutNanos());
+        boolean sent = false;
+        try {
+            CompletableFuture<Void> future = sendLabel(label, window);
+            sent = true;
+            return future;
+        } finally {
+            if (!sent) {
+                window.release();
+            }
+        }
+    }
+
+    private CompletableFuture<Void> sendLabel(TSPLLabel label, CongestionWindow window) {
+        TSPLCommandBuffer buffer = labelBuffers.get();
+        if (buffer == null || !buffer.getCharset().equals(charset)) {
+            buffer = new TSPLCommandBuffer(charset);
+            labelBuffers.set(buffer);
+        }
+
+        int previousSize = buffer.size();
+        buffer.clear();
+        if (!setupElision && !imageReuse || spoolSession != null) {
+            label.writeTo(buffer);
+            replayFirst();
+            awaitTransmit(buffer.size());
+            try {
+                return sendAsync(buffer, false, window);
+            } finally {
+                releaseTransmit();
+            }
+        }
+
+        // the label is only encoded under the lock, the previous one is the best guess
+        awaitTransmit(previousSize);
+        try {
+            synchronized (setupState) {
+                try {
+                    encode(label, buffer);
+                    sentMessages++;
+                    CompletableFuture<Void> sent = transmitAsync(buffer);
+                    if (window != null) {
+                        window.sent();
+                    }
+                    return sent;
+                } catch (RuntimeException e) {
+                    resetSession();
+                    throw e;
+                }
+            }
+        } finally {
+            releaseTransmit();
+        }
+    }
+
+    /**
+     * writes a message which is not immediate, spooled first if a spool is set. Guarded
+     * by the session lock.
+     */
+    private CompletableFuture<Void> transmitSpooled(TSPLCommandBuffer buffer) {
+        SpoolSession spoolSession = this.spoolSession;
+        return spoolSession == null ? transmitAsync(buffer)
+                : spoolSession.transmit(buffer, this::transmitAsync);
+    }
+
+    /**
+     * replays the failed frames of the spool before a message is sent, so that they go
+     * out in front of it.
+     */
+    private void replayFirst() {
+        SpoolSession spoolSession = this.spoolSession;
+        if (spoolSession != null && spoolSession.isPending()) {
+            replaySpool();
+        }
+    }
+
+    /**
+     * sends a frame of the spool again, like a message of its own: the session lock is
+     * only taken once there is room to write it.
+     */
+    private void resend(SpoolSession spoolSession, ByteBuffer frame, long offset) {
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer(frame.remaining(), charset);
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        buffer.append(bytes);
+        awaitTransmit(bytes.length);
+        try {
+            synchronized (setupState) {
+                if (!isConnected()) {
+                    spoolSession.failed(offset);
+                    throw new PrinterException("Printer is not connected");
+                }
+                rawMessage(false, false);
+                spoolSession.transmit(buffer, offset, this::transmitAsync);
+            }
+        } finally {
+            releaseTransmit();
+        }
+    }
+
+    /**
+     * encodes the label, leaving out what the printer session already holds.
+     */
+    private void encode(TSPLLabel label, TSPLCommandBuffer buffer) {
+        List<TSPLCommand> elements = label.getElements();
+        boolean reuse = imageReuse && PrintedImage.isReusable(elements);
+        boolean setupChanged = false;
+        int last = elements.size() - 1;
+        int printStart = 0;
+
+        checkSession();
+        printedImage.begin();
+        for (int i = 0; i <= last; i++) {
+            TSPLCommand element = elements.get(i);
+            if (SetupState.isReset(element)) {
+                forgetSession();
+            }
+
+            int start = buffer.size();
+            element.writeTo(buffer);
+
+            Object setting = SetupState.settingOf(element);
+            if (setting != null) {
+                if (setupState.apply(setting, buffer.array(), start, buffer.size())) {
+                    setupChanged = true;
+                } else if (setupElision) {
+                    buffer.truncate(start);
+                }
+            } else if (reuse && i < last) {
+                printedImage.add(element, buffer.array(), start, buffer.size());
+            } else {
+                printStart = start;
+            }
+        }
+
+        if (!reuse) {
+            printedImage.reset();
+            return;
+        }
+
+        if (!setupChanged && printedImage.isUnchanged()) {
+            // the image buffer still holds this label, only print it again
+            byte[] bytes = buffer.array();
+            int length = buffer.size() - printStart;
+            System.arraycopy(bytes, printStart, bytes, 0, length);
+            buffer.truncate(length);
+        } else if (!setupChanged && incrementalUpdates) {
+            if (incrementBuffer == null
+                    || !incrementBuffer.getCharset().equals(buffer.getCharset())) {
+                incrementBuffer = new TSPLCommandBuffer(buffer.getCharset());
+            }
+            incrementBuffer.clear();
+
+            int printLength = buffer.size() - printStart;
+            if (printedImage.writeIncrement(incrementBuffer, MAX_ERASE_RATIO)
+                    && incrementBuffer.size() + printLength < buffer.size()) {
+                incrementBuffer.append(buffer.array(), printStart, printLength);
+                buffer.clear();
+                buffer.append(incrementBuffer.array(), 0, incrementBuffer.size());
+            }
+        }
+        printedImage.commit();
+    }
+
+    private void rawMessage(boolean immediate, boolean reset) {
+        if (!immediate) {
+            sentMessages++;
+        }
+        if (!immediate || reset) {
+            forgetSession();
+        }
+    }
+
+    /**
+     * Enables or disables leaving out setup commands which would not change the
+     * printer settings. Disabled by default.
+     * <p>
+     * Only labels sent with {@link #send(TSPLLabel)} are tracked, other messages reset
+     * the state. The client can not see the settings changed by other means, e.g. the
+     * printer panel, a power cycle or another host, so only enable it when this
+     * client is the only one driving the printer and call {@link #resetSession()}
+     * after such a change.
+     * </p>
+     *
+     * @param setupElision <code>true</code> to leave out the setup commands already
+     *                     applied
+     */
+    public void setSetupElision(boolean setupElision) {
+        this.setupElision = setupElision;
+        resetSession();
+    }
+
+    public boolean isSetupElision() {
+        return setupElision;
+    }
+
+    /**
+     * Enables or disables re-printing the image buffer of the printer when a label
+     * draws exactly the same as the previous one. Disabled by default.
+     * <p>
+     * Applies to labels made of setup commands, CLS, label formatting commands (TEXT,
+     * BARCODE, BOX, ...) and a final PRINT. The client keeps a copy of the last drawn
+     * commands to compare with. Labels with counters or any other command are always
+     * sent in full. Like {@link #setSetupElision(boolean)}, it relies on no one else
+     * changing the printer.
+     * </p>
+     *
+     * @param imageReuse <code>true</code> to only print again an unchanged label
+     */
+    public void setImageReuse(boolean imageReuse) {
+        this.imageReuse = imageReuse;
+        resetSession();
+    }
+
+    public boolean isImageReuse() {
+        return imageReuse;
+    }
+
+    /**
+     * Enables or disables incremental updates of the image buffer. Disabled by
+     * default, requires {@link #setImageReuse(boolean) image reuse}.
+     * <p>
+     * When a label differs from the previous one only in some elements, the regions
+     * of the removed elements are cleared with ERASE and only the new elements, plus
+     * the unchanged ones overlapping the erased regions, are drawn instead of CLS and
+     * the complete label. The label is sent in full if a removed element has no known
+     * region, if more than half of the label area would be erased or if the update is
+     * not smaller.
+     * </p>
+     * <p>
+     * Regions are known for BAR, BOX, CIRCLE, ELLIPSE and DMATRIX. Other elements,
+     * whose size depends on their content (TEXT, BARCODE, QRCODE, ...), need to be
+     * wrapped into a {@link org.fintrace.core.drivers.tspl.commands.label.BoundedElement}
+     * to be updated incrementally.
+     * </p>
+     *
+     * @param incrementalUpdates <code>true</code> to erase and redraw changed elements only
+     */
+    public void setIncrementalUpdates(boolean incrementalUpdates) {
+        this.incrementalUpdates = incrementalUpdates;
+        resetSession();
+    }
+
+    public boolean isIncrementalUpdates() {
+        return incrementalUpdates;
+    }
+
+    /**
+     * Sets the durable spool of the messages sent to the printer, <code>null</code> by
+     * default.
+     * <p>
+     * Labels and messages, except immediate (&lt;ESC&gt;) commands, are appended to the
+     * spool before being written and committed once written. Messages which were not
+     * written, because the connection failed or the process ended, are sent again in
+     * front of the next message once the connection is established, at the latest; the
+     * messages written after a failed one are not sent again.
+     * A message may thus be printed twice if the process ends right after writing it,
+     * but it is not lost. Messages sent while disconnected still fail, but are spooled
+     * and sent on connection. Labels are sent in full, without setup elision or image
+     * reuse, so that each of them can be replayed on its own.
+     * </p>
+     *
+     * @param spool spool of this printer, <code>null</code> to disable spooling
+     */
+    public void setSpool(PrintSpool spool) {
+        synchronized (setupState) {
+            this.spoolSession = spool != null ? new SpoolSession(spool) : null;
+            resetSession();
+        }
+        if (spool != null && isConnected()) {
+            replaySpool();
+        }
+    }
+
+    public PrintSpool getSpool() {
+        SpoolSession spoolSession = this.spoolSession;
+        return spoolSession != null ? spoolSession.getSpool() : null;
+    }
+
+    /**
+     * Sends the messages left in the spool again, if some were not written. Each of them
+     * waits for room in the transport and takes the session lock on its own, so that a
+     * long replay does not hold up the status queries. Messages which were written are
+     * not sent again, even when a message in front of them failed.
+     *
+     * @return the number of messages sent again
+     */
+    public int replaySpool() {
+        SpoolSession spoolSession = this.spoolSession;
+        if (spoolSession == null || !isConnected()) {
+            return 0;
+        }
+        try {
+            return spoolSession.replay((frame, offset) -> resend(spoolSession, frame, offset));
+        } catch (PrinterException | IllegalStateException e) {
+            // disconnected or spool closed meanwhile, the failed frames stay pending
+            return 0;
+        }
+    }
+
+    /**
+     * Enables coalescing of the written messages: messages sent shortly after each
+     * other are written together, in one vectored socket write or one USB transfer,
+     * instead of one write each. Disabled by default.
+     * <p>
+     * Pending messages are written once they reach <code>maxBytes</code> or when the
+     * first of them has waited <code>maxDelay</code>. Immediate (&lt;ESC&gt;) commands,
+     * e.g. the status polls, are never delayed and take the pending messages with them.
+     * </p>
+     *
+     * @param maxBytes size at which the pending messages are written without waiting
+     * @param maxDelay longest time a message waits for others, <code>0</code> disables
+     *                 coalescing
+     * @param unit     unit of the delay
+     */
+    public void setWriteCoalescing(int maxBytes, long maxDelay, TimeUnit unit) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("maxDelay must not be negative");
+        }
+        this.coalescingBytes = maxBytes;
+        this.coalescingDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    public boolean isWriteCoalescing() {
+        return coalescingDelayNanos > 0;
+    }
+
+    public int getCoalescingBytes() {
+        return coalescingBytes;
+    }
+
+    public long getCoalescingDelay(TimeUnit unit) {
+        return unit.convert(coalescingDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return <code>true</code> if the message starts with &lt;ESC&gt;, an immediate
+     * command which is not delayed by write coalescing
+     */
+    static boolean isImmediate(byte[] message, int length) {
+        return length > 0 && message[0] == ESC;
+    }
+
+    /**
+     * Forgets the printer session (applied setup commands and image buffer content),
+     * so that the next label is sent in full. Done automatically on (re)connection,
+     * failed or dropped sends, raw messages and printer reset.
+     */
+    public void resetSession() {
+        sessionLost = true;
+    }
+
+    /**
+     * applies a pending {@link #resetSession()}, guarded by the session lock.
+     */
+    private void checkSession() {
+        if (sessionLost) {
+            forgetSession();
+        }
+    }
+
+    /**
+     * guarded by the session lock.
+     */
+    private void forgetSession() {
+        sessionLost = false;
+        setupState.reset();
+        printedImage.reset();
+    }
+
+    /**
+     * writes the encoded commands to the printer.
+     *
+     * @param buffer buffer holding the encoded commands
+     */
+    protected abstract void transmit(TSPLCommandBuffer buffer);
+
+    /**
+     * writes the encoded commands to the printer, called in send order under the
+     * session lock. The buffer may be re-used once this method returns, implementations
+     * writing later need to copy it.
+     * <p>
+     * By default the commands are written with {@link #transmit(TSPLCommandBuffer)}
+     * and the returned future is already completed.
+     * </p>
+     *
+     * @param buffer buffer holding the encoded commands
+     * @return future completed once the commands are written
+     */
+    protected CompletableFuture<Void> transmitAsync(TSPLCommandBuffer buffer) {
+        transmit(buffer);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Waits, before the session lock is taken, until a message can be written without
+     * waiting under the lock, and may reserve room for it. Every call is followed by
+     * {@link #releaseTransmit()} once the message is transmitted or failed. Nothing to
+     * wait for by default.
+     *
+     * @param length size of the message, an estimate if it is only encoded under the
+     *               lock, <code>0</code> if not known at all
+     */
+    protected void awaitTransmit(int length) {
+    }
+
+    /**
+     * Gives back the room reserved by {@link #awaitTransmit(int)} and not taken by a
+     * transmitted message, e.g. when sending failed. Nothing to release by default.
+     */
+    protected void releaseTransmit() {
     }
 
     protected abstract void send(byte[] message);
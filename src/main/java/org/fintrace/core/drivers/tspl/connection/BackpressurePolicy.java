@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+/**
+ * What a client does with a message when its outbox, the queue of messages waiting
+ * to be written to the printer, is full.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public enum BackpressurePolicy {
+    /**
+     * the sender waits until there is room in the outbox, before it takes the session
+     * lock of the client. Immediate commands, e.g. status queries, are not held back.
+     */
+    BLOCK,
+    /**
+     * the message is rejected, its future completes with a
+     * {@link org.fintrace.core.drivers.tspl.exceptions.ConnectionClientException}
+     * and the data listeners are notified about the failed send.
+     */
+    FAIL,
+    /**
+     * the message is discarded, its future is cancelled. The data listeners are
+     * notified about the failed send and the drops are counted, see
+     * {@link EthernetConnectionClient#getDroppedMessages()}.
+     */
+    DROP
+}
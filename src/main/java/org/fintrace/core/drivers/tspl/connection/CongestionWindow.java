@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import org.fintrace.core.drivers.tspl.commands.status.PrinterCondition;
+import org.fintrace.core.drivers.tspl.commands.status.PrinterStatus;
+import org.fintrace.core.drivers.tspl.exceptions.PrinterException;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the labels in flight to a printer, sent but not known to be printed, with an
+ * additive increase, multiplicative decrease window.
+ * <p>
+ * The printer does not report its queue, so status polls acknowledge the labels: a
+ * reply without a blocking condition, the printer ready or still printing, means every
+ * label sent before the poll has been taken by the printer, and the window grows by
+ * one. A blocking status, e.g. a full receive buffer, or a timed out poll means the
+ * printer falls behind, and the window is halved, at most once per round of labels.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+final class CongestionWindow {
+
+    /**
+     * window of a new client, unless the maximum is smaller.
+     */
+    static final int INITIAL_WINDOW = 4;
+
+    private final int maxWindow;
+    private int window;
+
+    /**
+     * labels admitted by the window, labels sent, and labels acknowledged.
+     */
+    private long admitted;
+    private long sent;
+    private long acknowledged;
+
+    /**
+     * labels sent before the last decrease, the window is not decreased again for them.
+     */
+    private long recovery;
+
+    /**
+     * labels sent before each status poll waiting for its reply, in send order.
+     */
+    private final ArrayDeque<Long> polls = new ArrayDeque<>();
+
+    /**
+     * @param maxWindow largest number of labels in flight
+     */
+    CongestionWindow(int maxWindow) {
+        this.maxWindow = maxWindow;
+        this.window = Math.min(INITIAL_WINDOW, maxWindow);
+    }
+
+    /**
+     * waits until the window admits another label.
+     *
+     * @param timeoutNanos longest wait, <code>0</code> waits without limit
+     */
+    synchronized void acquire(long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (admitted - acknowledged >= window) {
+            long remaining = deadline - System.nanoTime();
+            if (timeoutNanos > 0 && remaining <= 0) {
+                throw new PrinterException("Congestion window of " + window + " labels is full");
+            }
+            try {
+                if (timeoutNanos > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } else {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PrinterException("Interrupted while waiting for the congestion window");
+            }
+        }
+        admitted++;
+    }
+
+    /**
+     * an admitted label was not sent.
+     */
+    synchronized void release() {
+        admitted--;
+        notifyAll();
+    }
+
+    /**
+     * an admitted label was sent, called under the session lock in send order.
+     */
+    synchronized void sent() {
+        sent++;
+    }
+
+    /**
+     * a status poll was sent, called under the session lock in send order.
+     */
+    synchronized void pollSent() {
+        polls.add(sent);
+    }
+
+    /**
+     * the reply of the oldest status poll was received.
+     *
+     * @param status the reported status, <code>null</code> for a malformed reply
+     */
+    synchronized void statusReceived(PrinterStatus status) {
+        Long sentBefore = polls.poll();
+        if (status == null) {
+            return;
+        } else if (status.isBlocking() || status.has(PrinterCondition.BUFFER_FULL)) {
+            decrease();
+        } else if (sentBefore != null && sentBefore > acknowledged) {
+            acknowledged = sentBefore;
+            window = Math.min(window + 1, maxWindow);
+            notifyAll();
+        }
+    }
+
+    /**
+     * the reply of a status poll will not be received, the next reply is taken for the
+     * poll after the oldest one. The window is halved if the poll was not answered in
+     * time; the polls lost in the same round count as one loss.
+     *
+     * @param timedOut whether the poll timed out, rather than failed to be sent
+     */
+    synchronized void pollLost(boolean timedOut) {
+        polls.poll();
+        if (timedOut) {
+            decrease();
+        }
+    }
+
+    /**
+     * the connection was (re-)established or closed, nothing is known to be in flight.
+     */
+    synchronized void reset() {
+        acknowledged = sent;
+        recovery = sent;
+        polls.clear();
+        notifyAll();
+    }
+
+    private void decrease() {
+        if (sent > recovery) {
+            window = Math.max(1, window / 2);
+            recovery = sent;
+        }
+    }
+
+    synchronized int getWindow() {
+        return window;
+    }
+
+    synchronized int getInFlight() {
+        return (int) (sent - acknowledged);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+/**
+ * States of the connection of a client to the printer. The state only moves along
+ * <code>DISCONNECTED -&gt; CONNECTING -&gt; CONNECTED -&gt; DISCONNECTING -&gt;
+ * DISCONNECTED</code>; a connection attempt may also fail or be cancelled straight
+ * back to <code>DISCONNECTED</code>.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public enum ConnectionState {
+    /**
+     * no connection, {@link TSPLConnectionClient#connect()} starts one.
+     */
+    DISCONNECTED,
+
+    /**
+     * the connection is being established.
+     */
+    CONNECTING,
+
+    /**
+     * the connection is established, messages are sent to the printer.
+     */
+    CONNECTED,
+
+    /**
+     * the connection is being closed, messages are rejected.
+     */
+    DISCONNECTING
+}
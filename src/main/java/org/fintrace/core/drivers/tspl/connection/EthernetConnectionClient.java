@@ -16,23 +16,25 @@
 package org.fintrace.core.drivers.tspl.connection;
 
 import lombok.extern.slf4j.Slf4j;
-import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.ConnectionClientException;
 import org.fintrace.core.drivers.tspl.exceptions.PrinterException;
+import org.fintrace.core.drivers.tspl.listeners.MessageView;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import static java.nio.charset.StandardCharsets.US_ASCII;
-import static org.fintrace.core.drivers.tspl.DriverConstants.CR_BYTES;
-import static org.fintrace.core.drivers.tspl.DriverConstants.LF_BYTES;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is an implementation of <code>TSPLConnectionClient</code> That
@@ -40,84 +42,125 @@ import static org.fintrace.core.drivers.tspl.DriverConstants.LF_BYTES;
  * their supported medium (LAN, INTERNET or simple cross UTP).
  * <p>
  * This implementation is using high performance NIO non blocking method.
- * However, it employs single independent thread that do the channel selector
- * and invocation.
+ * The channel is served by a selector thread of a {@link TsplEventLoopGroup}, which
+ * can be shared by many clients. Clients created without a group get a group with a
+ * single thread of their own, shut down with {@link #shutdown()}.
+ * <p>
+ * Messages are not written by the sending thread. They are copied into the outbox of
+ * the connection, a lock-free queue of whole messages which the selector thread, its
+ * only reader, writes to the socket whenever it accepts more data. Messages of
+ * concurrent senders are therefore never interleaved. Sending returns right away,
+ * unless the outbox is full and the {@link BackpressurePolicy} is
+ * {@link BackpressurePolicy#BLOCK}. The futures returned by the
+ * <code>sendAsync</code> methods complete once the message is
+ * written into the socket send buffer. Messages waiting together in the outbox are
+ * written with a single gathering write, see also
+ * {@link #setWriteCoalescing(int, long, TimeUnit)}.
  * <p>
- * IMPORTANT : Each notifications fired by this class for each of its registered
- * listeners is done by their own independent thread. This means new thread for
- * each notification. Thus, the listener implementation added into this
- * socket do not need to implement "Fast Return" method and will not clog the
- * selector thread.
+ * IMPORTANT : The notifications fired by this class are queued per listener and
+ * delivered in order by the listener pool of the group, unless another executor is
+ * set. Thus, the listener implementation added into this socket do not need to
+ * implement "Fast Return" method and will not clog the selector thread.
  *
  * @author Venkaiah Chowdary Koneru
  */
 @Slf4j
 public class EthernetConnectionClient extends AbstractConnectionClient
         implements TSPLConnectionClient {
+    /**
+     * default limit of the bytes waiting in the outbox.
+     */
+    public static final int DEFAULT_OUTBOX_CAPACITY = 1024 * 1024;
+
+    /**
+     * most messages written by one gathering write.
+     */
+    private static final int MAX_GATHER = 64;
+
+    /**
+     * least free space in the receive buffer for a read.
+     */
+    private static final int MIN_READ = 1024;
+
     private final String host;
     private final int port;
-    private ExecutorService connectionExecutorService = Executors.newSingleThreadExecutor();
+    private final boolean ownGroup;
+    private TsplEventLoopGroup group;
+
+    /**
+     * the loop this client is pinned to, all the channel operations run on its thread.
+     */
+    private EventLoop loop;
     private SocketChannel channel;
-    private Selector selector;
+    private SelectionKey channelKey;
+    private final EventLoop.Handler handler = new EventLoop.Handler() {
+        @Override
+        public void ready(SelectionKey key) {
+            handle(key);
+        }
 
-    // The buffer into which we'll read data when it's available
-    private ByteBuffer readBuffer = ByteBuffer.allocate(8192);
-    private ByteBuffer readDataBuffer = ByteBuffer.allocate(8192);
-
-    private Runnable connectionRunnable = new Runnable() {
-        public void run() {
-            if (!isConnected) {
-                try {
-                    selector = Selector.open();
-                    channel = SocketChannel.open();
-                    channel.configureBlocking(false);
-
-                    channel.register(selector, SelectionKey.OP_CONNECT);
-                    channel.connect(new InetSocketAddress(host, port));
-
-                    alive = true;
-                    while (alive && !Thread.interrupted()) {
-                        selector.select(1000);
-                        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
-                        while (keys.hasNext()) {
-                            SelectionKey key = keys.next();
-                            keys.remove();
-                            if (!key.isValid()) {
-                                continue;
-                            } else if (key.isConnectable()) {
-                                makeConnect(key);
-                                isConnected = true;
-                                notifyConnection();
-                                channel.register(selector, SelectionKey.OP_READ);
-                            } else if (key.isReadable()) {
-                                read(key);
-                            } else {
-                                log.warn("Unrecognized key {}", key);
-                            }
-                        }
-                    }
-                } catch (IOException ioe) {
-                    log.error("", ioe);
-                    notifyConnectionFailed();
-                } finally {
-                    if (isConnected) {
-                        notifyDisconnected();
-                    }
-                    isConnected = false;
-                    alive = false;
-                    try {
-                        if (channel != null)
-                            channel.close();
-                        if (selector != null)
-                            selector.close();
-                    } catch (IOException e) {
-                        log.error("", e);
-                    }
-                }
-            }
+        @Override
+        public void close() {
+            closeChannel();
         }
     };
 
+    /**
+     * no flush is pending.
+     */
+    private static final int FLUSH_IDLE = 0;
+
+    /**
+     * a delayed flush of coalesced messages is scheduled.
+     */
+    private static final int FLUSH_DELAYED = 1;
+
+    /**
+     * a flush is queued or waits for write readiness, it writes the outbox until it
+     * is empty.
+     */
+    private static final int FLUSH_QUEUED = 2;
+
+    /**
+     * messages waiting to be written, added by any number of senders and only taken
+     * by the selector thread.
+     */
+    private final ConcurrentLinkedQueue<PendingWrite> outbox = new ConcurrentLinkedQueue<>();
+
+    /**
+     * bytes of the messages in the outbox, reserved by the senders before adding them.
+     */
+    private final AtomicInteger outboxBytes = new AtomicInteger();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private volatile boolean outboxOpen;
+    private final AtomicInteger flushState = new AtomicInteger(FLUSH_IDLE);
+
+    /**
+     * senders blocked by a full outbox wait on it, only taken on that slow path.
+     */
+    private final Object outboxSpace = new Object();
+    private final AtomicInteger blockedSenders = new AtomicInteger();
+
+    /**
+     * outbox bytes reserved by the sending thread before taking the session lock, taken
+     * over by its next message; <code>-1</code> when nothing is reserved.
+     */
+    private final ThreadLocal<int[]> reservation = ThreadLocal.withInitial(() -> new int[]{-1});
+
+    /**
+     * the connection reached the printer, only used by the loop.
+     */
+    private boolean established;
+    private volatile int outboxCapacity = DEFAULT_OUTBOX_CAPACITY;
+    private volatile BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+
+    // messages of the current gathering write, only used by the loop
+    private final PendingWrite[] gathered = new PendingWrite[MAX_GATHER];
+    private final ByteBuffer[] gatherBuffers = new ByteBuffer[MAX_GATHER];
+
+    // The buffer into which we'll read data when it's available
+    private final ReadBuffer readBuffer = new ReadBuffer(8192);
+
     /**
      * Constructor
      *
@@ -126,8 +169,29 @@ public class EthernetConnectionClient extends AbstractConnectionClient
      *             connection.
      */
     public EthernetConnectionClient(String host, int port) {
+        this(host, port, new TsplEventLoopGroup(1), true);
+    }
+
+    /**
+     * Constructor for a client sharing the threads of the given group.
+     *
+     * @param host  The zebra printer host address or IP address.
+     * @param port  The port number on zebra printer that will accept the
+     *              connection.
+     * @param group the event loop group serving the connection
+     */
+    public EthernetConnectionClient(String host, int port, TsplEventLoopGroup group) {
+        this(host, port, group, false);
+    }
+
+    private EthernetConnectionClient(String host, int port, TsplEventLoopGroup group,
+                                     boolean ownGroup) {
+        super(group.getListenerExecutorService());
         this.host = host;
         this.port = port;
+        this.group = group;
+        this.ownGroup = ownGroup;
+        this.loop = group.next();
     }
 
     /**
@@ -135,6 +199,11 @@ public class EthernetConnectionClient extends AbstractConnectionClient
      */
     @Override
     public void init() {
+        if (ownGroup && group.isShutdown()) {
+            group = new TsplEventLoopGroup(1);
+            loop = group.next();
+            listenerExecutorService = group.getListenerExecutorService();
+        }
         log.info("Initialized");
     }
 
@@ -143,10 +212,15 @@ public class EthernetConnectionClient extends AbstractConnectionClient
      */
     @Override
     public void connect() {
-        if (isConnected || alive)
+        if (!compareAndSetState(ConnectionState.DISCONNECTED, ConnectionState.CONNECTING))
             return;
 
-        connectionExecutorService.execute(connectionRunnable);
+        try {
+            loop.execute(this::openChannel);
+        } catch (PrinterException e) {
+            getAndSetState(ConnectionState.DISCONNECTED);
+            throw e;
+        }
     }
 
     /**
@@ -154,45 +228,442 @@ public class EthernetConnectionClient extends AbstractConnectionClient
      */
     @Override
     public void disconnect() {
-        if (!alive) {
-            return;
+        ConnectionState current = getConnectionState();
+        while (current == ConnectionState.CONNECTING || current == ConnectionState.CONNECTED) {
+            if (compareAndSetState(current, ConnectionState.DISCONNECTING)) {
+                loop.execute(() -> {
+                    // unless the connection was already closed, and maybe re-opened
+                    if (getConnectionState() == ConnectionState.DISCONNECTING) {
+                        closeChannel();
+                    }
+                });
+                return;
+            }
+            current = getConnectionState();
         }
-
-        alive = false;
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Stops the selector thread if the client has its own event loop group, a shared
+     * group is only disconnected from.
+     * </p>
      */
     @Override
     public void shutdown() {
+        disconnect();
+        if (ownGroup) {
+            group.shutdown();
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void send(TSPLLabel label) {
-        send(label.getTsplCode());
+    EventLoop eventLoop() {
+        return loop;
+    }
+
+    /**
+     * Sets the limit of the bytes waiting in the outbox. A single message larger
+     * than the limit is accepted when the outbox is empty.
+     *
+     * @param outboxCapacity limit in bytes, {@link #DEFAULT_OUTBOX_CAPACITY} by default
+     */
+    public void setOutboxCapacity(int outboxCapacity) {
+        if (outboxCapacity <= 0) {
+            throw new IllegalArgumentException("outbox capacity must be positive");
+        }
+        this.outboxCapacity = outboxCapacity;
+    }
+
+    public int getOutboxCapacity() {
+        return outboxCapacity;
+    }
+
+    /**
+     * Sets what happens to messages sent while the outbox is full.
+     *
+     * @param backpressurePolicy {@link BackpressurePolicy#BLOCK} by default
+     */
+    public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        if (backpressurePolicy == null) {
+            throw new IllegalArgumentException("backpressure policy is required");
+        }
+        this.backpressurePolicy = backpressurePolicy;
+    }
+
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    /**
+     * @return the number of bytes waiting in the outbox
+     */
+    public int getOutboxBytes() {
+        return outboxBytes.get();
+    }
+
+    /**
+     * @return the number of messages dropped by the {@link BackpressurePolicy#DROP}
+     * policy
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
     }
 
     /**
      * @param message
      */
     protected void send(byte[] message) {
-        if (!isConnected) {
+        enqueue(message, getCharset());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void transmit(TSPLCommandBuffer buffer) {
+        transmitAsync(buffer);
+    }
+
+    /**
+     * Copies the commands into the outbox.
+     *
+     * @param buffer buffer holding the encoded commands
+     * @return future completed once the commands are written into the socket
+     */
+    @Override
+    protected CompletableFuture<Void> transmitAsync(TSPLCommandBuffer buffer) {
+        return enqueue(Arrays.copyOf(buffer.array(), buffer.size()), buffer.getCharset());
+    }
+
+    /**
+     * adds the message to the outbox, applying the backpressure policy when it is full.
+     *
+     * @param message bytes owned by the outbox
+     * @param charset charset of the message, for the notifications
+     * @return future completed once the message is written into the socket
+     */
+    private CompletableFuture<Void> enqueue(byte[] message, Charset charset) {
+        PendingWrite write = new PendingWrite(message, charset);
+        // immediate commands, e.g. queries whose replies are already expected, are never
+        // held back; blocking senders reserved their room before taking the session lock,
+        // and the replayed messages sent along with them can not wait under it
+        boolean immediate = isImmediate(message, message.length);
+        BackpressurePolicy policy = backpressurePolicy;
+        int[] reserved = reservation.get();
+        int claimed = Math.max(reserved[0], 0);
+        boolean admit = immediate || reserved[0] >= 0 || policy == BackpressurePolicy.BLOCK;
+        while (true) {
+            if (!outboxOpen) {
+                throw new PrinterException("Printer is not connected");
+            }
+            int bytes = outboxBytes.get();
+            if (admit || bytes == 0 || bytes + message.length <= outboxCapacity) {
+                if (outboxBytes.compareAndSet(bytes, bytes + message.length - claimed)) {
+                    reserved[0] = -1;
+                    if (claimed > message.length) {
+                        signalOutboxSpace();
+                    }
+                    break;
+                }
+                continue;
+            }
+
+            if (policy == BackpressurePolicy.FAIL) {
+                ConnectionClientException e = new ConnectionClientException("Outbox is full.");
+                write.future.completeExceptionally(e);
+                notifyMessageSendFailed(e, write.view());
+                return write.future;
+            }
+            log.debug("Outbox is full, dropping message of {} bytes", message.length);
+            droppedMessages.incrementAndGet();
+            write.future.cancel(false);
+            notifyMessageSendFailed(
+                    new ConnectionClientException("Outbox is full, message dropped."),
+                    write.view());
+            resetSession();
+            return write.future;
+        }
+
+        outbox.add(write);
+        if (!outboxOpen && outbox.remove(write)) {
+            // closed meanwhile, after the loop failed the messages in the outbox
+            outboxBytes.addAndGet(-message.length);
             throw new PrinterException("Printer is not connected");
         }
 
+        // a queued flush writes the outbox until it is empty again
+        if (!isWriteCoalescing() || outboxBytes.get() >= getCoalescingBytes() || immediate) {
+            if (flushState.getAndSet(FLUSH_QUEUED) != FLUSH_QUEUED) {
+                loop.execute(this::flush);
+            }
+        } else if (flushState.compareAndSet(FLUSH_IDLE, FLUSH_DELAYED)) {
+            loop.schedule(this::flush, getCoalescingDelay(TimeUnit.NANOSECONDS));
+        }
+        return write.future;
+    }
+
+    /**
+     * Waits for room in the outbox under the {@link BackpressurePolicy#BLOCK} policy and
+     * reserves it, so that concurrent senders can not overfill the outbox. Called before
+     * the session lock is taken, so that a blocked sender does not hold up the status
+     * queries. The next message of the thread takes the reservation over.
+     *
+     * @param length size of the message, <code>0</code> if not known yet
+     */
+    @Override
+    protected void awaitTransmit(int length) {
+        if (backpressurePolicy == BackpressurePolicy.BLOCK && outboxOpen
+                && (tryReserve(length) || awaitOutboxSpace(length))) {
+            reservation.get()[0] = length;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void releaseTransmit() {
+        int[] reserved = reservation.get();
+        if (reserved[0] >= 0) {
+            outboxBytes.addAndGet(-reserved[0]);
+            reserved[0] = -1;
+            signalOutboxSpace();
+        }
+    }
+
+    /**
+     * reserves room for the message if the outbox is empty or has room for it; a message
+     * of unknown size only needs the outbox not to be full.
+     */
+    private boolean tryReserve(int length) {
+        while (true) {
+            int bytes = outboxBytes.get();
+            if (bytes > 0 && bytes + Math.max(length, 1) > outboxCapacity) {
+                return false;
+            }
+            if (outboxBytes.compareAndSet(bytes, bytes + length)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * waits until room for the message is reserved or the outbox is closed.
+     *
+     * @return <code>false</code> if the outbox was closed
+     */
+    private boolean awaitOutboxSpace(int length) {
+        blockedSenders.incrementAndGet();
         try {
-            ByteBuffer bb = ByteBuffer.wrap(message);
-            while (bb.hasRemaining()) {
-                channel.write(bb);
+            synchronized (outboxSpace) {
+                while (outboxOpen) {
+                    if (tryReserve(length)) {
+                        return true;
+                    }
+                    outboxSpace.wait();
+                }
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrinterException("Interrupted while waiting for the outbox");
+        } finally {
+            blockedSenders.decrementAndGet();
+        }
+    }
+
+    /**
+     * wakes up the senders waiting for room in the outbox.
+     */
+    private void signalOutboxSpace() {
+        if (blockedSenders.get() > 0) {
+            synchronized (outboxSpace) {
+                outboxSpace.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * writes the outbox into the socket until it is empty, or until the socket send
+     * buffer is full and the rest is written on write readiness. Up to
+     * {@link #MAX_GATHER} messages are written at once with a gathering write. Runs on
+     * the loop.
+     */
+    private void flush() {
+        if (channelKey == null || !channelKey.isValid()) {
+            return;
+        }
+
+        // this flush writes whatever is queued, senders do not need to queue another
+        flushState.set(FLUSH_QUEUED);
+        while (true) {
+            int count = 0;
+            for (PendingWrite write : outbox) {
+                if (count == MAX_GATHER) {
+                    break;
+                }
+                gathered[count] = write;
+                gatherBuffers[count++] = write.data;
+            }
+            if (count == 0) {
+                flushState.set(FLUSH_IDLE);
+                // a message added meanwhile has either seen the idle state and queued a
+                // flush of its own, or is written by this one
+                if (outbox.isEmpty() || !flushState.compareAndSet(FLUSH_IDLE, FLUSH_QUEUED)) {
+                    channelKey.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+                continue;
+            }
+
+            try {
+                channel.write(gatherBuffers, 0, count);
+            } catch (IOException ioe) {
+                log.error("Failed to write to the printer", ioe);
+                closeChannel(new ConnectionClientException("Failed to send message.", ioe));
+                return;
+            }
+
+            int written = 0;
+            while (written < count && !gathered[written].data.hasRemaining()) {
+                written++;
+            }
+            if (written > 0) {
+                int bytes = 0;
+                for (int i = 0; i < written; i++) {
+                    outbox.poll();
+                    bytes += gathered[i].data.limit();
+                }
+                outboxBytes.addAndGet(-bytes);
+                signalOutboxSpace();
+
+                boolean notify = hasDataListeners();
+                for (int i = 0; i < written; i++) {
+                    gathered[i].future.complete(null);
+                    if (notify) {
+                        notifyMessageSent(gathered[i].view());
+                    }
+                }
+            }
+            Arrays.fill(gathered, 0, count, null);
+            Arrays.fill(gatherBuffers, 0, count, null);
+
+            if (written < count) {
+                // the flush goes on when the socket is writable again
+                channelKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+    }
+
+    /**
+     * opens and registers the channel, runs on the loop.
+     */
+    private void openChannel() {
+        if (channel != null || getConnectionState() != ConnectionState.CONNECTING) {
+            return;
+        }
+
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channelKey = loop.register(channel, SelectionKey.OP_CONNECT, handler);
+            channel.connect(new InetSocketAddress(host, port));
+        } catch (IOException ioe) {
+            log.error("", ioe);
+            notifyConnectionFailed();
+            closeChannel();
+        }
+    }
+
+    /**
+     * handles the readiness of the channel, runs on the loop.
+     */
+    private void handle(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                makeConnect(key);
+                key.interestOps(SelectionKey.OP_READ);
+                openOutbox();
+                if (!compareAndSetState(ConnectionState.CONNECTING, ConnectionState.CONNECTED)) {
+                    // disconnected while connecting
+                    closeChannel();
+                    return;
+                }
+                established = true;
+                notifyConnection();
+                return;
+            }
+            if (key.isReadable()) {
+                read(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush();
             }
-            notifyMessageSent(new String(message));
         } catch (IOException ioe) {
-            notifyMessageSendFailed(new ConnectionClientException("Failed to send message.", ioe),
-                    new String(message));
+            log.error("", ioe);
+            notifyConnectionFailed();
+            closeChannel();
+        }
+    }
+
+    private void closeChannel() {
+        closeChannel(new ConnectionClientException("Connection closed."));
+    }
+
+    /**
+     * closes the channel and fails the messages left in the outbox, runs on the loop.
+     */
+    private void closeChannel(ConnectionClientException cause) {
+        boolean wasConnected = established;
+        established = false;
+        getAndSetState(ConnectionState.DISCONNECTED);
+        if (channelKey != null) {
+            channelKey.cancel();
+            channelKey = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("", e);
+            }
+            channel = null;
+        }
+        closeOutbox(cause);
+        readBuffer.clear();
+        if (wasConnected) {
+            notifyDisconnected();
+        }
+    }
+
+    private void openOutbox() {
+        outboxOpen = true;
+    }
+
+    /**
+     * rejects further messages and fails the pending ones.
+     */
+    private void closeOutbox(ConnectionClientException cause) {
+        outboxOpen = false;
+        flushState.set(FLUSH_IDLE);
+        List<PendingWrite> failed = new ArrayList<>();
+        PendingWrite write;
+        while ((write = outbox.poll()) != null) {
+            failed.add(write);
+            outboxBytes.addAndGet(-write.data.limit());
+        }
+        synchronized (outboxSpace) {
+            outboxSpace.notifyAll();
+        }
+        for (PendingWrite failedWrite : failed) {
+            failedWrite.future.completeExceptionally(cause);
+            notifyMessageSendFailed(cause, failedWrite.view());
         }
     }
 
@@ -209,38 +680,52 @@ public class EthernetConnectionClient extends AbstractConnectionClient
     }
 
     /**
+     * reads the available bytes and hands the complete replies to the frame decoder.
+     *
      * @param key
      * @throws IOException
      */
     private void read(SelectionKey key) throws IOException {
         SocketChannel channel = (SocketChannel) key.channel();
         try {
-            readBuffer.clear();
-            int readed = channel.read(readBuffer);
-            readBuffer.flip();
-            while (readed > 0 && readBuffer.hasRemaining()) {
-                byte b = readBuffer.get();
-                if (b != CR_BYTES[0] && b != LF_BYTES[0]) {
-                    readDataBuffer.put(b);
-                }
-                if (b == LF_BYTES[0]) {
-                    readDataBuffer.put((byte) '\n');
-                    readDataBuffer.flip();
-
-                    byte[] data = new byte[readDataBuffer.limit()];
-                    readDataBuffer.get(data);
-
-                    notifyMessageReceived(new String(data, US_ASCII));
-                    readDataBuffer.clear();
-                }
+            int read = channel.read(readBuffer.writable(MIN_READ));
+            if (read < 0) {
+                // closed by the printer
+                closeChannel();
+                return;
             }
-            channel.register(selector, SelectionKey.OP_READ);
+            if (read > 0) {
+                readBuffer.decode(getFrameDecoder(), frameHandler);
+            }
+        } catch (PrinterException e) {
+            log.error("Dropping the received bytes", e);
+            readBuffer.clear();
+            getFrameDecoder().reset();
         } catch (IOException e) {
-            readDataBuffer.clear();
             readBuffer.clear();
-            readBuffer.limit(0);
-            key.cancel();
-            channel.close();
+            closeChannel();
+        }
+    }
+
+    /**
+     * message in the outbox.
+     */
+    private static final class PendingWrite {
+        private final ByteBuffer data;
+        private final Charset charset;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingWrite(byte[] message, Charset charset) {
+            this.data = ByteBuffer.wrap(message);
+            this.charset = charset;
+        }
+
+        /**
+         * the message bytes are owned by the outbox and never modified, so the view
+         * shares them.
+         */
+        private MessageView view() {
+            return new MessageView(ByteBuffer.wrap(data.array()), charset);
         }
     }
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.fintrace.core.drivers.tspl.exceptions.PrinterException;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A selector thread of a {@link TsplEventLoopGroup}, serving the channels of the
+ * clients pinned to it.
+ * <p>
+ * The thread blocks in the selector until a channel is ready, a task is submitted or
+ * a scheduled task is due, there is no periodic wake up. Channels are registered, read
+ * and written by tasks and {@link Handler}s on this thread only. Handlers and tasks
+ * must not block.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+@Slf4j
+final class EventLoop implements Runnable {
+
+    /**
+     * handles the readiness of a registered channel, attached to its selection key.
+     */
+    interface Handler {
+        /**
+         * @param key the selected key of the channel
+         */
+        void ready(SelectionKey key);
+
+        /**
+         * the event loop is shut down, the channel is closed.
+         */
+        void close();
+    }
+
+    /**
+     * the loop of the current thread, set on the loop threads only.
+     */
+    private static final ThreadLocal<EventLoop> CURRENT = new ThreadLocal<>();
+
+    private final String name;
+    private final Runnable onExit;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * delayed tasks, only accessed by the loop thread.
+     */
+    private final PriorityQueue<ScheduledTask> scheduledTasks = new PriorityQueue<>();
+    private long scheduledCount;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param name   name of the thread
+     * @param onExit called once the loop has stopped
+     */
+    EventLoop(String name, Runnable onExit) {
+        this.name = name;
+        this.onExit = onExit;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new PrinterException("Failed to open a selector: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the task on the loop thread, starting the thread with the first task.
+     *
+     * @param task task to run
+     */
+    void execute(Runnable task) {
+        if (!running) {
+            throw new PrinterException("Event loop is shut down");
+        }
+
+        tasks.add(task);
+        if (!started.get() && started.compareAndSet(false, true)) {
+            thread = new Thread(this, name);
+            thread.start();
+        } else if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs the task on the loop thread after the delay. The selector waits with
+     * millisecond resolution, so shorter delays are rounded up to a millisecond unless
+     * the loop wakes up earlier for other work.
+     *
+     * @param task       task to run
+     * @param delayNanos delay in nanoseconds
+     */
+    void schedule(Runnable task, long delayNanos) {
+        long deadline = System.nanoTime() + delayNanos;
+        execute(() -> scheduledTasks.add(new ScheduledTask(deadline, scheduledCount++, task)));
+    }
+
+    /**
+     * @return <code>true</code> if called from the loop thread
+     */
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * @return <code>true</code> if called from the thread of any loop
+     */
+    static boolean inAnyEventLoop() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Registers the channel with this loop, must be called from the loop thread.
+     *
+     * @param channel non blocking channel
+     * @param ops     interest set
+     * @param handler handler of the readiness of the channel
+     * @return the selection key
+     * @throws IOException if the channel cannot be registered
+     */
+    SelectionKey register(SelectableChannel channel, int ops, Handler handler) throws IOException {
+        return channel.register(selector, ops, handler);
+    }
+
+    /**
+     * Stops the loop once the already submitted tasks are run. The channels still
+     * registered are closed.
+     */
+    void shutdown() {
+        running = false;
+        if (started.compareAndSet(false, true)) {
+            // never started
+            closeSelector();
+            onExit.run();
+        } else {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        CURRENT.set(this);
+        try {
+            while (running) {
+                runTasks();
+                long timeout = runScheduledTasks();
+                if (!running) {
+                    break;
+                }
+
+                if (timeout < 0) {
+                    selector.select();
+                } else if (timeout == 0) {
+                    selector.selectNow();
+                } else {
+                    selector.select(timeout);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        try {
+                            ((Handler) key.attachment()).ready(key);
+                        } catch (RuntimeException e) {
+                            log.error("Unexpected error handling {}", key, e);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("Event loop {} failed", name, e);
+        } finally {
+            running = false;
+            runTasks();
+
+            List<Handler> handlers = new ArrayList<>();
+            for (SelectionKey key : selector.keys()) {
+                handlers.add((Handler) key.attachment());
+            }
+            for (Handler handler : handlers) {
+                try {
+                    handler.close();
+                } catch (RuntimeException e) {
+                    log.error("Unexpected error closing {}", handler, e);
+                }
+            }
+            closeSelector();
+            onExit.run();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in event loop task", e);
+            }
+        }
+    }
+
+    /**
+     * runs the due scheduled tasks.
+     *
+     * @return milliseconds to wait for I/O, <code>0</code> if tasks are waiting and
+     * <code>-1</code> if there is nothing scheduled
+     */
+    private long runScheduledTasks() {
+        while (!scheduledTasks.isEmpty()) {
+            long remaining = scheduledTasks.peek().deadline - System.nanoTime();
+            if (remaining > 0) {
+                if (!tasks.isEmpty()) {
+                    return 0;
+                }
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining + 999_999));
+            }
+
+            try {
+                scheduledTasks.poll().task.run();
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in event loop task", e);
+            }
+        }
+        return tasks.isEmpty() ? -1 : 0;
+    }
+
+    private void closeSelector() {
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error("", e);
+        }
+    }
+
+    private static final class ScheduledTask implements Comparable<ScheduledTask> {
+        private final long deadline;
+        private final long sequence;
+        private final Runnable task;
+
+        private ScheduledTask(long deadline, long sequence, Runnable task) {
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask other) {
+            int order = Long.compare(deadline - other.deadline, 0);
+            return order != 0 ? order : Long.compare(sequence, other.sequence);
+        }
+    }
+}
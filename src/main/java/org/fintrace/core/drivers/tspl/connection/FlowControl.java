@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import org.fintrace.core.drivers.tspl.commands.status.PrinterStatus;
+import org.fintrace.core.drivers.tspl.exceptions.PrinterException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Status driven flow control of a client: a blocking status suspends the senders of
+ * labels and messages until a later status reports recovery.
+ * <p>
+ * Senders wait on this object, before taking the session lock of the client, so that
+ * status polls still get through while sending is suspended.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+final class FlowControl {
+
+    private volatile boolean enabled;
+    private volatile long timeoutNanos;
+    private volatile boolean suspended;
+
+    /**
+     * the status which suspended sending, guarded by this.
+     */
+    private PrinterStatus blocking;
+
+    /**
+     * suspends sending for a blocking status, resumes it for <code>null</code>.
+     *
+     * @param status the blocking status, <code>null</code> to resume
+     * @return <code>true</code> if sending was suspended or resumed by the call
+     */
+    synchronized boolean update(PrinterStatus status) {
+        boolean suspend = status != null;
+        if (suspended == suspend) {
+            return false;
+        }
+        suspended = suspend;
+        blocking = status;
+        if (!suspend) {
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * waits while sending is suspended, at most for the timeout.
+     */
+    void await() {
+        if (!suspended) {
+            return;
+        }
+        long timeout = timeoutNanos;
+        long deadline = System.nanoTime() + timeout;
+        synchronized (this) {
+            while (suspended) {
+                long remaining = deadline - System.nanoTime();
+                if (timeout > 0 && remaining <= 0) {
+                    throw new PrinterException("Sending is suspended, printer status "
+                            + blocking);
+                }
+                try {
+                    if (timeout > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } else {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PrinterException("Interrupted while sending is suspended");
+                }
+            }
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param timeoutNanos longest wait of a sender, <code>0</code> waits without limit
+     */
+    void setTimeoutNanos(long timeoutNanos) {
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    boolean isSuspended() {
+        return suspended;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the bytes received from the printer into reply frames. A decoder is used by
+ * one connection, {@link #decode(ByteBuffer, FrameHandler)} is called by its reading
+ * thread only, {@link #expect(ReplyShape)} by any sending thread.
+ *
+ * @author Venkaiah Chowdary Koneru
+ * @see ReplyFrameDecoder
+ */
+public interface FrameDecoder {
+
+    /**
+     * A request was sent which will be answered with a reply of the given shape. The
+     * replies come in the order of the requests.
+     *
+     * @param shape shape of the reply
+     */
+    void expect(ReplyShape shape);
+
+    /**
+     * Hands all the complete frames between the position and the limit of the buffer to
+     * the handler, advancing the position past them. An incomplete frame is left in
+     * the buffer, to be decoded again once more bytes are received.
+     *
+     * @param in      received bytes, a heap buffer
+     * @param handler next stage
+     */
+    void decode(ByteBuffer in, FrameHandler handler);
+
+    /**
+     * Forgets the expected replies and the partially decoded frame, e.g. on reconnection.
+     */
+    void reset();
+
+    /**
+     * A reply of the shape did not come in time: forgets the oldest expected reply of
+     * that shape, so that the next one is framed for the next query. The replies expected
+     * in other shapes are kept. The default implementation forgets all the expected
+     * replies like {@link #reset()}, their queries time out.
+     *
+     * @param shape shape of the lost reply
+     */
+    default void replyLost(ReplyShape shape) {
+        reset();
+    }
+
+    /**
+     * receives the decoded frames.
+     */
+    interface FrameHandler {
+        /**
+         * @param shape shape of the frame, {@link ReplyShape#UNSOLICITED} for unsolicited
+         *              messages
+         * @param frame read-only bytes of the frame including its terminator, only valid
+         *              during the call
+         */
+        void frame(ReplyShape shape, ByteBuffer frame);
+    }
+}
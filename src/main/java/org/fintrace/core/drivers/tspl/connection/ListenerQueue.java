@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.fintrace.core.drivers.tspl.listeners.OverflowPolicy;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Bounded queue of the events of one listener, delivered one at a time in the order
+ * they were posted. A delivery task is submitted to the listener executor of the client
+ * whenever the queue becomes non empty; it delivers up to a batch of events and
+ * re-submits itself while events are left, so that one busy listener does not hold a
+ * thread of a shared executor for long.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+@Slf4j
+final class ListenerQueue implements Runnable {
+    private final AbstractConnectionClient client;
+    private final ArrayDeque<Runnable> events = new ArrayDeque<>();
+    private boolean scheduled;
+    private volatile Thread deliveringThread;
+
+    ListenerQueue(AbstractConnectionClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @param event the listener call
+     */
+    void post(Runnable event) {
+        int capacity = client.getListenerQueueCapacity();
+        boolean schedule = false;
+        synchronized (this) {
+            while (events.size() >= capacity) {
+                OverflowPolicy policy = client.getListenerOverflowPolicy();
+                if (policy == OverflowPolicy.DROP_NEWEST) {
+                    client.listenerEventDropped();
+                    return;
+                } else if (policy == OverflowPolicy.DROP_OLDEST || !client.mayWaitForListeners()) {
+                    // never wait on an event loop or under the session lock
+                    events.poll();
+                    client.listenerEventDropped();
+                } else if (Thread.currentThread() == deliveringThread) {
+                    // the listener notifies itself, waiting would never end
+                    break;
+                } else {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        client.listenerEventDropped();
+                        return;
+                    }
+                }
+            }
+
+            events.add(event);
+            if (!scheduled) {
+                scheduled = true;
+                schedule = true;
+            }
+        }
+        if (schedule) {
+            submit();
+        }
+    }
+
+    @Override
+    public void run() {
+        deliveringThread = Thread.currentThread();
+        try {
+            int batchSize = client.getListenerBatchSize();
+            for (int i = 0; i < batchSize; i++) {
+                Runnable event;
+                synchronized (this) {
+                    event = events.poll();
+                    if (event == null) {
+                        scheduled = false;
+                        return;
+                    }
+                    notifyAll();
+                }
+
+                try {
+                    event.run();
+                } catch (RuntimeException e) {
+                    log.error("Listener failed", e);
+                }
+            }
+        } finally {
+            deliveringThread = null;
+        }
+
+        synchronized (this) {
+            if (events.isEmpty()) {
+                scheduled = false;
+                return;
+            }
+        }
+        submit();
+    }
+
+    private void submit() {
+        try {
+            client.getListenerExecutor().execute(this);
+        } catch (RejectedExecutionException e) {
+            log.warn("Listener executor rejected the events, discarding them");
+            synchronized (this) {
+                events.clear();
+                scheduled = false;
+                notifyAll();
+            }
+        }
+    }
+}
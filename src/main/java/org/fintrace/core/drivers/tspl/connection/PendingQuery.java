@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * A query waiting for its reply. Queries are matched with the replies of their shape in
+ * send order. The timeouts of all the clients are run by one daemon thread, no thread
+ * waits for a reply.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+final class PendingQuery<T> {
+
+    /**
+     * placeholder for a reply expected by a raw message, keeping the order of the
+     * replies of its shape.
+     */
+    static final PendingQuery<Void> RAW = new PendingQuery<>(null);
+
+    private static final ScheduledThreadPoolExecutor TIMEOUTS =
+            new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "tspl-query-timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    static {
+        TIMEOUTS.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Function<ByteBuffer, T> parser;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private volatile ScheduledFuture<?> timeout;
+
+    PendingQuery(Function<ByteBuffer, T> parser) {
+        this.parser = parser;
+    }
+
+    CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+    /**
+     * fails the query unless answered within the timeout.
+     */
+    void timeout(long timeout, TimeUnit unit) {
+        if (timeout > 0 && !future.isDone()) {
+            this.timeout = TIMEOUTS.schedule(() -> fail(new TimeoutException(
+                    "No reply within " + timeout + " " + unit)), timeout, unit);
+        }
+    }
+
+    /**
+     * parses the reply, on the reading thread.
+     */
+    void complete(ByteBuffer reply) {
+        if (parser == null || future.isDone()) {
+            return;
+        }
+        try {
+            future.complete(parser.apply(reply));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        cancelTimeout();
+    }
+
+    void fail(Throwable cause) {
+        if (parser != null) {
+            future.completeExceptionally(cause);
+            cancelTimeout();
+        }
+    }
+
+    private void cancelTimeout() {
+        ScheduledFuture<?> scheduled = timeout;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+}
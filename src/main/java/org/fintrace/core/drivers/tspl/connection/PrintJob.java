@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.Singular;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Labels printed together by a {@link PrintScheduler}. The tenants share the printer by
+ * weight, the jobs of a tenant of a higher priority are printed first, jobs of the same
+ * priority by earliest deadline.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+@Builder
+@Data
+public class PrintJob {
+
+    @Singular
+    private List<TSPLLabel> labels;
+
+    /**
+     * higher first, <code>0</code> by default.
+     */
+    private int priority;
+
+    /**
+     * time from the submission by which the last label should be written,
+     * <code>null</code> for none.
+     */
+    private Duration deadline;
+
+    /**
+     * producer sharing the printer, <code>null</code> for the default tenant.
+     */
+    private String tenant;
+}
@@ -0,0 +1,543 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+
+import java.io.Closeable;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prints the submitted {@link PrintJob}s on one printer, instead of in the order of the
+ * sending threads.
+ * <p>
+ * The tenants of the jobs share the printer by weighted fair queuing at label
+ * granularity: each label of a tenant advances its virtual time by the inverse of its
+ * weight and the tenant furthest behind sends the next label. A tenant with weight 2
+ * sends twice as many labels as a tenant with weight 1 while both have jobs queued, and
+ * a tenant queuing thousands of labels delays the labels of another one by at most a
+ * label per tenant. The jobs of a tenant are printed by priority, then earliest deadline
+ * first. Jobs without a deadline come after the ones with a deadline, jobs otherwise
+ * equal in submission order.
+ * </p>
+ * <p>
+ * A job of a higher priority, or with an earlier deadline, than the job of the tenant
+ * whose turn it is does not wait for the turn of its own tenant: the tenant borrows its
+ * next turns and sends the label right away. A tenant may run ahead of its share by at
+ * most {@link #setMaxBorrowedLabels(int) a few labels}, and gives them back by waiting
+ * while the other tenants catch up, so urgency can not be used to take more than the
+ * share of a tenant.
+ * </p>
+ * <p>
+ * One dispatcher thread sends the labels one at a time and picks the next label only
+ * once the previous ones are written, so an urgent job preempts a running one at the
+ * next label boundary instead of waiting behind all of its labels. Allowing more
+ * labels in flight keeps the connection busier at the price of a later preemption.
+ * </p>
+ * <p>
+ * A job completes once its last label is written, later than its deadline counts as a
+ * missed deadline. A failed label fails its job, the remaining labels of the job are
+ * not sent. Cancelling the future of a job drops its labels not sent yet.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public class PrintScheduler implements Closeable {
+
+    /**
+     * default number of labels sent but not written yet.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1;
+
+    /**
+     * tenant of the jobs without one.
+     */
+    public static final String DEFAULT_TENANT = "";
+
+    /**
+     * default number of labels a tenant may send ahead of its share for urgent jobs.
+     */
+    public static final int DEFAULT_MAX_BORROWED_LABELS = 4;
+
+    private static final Comparator<ScheduledJob> ORDER = ((Comparator<ScheduledJob>)
+            (a, b) -> Integer.compare(b.priority, a.priority))
+            .thenComparingLong(job -> job.deadlineNanos)
+            .thenComparingLong(job -> job.sequence);
+
+    private static final Comparator<Tenant> FAIR_ORDER = Comparator
+            .comparingDouble((Tenant tenant) -> tenant.start)
+            .thenComparingLong(tenant -> tenant.activation);
+
+    private final TSPLConnectionClient client;
+    private final Semaphore inFlight;
+    private final Thread dispatcher;
+
+    /**
+     * deadlines are kept relative to it, so that they compare without overflow.
+     */
+    private final long originNanos = System.nanoTime();
+
+    // guarded by the lock
+    private final Object lock = new Object();
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    /**
+     * tenants with jobs queued, by virtual start time of their next label.
+     */
+    private final PriorityQueue<Tenant> backlogged = new PriorityQueue<>(FAIR_ORDER);
+    private double virtualTime;
+    private int maxBorrowedLabels = DEFAULT_MAX_BORROWED_LABELS;
+    private long sequence;
+    private int queuedJobs;
+    private int queuedLabels;
+    private volatile boolean closed;
+
+    private final AtomicLong completedJobs = new AtomicLong();
+    private final AtomicLong failedJobs = new AtomicLong();
+    private final AtomicLong missedDeadlines = new AtomicLong();
+    private final AtomicLong maxLatenessNanos = new AtomicLong();
+
+    /**
+     * @param client client of the printer
+     */
+    public PrintScheduler(TSPLConnectionClient client) {
+        this(client, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param client      client of the printer
+     * @param maxInFlight number of labels sent but not written yet
+     */
+    public PrintScheduler(TSPLConnectionClient client, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.client = client;
+        this.inFlight = new Semaphore(maxInFlight);
+        dispatcher = new Thread(this::dispatch, "tspl-print-scheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Sets the share of the printer of a tenant, <code>1</code> by default.
+     *
+     * @param tenant tenant of the jobs, <code>null</code> for the default one
+     * @param weight labels sent by the tenant for one label of a tenant of weight 1
+     */
+    public void setTenantWeight(String tenant, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        synchronized (lock) {
+            tenantOf(tenant).weight = weight;
+        }
+    }
+
+    /**
+     * Sets how far a tenant may run ahead of its share to print a job more urgent than
+     * the one whose turn it is, see {@link PrintScheduler}.
+     *
+     * @param maxBorrowedLabels labels of a tenant of weight 1, {@link
+     *                          #DEFAULT_MAX_BORROWED_LABELS} by default, <code>0</code>
+     *                          keeps urgent jobs waiting for the turn of their tenant
+     */
+    public void setMaxBorrowedLabels(int maxBorrowedLabels) {
+        if (maxBorrowedLabels < 0) {
+            throw new IllegalArgumentException("maxBorrowedLabels must not be negative");
+        }
+        synchronized (lock) {
+            this.maxBorrowedLabels = maxBorrowedLabels;
+        }
+    }
+
+    /**
+     * Queues the job.
+     *
+     * @param job labels to print
+     * @return future completed once the last label is written
+     */
+    public CompletableFuture<Void> submit(PrintJob job) {
+        List<TSPLLabel> labels = job.getLabels();
+        if (labels == null || labels.isEmpty()) {
+            throw new IllegalArgumentException("Job has no labels");
+        }
+        long now = System.nanoTime();
+        long deadline = job.getDeadline() == null ? Long.MAX_VALUE
+                : now - originNanos + job.getDeadline().toNanos();
+
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Scheduler is closed");
+            }
+            Tenant tenant = tenantOf(job.getTenant());
+            ScheduledJob scheduled = new ScheduledJob(tenant, labels, job.getPriority(), deadline,
+                    sequence++, now);
+            if (tenant.jobs.isEmpty()) {
+                // idle tenants do not save up a share
+                backlogged.remove(tenant);
+                tenant.start = Math.max(virtualTime, tenant.finish);
+                tenant.activation = sequence;
+                backlogged.add(tenant);
+            }
+            tenant.jobs.add(scheduled);
+            tenant.queuedLabels += labels.size();
+            queuedJobs++;
+            queuedLabels += labels.size();
+            lock.notifyAll();
+            return scheduled.future;
+        }
+    }
+
+    private Tenant tenantOf(String name) {
+        String key = name == null ? DEFAULT_TENANT : name;
+        return tenants.computeIfAbsent(key, Tenant::new);
+    }
+
+    private void dispatch() {
+        while (!closed) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            ScheduledJob job;
+            TSPLLabel label;
+            boolean last;
+            synchronized (lock) {
+                while ((job = next()) == null && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (job == null) {
+                    return;
+                }
+                if (job.next == 0) {
+                    job.tenant.started(System.nanoTime() - job.submittedNanos);
+                }
+                label = job.labels.get(job.next++);
+                last = job.next == job.labels.size();
+                if (last) {
+                    job.tenant.jobs.poll();
+                    queuedJobs--;
+                }
+                queuedLabels--;
+                job.tenant.queuedLabels--;
+                job.tenant.sentLabels++;
+            }
+            send(job, label, last);
+        }
+    }
+
+    /**
+     * takes the turn of the tenant furthest behind, or lets a tenant with a more urgent
+     * job borrow one, and returns its next job, guarded by the lock.
+     */
+    private ScheduledJob next() {
+        Tenant tenant;
+        ScheduledJob job = null;
+        while ((tenant = backlogged.peek()) != null && (job = headOf(tenant)) == null) {
+            backlogged.poll();
+        }
+        if (tenant == null) {
+            return null;
+        }
+
+        // the virtual time is the one of the tenant furthest behind, even when another
+        // tenant borrows the turn
+        virtualTime = tenant.start;
+        Tenant urgent = mostUrgent(job);
+        if (urgent != null) {
+            tenant = urgent;
+            job = urgent.jobs.peek();
+        }
+        backlogged.remove(tenant);
+        tenant.finish = tenant.start + 1.0 / tenant.weight;
+        boolean remaining = job.next + 1 < job.labels.size() || tenant.jobs.size() > 1;
+        if (remaining) {
+            tenant.start = tenant.finish;
+            backlogged.add(tenant);
+        }
+        return job;
+    }
+
+    /**
+     * @return the next job of the tenant, after dropping its cancelled jobs
+     */
+    private ScheduledJob headOf(Tenant tenant) {
+        ScheduledJob job;
+        while ((job = tenant.jobs.peek()) != null && job.future.isDone()) {
+            // cancelled
+            remove(job);
+        }
+        return job;
+    }
+
+    /**
+     * @param turn the job of the tenant whose turn it is
+     * @return the tenant with the most urgent job ahead of it that may still borrow a
+     * turn, <code>null</code> if none
+     */
+    private Tenant mostUrgent(ScheduledJob turn) {
+        if (maxBorrowedLabels == 0) {
+            return null;
+        }
+        Tenant urgent = null;
+        ScheduledJob best = turn;
+        for (Tenant tenant : backlogged) {
+            ScheduledJob job = tenant.jobs.peek();
+            if (job != null && !job.future.isDone() && moreUrgent(job, best)
+                    && (tenant.start - virtualTime) * tenant.weight < maxBorrowedLabels) {
+                urgent = tenant;
+                best = job;
+            }
+        }
+        return urgent;
+    }
+
+    private static boolean moreUrgent(ScheduledJob job, ScheduledJob than) {
+        return job.priority != than.priority ? job.priority > than.priority
+                : job.deadlineNanos < than.deadlineNanos;
+    }
+
+    private void send(ScheduledJob job, TSPLLabel label, boolean last) {
+        CompletableFuture<Void> sent;
+        try {
+            sent = client.sendAsync(label);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            fail(job, e);
+            return;
+        }
+        sent.whenComplete((v, e) -> {
+            inFlight.release();
+            if (e != null) {
+                fail(job, e);
+            } else if (last) {
+                complete(job);
+            }
+        });
+    }
+
+    private void complete(ScheduledJob job) {
+        if (job.deadlineNanos != Long.MAX_VALUE) {
+            long lateness = System.nanoTime() - originNanos - job.deadlineNanos;
+            if (lateness > 0) {
+                missedDeadlines.incrementAndGet();
+                maxLatenessNanos.accumulateAndGet(lateness, Math::max);
+            }
+        }
+        completedJobs.incrementAndGet();
+        job.future.complete(null);
+    }
+
+    private void fail(ScheduledJob job, Throwable cause) {
+        if (job.future.completeExceptionally(cause)) {
+            failedJobs.incrementAndGet();
+        }
+        synchronized (lock) {
+            remove(job);
+        }
+    }
+
+    /**
+     * drops the labels of the job not sent yet, guarded by the lock. The tenant leaves
+     * the backlog lazily, when its turn comes.
+     */
+    private void remove(ScheduledJob job) {
+        if (job.tenant.jobs.remove(job)) {
+            int remaining = job.labels.size() - job.next;
+            job.tenant.queuedLabels -= remaining;
+            queuedLabels -= remaining;
+            queuedJobs--;
+        }
+    }
+
+    /**
+     * Stops the dispatcher once the label being sent is handed to the client, the
+     * queued jobs are cancelled.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            for (Tenant tenant : tenants.values()) {
+                ScheduledJob job;
+                while ((job = tenant.jobs.poll()) != null) {
+                    job.future.cancel(false);
+                }
+                tenant.queuedLabels = 0;
+            }
+            backlogged.clear();
+            queuedJobs = 0;
+            queuedLabels = 0;
+            lock.notifyAll();
+        }
+    }
+
+    public TSPLConnectionClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return the number of jobs waiting or being printed
+     */
+    public int getQueuedJobs() {
+        synchronized (lock) {
+            return queuedJobs;
+        }
+    }
+
+    /**
+     * @return the number of labels not sent yet
+     */
+    public int getQueuedLabels() {
+        synchronized (lock) {
+            return queuedLabels;
+        }
+    }
+
+    /**
+     * @param tenant tenant of the jobs, <code>null</code> for the default one
+     * @return the statistics of the tenant
+     */
+    public TenantStats getTenantStats(String tenant) {
+        synchronized (lock) {
+            return tenantOf(tenant).stats();
+        }
+    }
+
+    /**
+     * @return the statistics of each tenant which submitted a job or has a weight
+     */
+    public Map<String, TenantStats> getTenantStats() {
+        Map<String, TenantStats> stats = new LinkedHashMap<>();
+        synchronized (lock) {
+            tenants.forEach((name, tenant) -> stats.put(name, tenant.stats()));
+        }
+        return stats;
+    }
+
+    /**
+     * @return the number of jobs whose labels are all written
+     */
+    public long getCompletedJobs() {
+        return completedJobs.get();
+    }
+
+    /**
+     * @return the number of jobs failed by a label
+     */
+    public long getFailedJobs() {
+        return failedJobs.get();
+    }
+
+    /**
+     * @return the number of completed jobs written after their deadline
+     */
+    public long getMissedDeadlines() {
+        return missedDeadlines.get();
+    }
+
+    /**
+     * @param unit unit of the result
+     * @return the most a completed job missed its deadline by
+     */
+    public long getMaxLateness(TimeUnit unit) {
+        return unit.convert(maxLatenessNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * jobs and share of a tenant, guarded by the lock.
+     */
+    private static final class Tenant {
+        private final String name;
+        private final PriorityQueue<ScheduledJob> jobs = new PriorityQueue<>(ORDER);
+        private int weight = 1;
+        /**
+         * virtual times of the next label and the end of the last one.
+         */
+        private double start;
+        private double finish;
+        private long activation;
+
+        private int queuedLabels;
+        private long sentLabels;
+        private long startedJobs;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+
+        private Tenant(String name) {
+            this.name = name;
+        }
+
+        private void started(long waitNanos) {
+            startedJobs++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+
+        private TenantStats stats() {
+            return TenantStats.builder()
+                    .tenant(name)
+                    .weight(weight)
+                    .queuedJobs(jobs.size())
+                    .queuedLabels(queuedLabels)
+                    .sentLabels(sentLabels)
+                    .startedJobs(startedJobs)
+                    .totalWaitNanos(totalWaitNanos)
+                    .maxWaitNanos(maxWaitNanos)
+                    .build();
+        }
+    }
+
+    /**
+     * a submitted job and the next of its labels to send.
+     */
+    private static final class ScheduledJob {
+        private final Tenant tenant;
+        private final List<TSPLLabel> labels;
+        private final int priority;
+        private final long deadlineNanos;
+        private final long sequence;
+        private final long submittedNanos;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        // guarded by the lock
+        private int next;
+
+        private ScheduledJob(Tenant tenant, List<TSPLLabel> labels, int priority,
+                             long deadlineNanos, long sequence, long submittedNanos) {
+            this.tenant = tenant;
+            this.labels = labels;
+            this.priority = priority;
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Durable spool of the frames sent to one printer: an append-only log of memory-mapped
+ * segment files in a directory, plus a committed offset up to which the frames were
+ * written to the printer. Frames above the committed offset are replayed after a
+ * restart, see {@link AbstractConnectionClient#setSpool(PrintSpool)}.
+ * <p>
+ * Each record is its length, the CRC32 of the frame and the frame. An append copies the
+ * frame into the mapped segment, no system call is made, the data reaches the disk with
+ * the page cache even if the process dies. Call {@link #sync()} to also survive a power
+ * loss. A record torn by a crash fails its checksum and ends the log when the spool is
+ * opened again.
+ * </p>
+ * <p>
+ * Segments have a fixed size and are named after their index. The next segment is
+ * mapped in the background while the current one fills up, and segments below the
+ * committed offset are deleted in the background once the log rolls over or the
+ * commits leave them, so that appends do not wait for the file system.
+ * </p>
+ * <p>
+ * Appends are serialized, commits and replays may run from any thread. The segment
+ * size must stay the same for a directory.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public final class PrintSpool implements Closeable {
+
+    /**
+     * default size of a segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * length and checksum of a record.
+     */
+    private static final int HEADER = 8;
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String COMMIT_FILE = "committed";
+
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tspl-spool-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path directory;
+    private final int segmentSize;
+    private final AtomicLong committed = new AtomicLong();
+
+    /**
+     * committed offset and its complement, guarded by itself.
+     */
+    private final MappedByteBuffer commitBuffer;
+
+    // guarded by this
+    private MappedByteBuffer writeSegment;
+    // read without the lock by the compactor, which must not wait for an append
+    private volatile long writeIndex;
+    private int writePosition;
+    private Future<MappedByteBuffer> nextSegment;
+    private final CRC32 crc = new CRC32();
+    private boolean closed;
+
+    private volatile long endOffset;
+    private volatile long firstIndex;
+    private final Object compactLock = new Object();
+
+    /**
+     * Opens the spool in the directory with the default segment size, recovering the
+     * frames it already holds.
+     *
+     * @param directory directory of the spool, created if missing
+     * @throws IOException if the spool can not be opened
+     */
+    public PrintSpool(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the spool in the directory, recovering the frames it already holds.
+     *
+     * @param directory   directory of the spool, created if missing
+     * @param segmentSize size of a segment file, larger than the largest frame
+     * @throws IOException if the spool can not be opened
+     */
+    public PrintSpool(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER) {
+            throw new IllegalArgumentException("segmentSize must be larger than " + HEADER);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+
+        long first = Long.MAX_VALUE;
+        long last = -1;
+        try (DirectoryStream<Path> segments =
+                     Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : segments) {
+                long index = indexOf(segment);
+                first = Math.min(first, index);
+                last = Math.max(last, index);
+            }
+        }
+        if (last < 0) {
+            first = 0;
+            last = 0;
+        } else if (Files.size(segmentPath(last)) != segmentSize) {
+            throw new IllegalArgumentException("Segments of " + directory + " are not "
+                    + segmentSize + " bytes");
+        }
+        writeSegment = map(last);
+        writePosition = recover(writeSegment);
+        while (writePosition == 0 && last > first) {
+            // mapped ahead but never written
+            Files.delete(segmentPath(last));
+            last--;
+            writeSegment = map(last);
+            writePosition = recover(writeSegment);
+        }
+        firstIndex = first;
+        writeIndex = last;
+        endOffset = last * segmentSize + writePosition;
+
+        try (FileChannel channel = FileChannel.open(directory.resolve(COMMIT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            commitBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * Long.BYTES);
+        }
+        long offset = commitBuffer.getLong(0);
+        if (offset != ~commitBuffer.getLong(Long.BYTES)) {
+            // torn commit, replay all the frames kept
+            offset = 0;
+        }
+        committed.set(Math.min(Math.max(offset, first * segmentSize), endOffset));
+    }
+
+    /**
+     * finds the end of the log in the last segment, dropping a torn record.
+     */
+    private int recover(MappedByteBuffer segment) {
+        int position = 0;
+        while (position + HEADER <= segmentSize) {
+            int length = segment.getInt(position);
+            if (length == 0) {
+                return position;
+            }
+            boolean fits = length > 0 && length <= segmentSize - HEADER - position;
+            if (!fits || !checksumMatches(segment, position, length)) {
+                int end = fits ? position + HEADER + length : segmentSize;
+                for (int i = position; i < end; i++) {
+                    segment.put(i, (byte) 0);
+                }
+                return position;
+            }
+            position += HEADER + length;
+        }
+        return position;
+    }
+
+    private boolean checksumMatches(MappedByteBuffer segment, int position, int length) {
+        ByteBuffer frame = segment.duplicate();
+        frame.limit(position + HEADER + length).position(position + HEADER);
+        crc.reset();
+        crc.update(frame);
+        return (int) crc.getValue() == segment.getInt(position + 4);
+    }
+
+    /**
+     * Appends a frame to the log.
+     *
+     * @param frame  bytes of the frame
+     * @param offset start of the frame
+     * @param length length of the frame
+     * @return offset of the log after the frame, to {@link #commit(long)} once sent
+     */
+    public synchronized long append(byte[] frame, int offset, int length) {
+        if (closed) {
+            throw new IllegalStateException("Spool is closed");
+        }
+        if (length <= 0 || length > segmentSize - HEADER) {
+            throw new IllegalArgumentException("Frame of " + length
+                    + " bytes does not fit a segment of " + segmentSize + " bytes");
+        }
+        if (writePosition + HEADER + length > segmentSize) {
+            roll();
+        }
+
+        crc.reset();
+        crc.update(frame, offset, length);
+        int position = writePosition;
+        MappedByteBuffer segment = writeSegment;
+        segment.putInt(position + 4, (int) crc.getValue());
+        segment.position(position + HEADER);
+        segment.put(frame, offset, length);
+        // the length last, a record is only visible once complete
+        segment.putInt(position, length);
+        writePosition = position + HEADER + length;
+
+        if (nextSegment == null && writePosition > segmentSize / 2) {
+            long index = writeIndex + 1;
+            nextSegment = COMPACTOR.submit(() -> map(index));
+        }
+        long end = writeIndex * segmentSize + writePosition;
+        endOffset = end;
+        return end;
+    }
+
+    /**
+     * continues the log in the next segment, guarded by this.
+     */
+    private void roll() {
+        MappedByteBuffer next = null;
+        if (nextSegment != null) {
+            try {
+                next = nextSegment.get();
+            } catch (ExecutionException e) {
+                // mapped again below
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            nextSegment = null;
+        }
+        if (next == null) {
+            next = mapOrFail(writeIndex + 1);
+        }
+        writeIndex++;
+        writeSegment = next;
+        writePosition = 0;
+        COMPACTOR.execute(this::compact);
+    }
+
+    /**
+     * Marks the frames up to the offset as sent, they are not replayed anymore. Offsets
+     * below the committed one are ignored.
+     *
+     * @param offset offset returned by {@link #append(byte[], int, int)} or passed to
+     *               the replay
+     */
+    public void commit(long offset) {
+        long current;
+        do {
+            current = committed.get();
+            if (offset <= current) {
+                return;
+            }
+        } while (!committed.compareAndSet(current, offset));
+
+        synchronized (commitBuffer) {
+            long latest = committed.get();
+            commitBuffer.putLong(0, latest);
+            commitBuffer.putLong(Long.BYTES, ~latest);
+        }
+        if (offset / segmentSize != current / segmentSize) {
+            COMPACTOR.execute(this::compact);
+        }
+    }
+
+    /**
+     * Passes the frames above the committed offset to the consumer, oldest first, with
+     * the offset to commit once each of them is sent again. Frames appended during the
+     * replay are not passed.
+     *
+     * @param consumer receives each frame, only valid during the call, and its offset
+     * @return the number of frames replayed
+     */
+    public int replay(ObjLongConsumer<ByteBuffer> consumer) {
+        long end;
+        long lastIndex;
+        ByteBuffer current;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Spool is closed");
+            }
+            end = endOffset;
+            lastIndex = writeIndex;
+            current = writeSegment.duplicate();
+        }
+
+        int frames = 0;
+        long offset = committed.get();
+        long mappedIndex = lastIndex;
+        ByteBuffer segment = current;
+        while (offset < end) {
+            long index = offset / segmentSize;
+            if (index != mappedIndex) {
+                segment = index == lastIndex ? current : readOnly(index);
+                mappedIndex = index;
+            }
+            int position = (int) (offset % segmentSize);
+            int length = position + HEADER <= segmentSize ? segment.getInt(position) : 0;
+            if (length <= 0) {
+                offset = (index + 1) * segmentSize;
+                continue;
+            }
+
+            ByteBuffer frame = segment.duplicate();
+            frame.limit(position + HEADER + length).position(position + HEADER);
+            offset = index * segmentSize + position + HEADER + length;
+            consumer.accept(frame.slice(), offset);
+            frames++;
+        }
+        return frames;
+    }
+
+    /**
+     * Deletes the segments whose frames are all committed. Done in the background on
+     * roll over and when the commits leave a segment.
+     */
+    public void compact() {
+        synchronized (compactLock) {
+            long committedIndex = committed.get() / segmentSize;
+            long upTo = Math.min(committedIndex, writeIndex);
+            for (long index = firstIndex; index < upTo; index++) {
+                try {
+                    Files.deleteIfExists(segmentPath(index));
+                } catch (IOException e) {
+                    // retried with the next compaction
+                    return;
+                }
+                firstIndex = index + 1;
+            }
+        }
+    }
+
+    /**
+     * Forces the current segment and the committed offset to the disk.
+     */
+    public void sync() {
+        synchronized (this) {
+            writeSegment.force();
+        }
+        synchronized (commitBuffer) {
+            commitBuffer.force();
+        }
+    }
+
+    /**
+     * Syncs the spool, no frame can be appended anymore. The mappings are released
+     * once garbage collected.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        sync();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @return offset up to which the frames are sent
+     */
+    public long getCommittedOffset() {
+        return committed.get();
+    }
+
+    /**
+     * @return offset of the end of the log
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * @return <code>true</code> if frames wait for being sent
+     */
+    public boolean hasPending() {
+        return committed.get() < endOffset;
+    }
+
+    /**
+     * @return the number of segment files, including the current one
+     */
+    public long getSegmentCount() {
+        return writeIndex - firstIndex + 1;
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%019d%s", index, SEGMENT_SUFFIX));
+    }
+
+    private static long indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a spool segment: " + segment, e);
+        }
+    }
+
+    private MappedByteBuffer map(long index) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(index), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private MappedByteBuffer mapOrFail(long index) {
+        try {
+            return map(index);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteBuffer readOnly(long index) {
+        try (FileChannel channel = FileChannel.open(segmentPath(index), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import org.fintrace.core.drivers.tspl.commands.FrozenCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.label.Bar;
+import org.fintrace.core.drivers.tspl.commands.label.BoundedElement;
+import org.fintrace.core.drivers.tspl.commands.label.Box;
+import org.fintrace.core.drivers.tspl.commands.label.Circle;
+import org.fintrace.core.drivers.tspl.commands.label.DataMatrix;
+import org.fintrace.core.drivers.tspl.commands.label.Ellipse;
+import org.fintrace.core.drivers.tspl.commands.label.Erase;
+import org.fintrace.core.drivers.tspl.commands.label.LabelFormatCommand;
+import org.fintrace.core.drivers.tspl.commands.label.Text;
+import org.fintrace.core.drivers.tspl.commands.system.ClearBuffer;
+import org.fintrace.core.drivers.tspl.commands.system.Print;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fintrace.core.drivers.tspl.DriverConstants.COMMA;
+import static org.fintrace.core.drivers.tspl.DriverConstants.EMPTY_SPACE;
+import static org.fintrace.core.drivers.tspl.DriverConstants.LF;
+
+/**
+ * Commands last drawn into the image buffer of the printer.
+ * <p>
+ * The image buffer keeps its content after PRINT until the next CLS. When a label
+ * draws exactly the same commands again, printing the buffer is enough. When only
+ * some elements changed and the regions they drew into are known, erasing these
+ * regions and drawing the changed elements (plus the unchanged ones overlapping the
+ * erased regions) gives the same image.
+ * </p>
+ * <p>
+ * The drawing commands of the current and the previous label are kept as encoded
+ * bytes in two arrays which are swapped, so there is no allocation once they are
+ * large enough. Not thread safe, guarded by the connection client.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+final class PrintedImage {
+    private static final int UNKNOWN = -1;
+
+    private Snapshot previous = new Snapshot();
+    private Snapshot current = new Snapshot();
+    private boolean valid;
+
+    /**
+     * A label can re-use the image buffer if it clears it with CLS, ends with its only
+     * PRINT and otherwise has only label formatting commands (TEXT, BARCODE, BOX, ...)
+     * and setup commands. Anything else (counters, cuts, status polls, ...) has
+     * effects beyond the image buffer.
+     *
+     * @param elements elements of the label
+     * @return <code>true</code> if the label can re-use the image buffer
+     */
+    static boolean isReusable(List<TSPLCommand> elements) {
+        int last = elements.size() - 1;
+        if (last < 0 || typeOf(elements.get(last)) != Print.class) {
+            return false;
+        }
+
+        boolean cleared = false;
+        for (int i = 0; i < last; i++) {
+            TSPLCommand element = elements.get(i);
+            Class<?> type = typeOf(element);
+            if (type == ClearBuffer.class) {
+                cleared = true;
+            } else if (type.getPackage() != Text.class.getPackage()
+                    && SetupState.settingOf(element) == null) {
+                return false;
+            }
+        }
+        return cleared;
+    }
+
+    private static Class<?> typeOf(TSPLCommand command) {
+        if (command instanceof BoundedElement && ((BoundedElement) command).getElement() != null) {
+            return typeOf(((BoundedElement) command).getElement());
+        }
+        if (command instanceof FrozenCommand) {
+            return ((FrozenCommand) command).getCommandType();
+        }
+        return command.getClass();
+    }
+
+    /**
+     * stores the region drawn by the element into <code>bounds</code>, or
+     * {@link #UNKNOWN} as width if it depends on the content.
+     */
+    private static void boundsOf(TSPLCommand element, int[] bounds, int offset) {
+        bounds[offset + 2] = UNKNOWN;
+        if (element instanceof BoundedElement) {
+            BoundedElement bounded = (BoundedElement) element;
+            setBounds(bounds, offset, bounded.getXCoordinate(), bounded.getYCoordinate(),
+                    bounded.getWidth(), bounded.getHeight());
+        } else if (element instanceof Bar) {
+            Bar bar = (Bar) element;
+            setBounds(bounds, offset, bar.getXCoordinate(), bar.getYCoordinate(),
+                    bar.getWidth(), bar.getHeight());
+        } else if (element instanceof Box) {
+            Box box = (Box) element;
+            setBounds(bounds, offset, box.getXCoordinate(), box.getYCoordinate(),
+                    extent(box.getXCoordinate(), box.getXEndCoordinate(), box.getLineThickness()),
+                    extent(box.getYCoordinate(), box.getYEndCoordinate(), box.getLineThickness()));
+        } else if (element instanceof Circle) {
+            Circle circle = (Circle) element;
+            Integer size = extent(0, circle.getDiameter(), circle.getThickness());
+            setBounds(bounds, offset, circle.getXStart(), circle.getYStart(), size, size);
+        } else if (element instanceof Ellipse) {
+            Ellipse ellipse = (Ellipse) element;
+            setBounds(bounds, offset, ellipse.getXCoordinate(), ellipse.getYCoordinate(),
+                    extent(0, ellipse.getWidth(), ellipse.getLineThickness()),
+                    extent(0, ellipse.getHeight(), ellipse.getLineThickness()));
+        } else if (element instanceof DataMatrix) {
+            DataMatrix dataMatrix = (DataMatrix) element;
+            setBounds(bounds, offset, dataMatrix.getXCoordinate(), dataMatrix.getYCoordinate(),
+                    dataMatrix.getWidth(), dataMatrix.getHeight());
+        }
+    }
+
+    /**
+     * @return <code>end - start + thickness</code> or <code>null</code> if a value is
+     * missing
+     */
+    private static Integer extent(Integer start, Integer end, Integer thickness) {
+        if (start == null || end == null || thickness == null) {
+            return null;
+        }
+        return end - start + thickness;
+    }
+
+    private static void setBounds(int[] bounds, int offset, Integer x, Integer y,
+                                  Integer width, Integer height) {
+        if (x == null || y == null || width == null || height == null
+                || width < 0 || height < 0) {
+            return;
+        }
+        bounds[offset] = x;
+        bounds[offset + 1] = y;
+        bounds[offset + 2] = width;
+        bounds[offset + 3] = height;
+    }
+
+    /**
+     * starts drawing a new label.
+     */
+    void begin() {
+        current.clear();
+    }
+
+    /**
+     * records an encoded element of the label.
+     *
+     * @param element the element, a CLS or a label formatting command
+     * @param bytes   array holding the encoded element
+     * @param from    start of the element in the array
+     * @param to      end (exclusive) of the element in the array
+     */
+    void add(TSPLCommand element, byte[] bytes, int from, int to) {
+        Class<?> type = typeOf(element);
+        boolean clear = type == ClearBuffer.class;
+        if (clear || type == Erase.class) {
+            // whatever was drawn before CLS is wiped, erasing regions can not mimic that
+            current.incremental &= clear && current.count == 0;
+        }
+        current.add(bytes, from, to, clear);
+        boundsOf(element, current.bounds, (current.count - 1) * 4);
+    }
+
+    /**
+     * @return <code>true</code> if the current label draws exactly the same as the
+     * previous one
+     */
+    boolean isUnchanged() {
+        return valid && current.length == previous.length
+                && equals(current.bytes, 0, previous.bytes, 0, current.length);
+    }
+
+    /**
+     * writes ERASE commands for the regions of the elements removed since the previous
+     * label and the elements to draw into them.
+     *
+     * @param target         buffer to write into
+     * @param maxEraseRatio  give up if the erased area is larger than this part of the
+     *                       area of all the elements
+     * @return <code>false</code> if the change can not be done incrementally, nothing is
+     * written then
+     */
+    boolean writeIncrement(TSPLCommandBuffer target, float maxEraseRatio) {
+        if (!valid || !previous.incremental || !current.incremental) {
+            return false;
+        }
+
+        // pair unchanged elements, the rest of the previous ones has to be erased
+        int[] match = new int[current.count];
+        boolean[] kept = new boolean[previous.count];
+        for (int j = 0; j < current.count; j++) {
+            match[j] = UNKNOWN;
+            for (int i = 0; i < previous.count; i++) {
+                if (!kept[i] && previous.sameElement(i, current, j)) {
+                    kept[i] = true;
+                    match[j] = i;
+                    break;
+                }
+            }
+        }
+
+        long erasedArea = 0;
+        boolean erasing = false;
+        for (int i = 0; i < previous.count; i++) {
+            if (!kept[i]) {
+                if (previous.bounds[i * 4 + 2] == UNKNOWN) {
+                    return false;
+                }
+                erasedArea += (long) previous.bounds[i * 4 + 2] * previous.bounds[i * 4 + 3];
+                erasing = true;
+            }
+        }
+        long totalArea = Math.max(previous.boundingArea(), current.boundingArea());
+        if (erasedArea > maxEraseRatio * totalArea) {
+            return false;
+        }
+
+        for (int i = 0; i < previous.count; i++) {
+            if (!kept[i]) {
+                int b = i * 4;
+                target.append(LabelFormatCommand.ERASE.name()).append(EMPTY_SPACE)
+                        .append(previous.bounds[b]).append(COMMA)
+                        .append(previous.bounds[b + 1]).append(COMMA)
+                        .append(previous.bounds[b + 2]).append(COMMA)
+                        .append(previous.bounds[b + 3]).append(LF);
+            }
+        }
+
+        for (int j = 0; j < current.count; j++) {
+            boolean draw = match[j] == UNKNOWN;
+            if (!draw && erasing && !current.isClear(j)) {
+                draw = current.bounds[j * 4 + 2] == UNKNOWN
+                        || overlapsErased(current.bounds, j * 4, kept);
+            }
+            if (draw && !current.isClear(j)) {
+                target.append(current.bytes, current.offsets[j],
+                        current.offsets[j + 1] - current.offsets[j]);
+            }
+        }
+        return true;
+    }
+
+    private boolean overlapsErased(int[] bounds, int b, boolean[] kept) {
+        for (int i = 0; i < previous.count; i++) {
+            int e = i * 4;
+            if (!kept[i]
+                    && bounds[b] < previous.bounds[e] + previous.bounds[e + 2]
+                    && previous.bounds[e] < bounds[b] + bounds[b + 2]
+                    && bounds[b + 1] < previous.bounds[e + 1] + previous.bounds[e + 3]
+                    && previous.bounds[e + 1] < bounds[b + 1] + bounds[b + 3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * the current label is now the content of the image buffer.
+     */
+    void commit() {
+        Snapshot drawn = current;
+        current = previous;
+        previous = drawn;
+        valid = true;
+    }
+
+    /**
+     * forgets the content of the image buffer.
+     */
+    void reset() {
+        valid = false;
+    }
+
+    private static boolean equals(byte[] a, int aFrom, byte[] b, int bFrom, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aFrom + i] != b[bFrom + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encoded elements of one label.
+     */
+    private static final class Snapshot {
+        private byte[] bytes = new byte[256];
+        private int length;
+        private int[] offsets = new int[17];
+        private int[] bounds = new int[64];
+        private boolean[] clear = new boolean[16];
+        private int count;
+        private boolean incremental;
+
+        void clear() {
+            length = 0;
+            count = 0;
+            incremental = true;
+        }
+
+        void add(byte[] source, int from, int to, boolean clearCommand) {
+            int size = to - from;
+            if (length + size > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + size));
+            }
+            if (count + 1 == clear.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                clear = Arrays.copyOf(clear, clear.length * 2);
+            }
+
+            System.arraycopy(source, from, bytes, length, size);
+            clear[count] = clearCommand;
+            offsets[count] = length;
+            length += size;
+            offsets[++count] = length;
+        }
+
+        boolean isClear(int element) {
+            return clear[element];
+        }
+
+        boolean sameElement(int element, Snapshot other, int otherElement) {
+            int size = offsets[element + 1] - offsets[element];
+            return size == other.offsets[otherElement + 1] - other.offsets[otherElement]
+                    && PrintedImage.equals(bytes, offsets[element], other.bytes,
+                    other.offsets[otherElement], size);
+        }
+
+        long boundingArea() {
+            int minX = Integer.MAX_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int maxY = Integer.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                int b = i * 4;
+                if (bounds[b + 2] != UNKNOWN) {
+                    minX = Math.min(minX, bounds[b]);
+                    minY = Math.min(minY, bounds[b + 1]);
+                    maxX = Math.max(maxX, bounds[b] + bounds[b + 2]);
+                    maxY = Math.max(maxY, bounds[b + 1] + bounds[b + 3]);
+                }
+            }
+            return minX > maxX ? 0 : (long) (maxX - minX) * (maxY - minY);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import org.fintrace.core.drivers.tspl.exceptions.PrinterException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receive buffer of a connection, growing for long replies. After decoding, only the
+ * incomplete rest of the received bytes is moved to the start of the buffer.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+final class ReadBuffer {
+    /**
+     * longest reply which can be received.
+     */
+    static final int MAX_CAPACITY = 16 * 1024 * 1024;
+
+    private ByteBuffer buffer;
+
+    ReadBuffer(int initialCapacity) {
+        buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    /**
+     * @param minRemaining the number of bytes which have to fit
+     * @return the buffer to receive into, in write mode
+     */
+    ByteBuffer writable(int minRemaining) {
+        if (buffer.remaining() < minRemaining) {
+            int capacity = buffer.capacity();
+            int required = buffer.position() + minRemaining;
+            while (capacity < required) {
+                capacity *= 2;
+            }
+            if (capacity > MAX_CAPACITY) {
+                throw new PrinterException("Reply is longer than " + MAX_CAPACITY + " bytes");
+            }
+
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        return buffer;
+    }
+
+    /**
+     * decodes the received bytes and keeps the incomplete rest.
+     */
+    void decode(FrameDecoder decoder, FrameDecoder.FrameHandler handler) {
+        buffer.flip();
+        try {
+            decoder.decode(buffer, handler);
+        } finally {
+            buffer.compact();
+        }
+    }
+
+    /**
+     * drops the received bytes.
+     */
+    void clear() {
+        buffer.clear();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Default {@link FrameDecoder}, framing the replies by the shapes expected for the sent
+ * queries, in order. Bytes received while no reply is expected are framed as
+ * {@link ReplyShape#UNSOLICITED} lines. Text lines take the LF following their CR
+ * with them, and line breaks in front of a text line are skipped. Fixed size replies
+ * are taken as they are, whatever the value of their bytes, so a status byte equal
+ * to CR or LF is never mistaken for a line break. When the last expected reply is
+ * lost ({@link #replyLost(ReplyShape)}), the bytes received before the next expected
+ * reply are dropped.
+ * <p>
+ * Frames are handed over as slices of the receive buffer, without copying. Fixed size
+ * frames are taken as they are, delimited frames are searched once: after a partial
+ * read, the search goes on where it stopped.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public class ReplyFrameDecoder implements FrameDecoder {
+    private final Queue<ReplyShape> expected = new ConcurrentLinkedQueue<>();
+
+    /**
+     * bytes of the current delimited frame already searched for the terminator.
+     */
+    private int searched;
+
+    /**
+     * set when the last expected reply is lost, the received bytes are dropped until the
+     * next reply is expected.
+     */
+    private volatile boolean discarding;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void expect(ReplyShape shape) {
+        expected.add(shape);
+        discarding = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decode(ByteBuffer in, FrameHandler handler) {
+        byte[] bytes = in.array();
+        int offset = in.arrayOffset();
+        int limit = in.limit();
+        if (discarding) {
+            in.position(limit);
+            return;
+        }
+
+        while (in.position() < limit) {
+            int start = in.position();
+            ReplyShape shape = expected.peek();
+            boolean solicited = shape != null;
+            if (!solicited) {
+                shape = ReplyShape.UNSOLICITED;
+            }
+
+            int end;
+            if (shape.isFixed()) {
+                end = start + shape.getLength();
+                if (end > limit) {
+                    return;
+                }
+            } else {
+                if (searched == 0 && shape.isLine()) {
+                    // the LF of a CR LF split over two reads, or an empty line
+                    while (start < limit && isLineBreak(bytes[offset + start])) {
+                        start++;
+                    }
+                    in.position(start);
+                    if (start == limit) {
+                        return;
+                    }
+                }
+                int from = offset + start + searched;
+                int found = shape.indexAfterTerminator(bytes, from, offset + limit);
+                if (found < 0) {
+                    // the terminator may start in the last bytes
+                    searched = Math.max(0, limit - start - shape.getTerminator().length + 1);
+                    return;
+                }
+                end = found - offset;
+                searched = 0;
+            }
+
+            if (solicited) {
+                expected.poll();
+            }
+            in.position(end);
+            if (solicited || !isLineBreak(bytes, offset + start, offset + end)) {
+                ByteBuffer frame = in.duplicate();
+                frame.position(start);
+                frame.limit(end);
+                handler.frame(shape, frame.slice().asReadOnlyBuffer());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        expected.clear();
+        searched = 0;
+        discarding = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void replyLost(ReplyShape shape) {
+        if (expected.peek() == shape) {
+            searched = 0;
+        }
+        expected.remove(shape);
+        discarding = expected.isEmpty();
+    }
+
+    /**
+     * @return the number of replies still expected
+     */
+    public int getExpectedCount() {
+        return expected.size();
+    }
+
+    private static boolean isLineBreak(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isLineBreak(bytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLineBreak(byte b) {
+        return b == '\r' || b == '\n';
+    }
+}
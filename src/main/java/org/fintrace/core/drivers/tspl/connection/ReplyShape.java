@@ -0,0 +1,193 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import java.util.Arrays;
+
+/**
+ * How a printer reply is framed: either a fixed number of bytes or the bytes up to and
+ * including a terminator.
+ * <p>
+ * The immediate status commands answer with fixed size replies without any
+ * terminator, e.g. the single status byte of &lt;ESC&gt;!?. Text replies, e.g. of the
+ * ~!I or ~!T queries, end with a line break: CR, LF or CR LF. The LF following a CR
+ * is part of the line when it is received together with the CR. Multi-line replies
+ * can be framed with
+ * {@link #delimited(String, byte...)} and a terminator marking their end.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public final class ReplyShape {
+    private static final byte ESC = 27;
+    private static final byte[] LINE_BREAK = {'\r', '\n'};
+
+    /**
+     * single status byte, the reply of &lt;ESC&gt;!?.
+     */
+    public static final ReplyShape STATUS = fixed("STATUS", 1);
+
+    /**
+     * &lt;STX&gt;[4-byte status]&lt;ETX&gt;&lt;CR&gt;&lt;LF&gt;, the reply of &lt;ESC&gt;!S.
+     */
+    public static final ReplyShape STATUS_LONG = fixed("STATUS_LONG", 8);
+
+    /**
+     * text up to and including a line break, the reply of the ~! queries.
+     */
+    public static final ReplyShape LINE = new ReplyShape("LINE", 0, LINE_BREAK, true);
+
+    /**
+     * messages received while no reply is expected, framed as lines.
+     */
+    public static final ReplyShape UNSOLICITED =
+            new ReplyShape("UNSOLICITED", 0, LINE_BREAK, true);
+
+    private final String name;
+    private final int length;
+    private final byte[] terminator;
+    private final boolean line;
+
+    private ReplyShape(String name, int length, byte[] terminator, boolean line) {
+        this.name = name;
+        this.length = length;
+        this.terminator = terminator;
+        this.line = line;
+    }
+
+    /**
+     * @param name   name of the shape
+     * @param length size of the replies in bytes
+     * @return shape of replies with a fixed size
+     */
+    public static ReplyShape fixed(String name, int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("length must be positive");
+        }
+        return new ReplyShape(name, length, null, false);
+    }
+
+    /**
+     * @param name       name of the shape
+     * @param terminator bytes ending the replies, part of the frame
+     * @return shape of replies ending with the terminator
+     */
+    public static ReplyShape delimited(String name, byte... terminator) {
+        if (terminator.length == 0) {
+            throw new IllegalArgumentException("terminator is required");
+        }
+        return new ReplyShape(name, 0, terminator.clone(), false);
+    }
+
+    /**
+     * Detects the reply expected for a message sent to the printer.
+     *
+     * @param message encoded message
+     * @param length  size of the message
+     * @return the shape of the reply, <code>null</code> if the message is not a query
+     */
+    public static ReplyShape of(byte[] message, int length) {
+        if (length < 3 || message[1] != '!') {
+            return null;
+        }
+        if (message[0] == ESC) {
+            if (message[2] == '?') {
+                return STATUS;
+            } else if (message[2] == 'S') {
+                return STATUS_LONG;
+            }
+        } else if (message[0] == '~') {
+            return LINE;
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return <code>true</code> for fixed size replies
+     */
+    public boolean isFixed() {
+        return terminator == null;
+    }
+
+    /**
+     * @return the size of fixed size replies, <code>0</code> otherwise
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return <code>true</code> for text lines ending with a line break
+     */
+    boolean isLine() {
+        return line;
+    }
+
+    /**
+     * @return the terminator of delimited replies, <code>null</code> otherwise. Lines
+     * end with CR LF, or with either of them alone.
+     */
+    public byte[] getTerminator() {
+        return terminator == null ? null : terminator.clone();
+    }
+
+    /**
+     * finds the end of a delimited frame.
+     *
+     * @param bytes array to search
+     * @param from  first index to search
+     * @param to    index after the last byte to search
+     * @return the index after the terminator, <code>-1</code> if not found
+     */
+    int indexAfterTerminator(byte[] bytes, int from, int to) {
+        if (line) {
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == '\n') {
+                    return i + 1;
+                } else if (bytes[i] == '\r') {
+                    return i + 1 < to && bytes[i + 1] == '\n' ? i + 2 : i + 1;
+                }
+            }
+            return -1;
+        }
+        byte first = terminator[0];
+        int last = to - terminator.length;
+        for (int i = from; i <= last; i++) {
+            if (bytes[i] == first && matches(bytes, i)) {
+                return i + terminator.length;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(byte[] bytes, int at) {
+        for (int j = 1; j < terminator.length; j++) {
+            if (bytes[at + j] != terminator[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return isFixed() ? name + "[" + length + "]" : name + Arrays.toString(terminator);
+    }
+}
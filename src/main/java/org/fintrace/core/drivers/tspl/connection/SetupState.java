@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import org.fintrace.core.drivers.tspl.commands.FrozenCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.device.DeviceConfigCommand;
+import org.fintrace.core.drivers.tspl.commands.device.TSPLDeviceConfigurationCommands;
+import org.fintrace.core.drivers.tspl.commands.status.TSPLStatusPollCommands;
+import org.fintrace.core.drivers.tspl.commands.system.Density;
+import org.fintrace.core.drivers.tspl.commands.system.Direction;
+import org.fintrace.core.drivers.tspl.commands.system.Gap;
+import org.fintrace.core.drivers.tspl.commands.system.Size;
+import org.fintrace.core.drivers.tspl.commands.system.Speed;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.fintrace.core.drivers.tspl.DriverConstants.EMPTY_SPACE;
+
+/**
+ * Setup commands (SIZE, GAP, SPEED, DENSITY, DIRECTION and SET ...) last applied
+ * on a printer session. The printer keeps these settings until they are changed,
+ * so a setup command identical to the last applied one can be left out.
+ * <p>
+ * Not thread safe, guarded by the connection client.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+final class SetupState {
+    private static final String RESET_COMMAND;
+
+    static {
+        String reset = TSPLStatusPollCommands.RESET.getCommand();
+        RESET_COMMAND = reset.substring(0, reset.length() - 1);
+    }
+
+    private final Map<Object, byte[]> applied = new HashMap<>();
+
+    /**
+     * @param command command to check
+     * @return the setting changed by the command or <code>null</code> if it is not a
+     * setup command
+     */
+    static Object settingOf(TSPLCommand command) {
+        if (command instanceof TSPLDeviceConfigurationCommands) {
+            return ((TSPLDeviceConfigurationCommands) command).getConfigCommand();
+        }
+
+        Class<?> type = command.getClass();
+        if (command instanceof FrozenCommand) {
+            type = ((FrozenCommand) command).getCommandType();
+            if (type == TSPLDeviceConfigurationCommands.class) {
+                // SET <setting> <value>
+                return DeviceConfigCommand.valueOf(command.getCommand().split(EMPTY_SPACE)[1]);
+            }
+        }
+
+        if (type == Size.class || type == Gap.class || type == Speed.class
+                || type == Density.class || type == Direction.class) {
+            return type;
+        }
+        return null;
+    }
+
+    /**
+     * @param command command to check
+     * @return <code>true</code> if the command resets the printer
+     */
+    static boolean isReset(TSPLCommand command) {
+        return command == TSPLStatusPollCommands.RESET;
+    }
+
+    /**
+     * @param message raw message
+     * @return <code>true</code> if the message contains a printer reset
+     */
+    static boolean containsReset(String message) {
+        return message.contains(RESET_COMMAND);
+    }
+
+    /**
+     * records the encoded setup command as applied.
+     *
+     * @param setting setting changed by the command
+     * @param bytes   array holding the encoded command
+     * @param from    start of the command in the array
+     * @param to      end (exclusive) of the command in the array
+     * @return <code>false</code> if the same command is already applied and can be
+     * left out
+     */
+    boolean apply(Object setting, byte[] bytes, int from, int to) {
+        byte[] last = applied.get(setting);
+        if (last != null && last.length == to - from) {
+            boolean same = true;
+            for (int i = 0; i < last.length && same; i++) {
+                same = last[i] == bytes[from + i];
+            }
+            if (same) {
+                return false;
+            }
+        }
+
+        applied.put(setting, Arrays.copyOfRange(bytes, from, to));
+        return true;
+    }
+
+    /**
+     * forgets all the applied settings, e.g. after a reconnect or a printer reset.
+     */
+    void reset() {
+        applied.clear();
+    }
+}
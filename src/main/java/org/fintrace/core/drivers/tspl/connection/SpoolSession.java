@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Keeps track of the frames of a {@link PrintSpool} sent by a client, until they are
+ * committed.
+ * <p>
+ * Each frame above the committed offset is either being sent, written or failed.
+ * Frames are acknowledged one by one, and the spool is committed up to the end of the
+ * written frames in front of the first frame not written yet, so that a failed frame
+ * holds the commit back without the frames written after it being sent again. Only the
+ * failed frames, and after a restart the frames left in the spool, are replayed.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+final class SpoolSession {
+
+    private static final byte SENDING = 0;
+    private static final byte WRITTEN = 1;
+    private static final byte FAILED = 2;
+
+    private final PrintSpool spool;
+
+    /**
+     * state of the frames above the committed offset, by the offset to commit once the
+     * frame is written.
+     */
+    private final TreeMap<Long, Byte> frames = new TreeMap<>();
+
+    /**
+     * some frames failed and were not replayed yet.
+     */
+    private boolean pending;
+    private long failures;
+
+    /**
+     * serializes the replays, taken before the session lock of the client.
+     */
+    private final Object replayLock = new Object();
+
+    /**
+     * @param spool spool of the client, its frames left above the committed offset are
+     *              replayed
+     */
+    SpoolSession(PrintSpool spool) {
+        this.spool = spool;
+        if (spool.hasPending()) {
+            spool.replay((frame, offset) -> frames.put(offset, FAILED));
+            pending = true;
+        }
+    }
+
+    PrintSpool getSpool() {
+        return spool;
+    }
+
+    /**
+     * appends a message to the spool and writes it, guarded by the session lock of the
+     * client.
+     *
+     * @param buffer    the encoded message
+     * @param transport writes the message
+     * @return future completed once the message is written
+     */
+    CompletableFuture<Void> transmit(
+            TSPLCommandBuffer buffer,
+            Function<TSPLCommandBuffer, CompletableFuture<Void>> transport) {
+        long offset = spool.append(buffer.array(), 0, buffer.size());
+        synchronized (this) {
+            frames.put(offset, SENDING);
+        }
+        return transmit(buffer, offset, transport);
+    }
+
+    /**
+     * writes a frame of the spool, acknowledged once written, guarded by the session
+     * lock of the client.
+     *
+     * @param buffer    the frame
+     * @param offset    offset to commit once the frame is written
+     * @param transport writes the frame
+     * @return future completed once the frame is written
+     */
+    CompletableFuture<Void> transmit(
+            TSPLCommandBuffer buffer, long offset,
+            Function<TSPLCommandBuffer, CompletableFuture<Void>> transport) {
+        CompletableFuture<Void> sent;
+        try {
+            sent = transport.apply(buffer);
+        } catch (RuntimeException e) {
+            failed(offset);
+            throw e;
+        }
+        sent.whenComplete((v, e) -> {
+            if (e == null) {
+                written(offset);
+            } else {
+                failed(offset);
+            }
+        });
+        return sent;
+    }
+
+    /**
+     * the frame was written, the spool is committed up to the first frame not written.
+     */
+    private void written(long offset) {
+        long commit = -1;
+        synchronized (this) {
+            if (frames.replace(offset, WRITTEN) == null) {
+                return;
+            }
+            Map.Entry<Long, Byte> first;
+            while ((first = frames.firstEntry()) != null && first.getValue() == WRITTEN) {
+                commit = frames.pollFirstEntry().getKey();
+            }
+        }
+        if (commit >= 0) {
+            spool.commit(commit);
+        }
+    }
+
+    /**
+     * the frame was not sent, it is replayed by the next replay.
+     */
+    synchronized void failed(long offset) {
+        if (frames.replace(offset, FAILED) != null) {
+            pending = true;
+            failures++;
+        }
+    }
+
+    synchronized boolean isPending() {
+        return pending;
+    }
+
+    /**
+     * Passes the failed frames to the sender one by one, oldest first, each marked as
+     * being sent again. Concurrent replays wait for each other. Frames which are being
+     * sent or written are skipped, even when a frame before them failed.
+     *
+     * @param sender sends a frame, only valid during the call, with its offset; an
+     *               exception ends the replay
+     * @return the number of frames replayed
+     */
+    int replay(ObjLongConsumer<ByteBuffer> sender) {
+        synchronized (replayLock) {
+            long failuresBefore;
+            synchronized (this) {
+                if (!pending) {
+                    return 0;
+                }
+                failuresBefore = failures;
+            }
+
+            int[] replayed = {0};
+            spool.replay((frame, offset) -> {
+                if (claim(offset)) {
+                    sender.accept(frame, offset);
+                    replayed[0]++;
+                }
+            });
+            synchronized (this) {
+                // frames failing meanwhile are replayed by the next replay
+                if (failures == failuresBefore) {
+                    pending = false;
+                }
+            }
+            return replayed[0];
+        }
+    }
+
+    /**
+     * marks a failed frame as being sent again.
+     */
+    private synchronized boolean claim(long offset) {
+        Byte state = frames.get(offset);
+        if (state == null || state != FAILED) {
+            return false;
+        }
+        frames.put(offset, SENDING);
+        return true;
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.fintrace.core.drivers.tspl.commands.status.PrinterStatus;
+import org.fintrace.core.drivers.tspl.commands.status.TSPLStatusPollCommands;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Polls the status of any number of printers from one thread. The last status of
+ * each printer is kept by its client, see {@link TSPLConnectionClient#getLastStatus()}.
+ * <p>
+ * The interval adapts per printer: it is the fast interval while labels are being
+ * sent, while the printer reports any condition (printing, paused, an error), and
+ * after a failed poll. Once the printer is ready and idle the interval doubles with
+ * every poll up to the slow interval. Disconnected printers are polled at the slow
+ * interval. An idle printer notices labels sent to it with its next poll.
+ * </p>
+ * <p>
+ * The polls are kept in a timer wheel which is advanced every tick, so a tick only
+ * touches the polls that are due. The poller thread does not send them itself, a
+ * client busy sending would hold it up: the due polls are handed to the event loop
+ * of their clients in one task per loop, so each loop wakes up once for them. Clients
+ * not served by an event loop, e.g. USB printers, are polled from a pool of sender
+ * threads.
+ * </p>
+ * <pre>
+ * StatusPoller poller = new StatusPoller();
+ * poller.add(printer);
+ * ...
+ * if (printer.isReady(2, TimeUnit.SECONDS)) { ... }
+ * </pre>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+@Slf4j
+public class StatusPoller {
+    public static final long DEFAULT_TICK_MILLIS = 50;
+    public static final long DEFAULT_FAST_INTERVAL_MILLIS = 500;
+    public static final long DEFAULT_SLOW_INTERVAL_MILLIS = 10_000;
+    public static final long DEFAULT_POLL_TIMEOUT_MILLIS = 2_000;
+
+    private static final int WHEEL_SIZE = 512;
+
+    private final long tickNanos;
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * sends the polls of the clients which are not served by an event loop.
+     */
+    private final ExecutorService senders;
+    private final Map<TSPLConnectionClient, Poll> polls = new ConcurrentHashMap<>();
+
+    /**
+     * polls added, and polls answered, waiting to be put into the wheel by the
+     * poller thread.
+     */
+    private final Queue<Poll> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Poll> answered = new ConcurrentLinkedQueue<>();
+
+    /**
+     * slots of the polls by their due tick, only accessed by the poller thread.
+     */
+    private final List<List<Poll>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private long currentTick;
+
+    private final LongAdder pollCount = new LongAdder();
+    private volatile long fastIntervalNanos =
+            TimeUnit.MILLISECONDS.toNanos(DEFAULT_FAST_INTERVAL_MILLIS);
+    private volatile long slowIntervalNanos =
+            TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_INTERVAL_MILLIS);
+    private volatile long pollTimeoutNanos =
+            TimeUnit.MILLISECONDS.toNanos(DEFAULT_POLL_TIMEOUT_MILLIS);
+    private volatile TSPLStatusPollCommands statusCommand = TSPLStatusPollCommands.STATUS;
+
+    /**
+     * Creates a poller ticking every {@link #DEFAULT_TICK_MILLIS} milliseconds.
+     */
+    public StatusPoller() {
+        this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param tick resolution of the poll intervals
+     * @param unit unit of the tick
+     */
+    public StatusPoller(long tick, TimeUnit unit) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException("tick must be positive");
+        }
+        this.tickNanos = unit.toNanos(tick);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+        }
+
+        timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "tspl-status-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        senders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "tspl-status-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts polling the printer, the first poll is sent with the next tick. Adding a
+     * client twice has no effect.
+     *
+     * @param client client of the printer
+     */
+    public void add(TSPLConnectionClient client) {
+        Poll poll = new Poll(client);
+        poll.intervalNanos = fastIntervalNanos;
+        if (polls.putIfAbsent(client, poll) == null) {
+            added.add(poll);
+        }
+    }
+
+    /**
+     * Stops polling the printer.
+     *
+     * @param client client of the printer
+     */
+    public void remove(TSPLConnectionClient client) {
+        Poll poll = polls.remove(client);
+        if (poll != null) {
+            poll.removed = true;
+        }
+    }
+
+    /**
+     * Sets the bounds of the poll interval.
+     *
+     * @param fast interval while the printer is busy or failing
+     * @param slow interval while the printer is idle or disconnected
+     * @param unit unit of the intervals
+     */
+    public void setIntervals(long fast, long slow, TimeUnit unit) {
+        if (fast <= 0 || slow < fast) {
+            throw new IllegalArgumentException("intervals must be positive, fast not above slow");
+        }
+        this.fastIntervalNanos = unit.toNanos(fast);
+        this.slowIntervalNanos = unit.toNanos(slow);
+    }
+
+    /**
+     * @param timeout time to wait for a status reply before the poll counts as failed
+     * @param unit    unit of the timeout
+     */
+    public void setPollTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("poll timeout must be positive");
+        }
+        this.pollTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * @param statusCommand {@link TSPLStatusPollCommands#STATUS} (default) or
+     *                      {@link TSPLStatusPollCommands#STATUS_LONG}
+     */
+    public void setStatusCommand(TSPLStatusPollCommands statusCommand) {
+        if (statusCommand != TSPLStatusPollCommands.STATUS
+                && statusCommand != TSPLStatusPollCommands.STATUS_LONG) {
+            throw new IllegalArgumentException(statusCommand + " is not a status query");
+        }
+        this.statusCommand = statusCommand;
+    }
+
+    /**
+     * @param client client of the printer
+     * @param unit   unit of the interval
+     * @return the current poll interval of the printer, <code>-1</code> if it is not
+     * polled
+     */
+    public long getInterval(TSPLConnectionClient client, TimeUnit unit) {
+        Poll poll = polls.get(client);
+        return poll == null ? -1 : unit.convert(poll.intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return number of polled printers
+     */
+    public int getClientCount() {
+        return polls.size();
+    }
+
+    /**
+     * @return number of status polls sent
+     */
+    public long getPollCount() {
+        return pollCount.sum();
+    }
+
+    /**
+     * Stops polling. The clients are not disconnected.
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+        senders.shutdownNow();
+        polls.clear();
+    }
+
+    /**
+     * advances the wheel by one tick, runs on the poller thread.
+     */
+    private void tick() {
+        try {
+            long tick = currentTick++;
+            Poll poll;
+            while ((poll = added.poll()) != null) {
+                schedule(poll, tick);
+            }
+            while ((poll = answered.poll()) != null) {
+                poll.intervalNanos = nextInterval(poll);
+                schedule(poll, tick + Math.max(1, poll.intervalNanos / tickNanos));
+            }
+
+            List<Poll> slot = wheel.get((int) (tick % WHEEL_SIZE));
+            Map<EventLoop, List<Poll>> due = null;
+            for (int i = slot.size() - 1; i >= 0; i--) {
+                poll = slot.get(i);
+                if (poll.removed || poll.dueTick <= tick) {
+                    // swap remove, the order within the slot does not matter
+                    slot.set(i, slot.get(slot.size() - 1));
+                    slot.remove(slot.size() - 1);
+                    if (!poll.removed) {
+                        if (due == null) {
+                            due = new LinkedHashMap<>();
+                        }
+                        due.computeIfAbsent(eventLoopOf(poll.client), l -> new ArrayList<>())
+                                .add(poll);
+                    }
+                }
+            }
+
+            if (due != null) {
+                due.forEach(this::dispatch);
+            }
+        } catch (RuntimeException e) {
+            // an exception would cancel the timer
+            log.error("Status poll tick failed", e);
+        }
+    }
+
+    private void schedule(Poll poll, long dueTick) {
+        if (!poll.removed) {
+            poll.dueTick = dueTick;
+            wheel.get((int) (dueTick % WHEEL_SIZE)).add(poll);
+        }
+    }
+
+    /**
+     * hands the polls of a tick to the event loop of their clients, in one task. Polls
+     * of clients without a loop are sent by the sender pool, one task each.
+     */
+    private void dispatch(EventLoop loop, List<Poll> group) {
+        if (loop == null) {
+            for (Poll poll : group) {
+                try {
+                    senders.execute(() -> send(poll));
+                } catch (RejectedExecutionException e) {
+                    // the poller was shut down
+                    answered(poll, null);
+                }
+            }
+            return;
+        }
+        try {
+            loop.execute(() -> group.forEach(this::send));
+        } catch (RuntimeException e) {
+            // the loop was shut down
+            group.forEach(poll -> answered(poll, null));
+        }
+    }
+
+    private static EventLoop eventLoopOf(TSPLConnectionClient client) {
+        return client instanceof AbstractConnectionClient
+                ? ((AbstractConnectionClient) client).eventLoop() : null;
+    }
+
+    private void send(Poll poll) {
+        pollCount.increment();
+        try {
+            poll.client.query(statusCommand, pollTimeoutNanos, TimeUnit.NANOSECONDS)
+                    .whenComplete((status, e) -> answered(poll, status));
+        } catch (RuntimeException e) {
+            // not connected
+            answered(poll, null);
+        }
+    }
+
+    private void answered(Poll poll, PrinterStatus status) {
+        poll.status = status;
+        answered.add(poll);
+    }
+
+    /**
+     * the interval after the poll was answered or failed.
+     */
+    private long nextInterval(Poll poll) {
+        long fast = fastIntervalNanos;
+        long slow = slowIntervalNanos;
+        PrinterStatus status = poll.status;
+        long sentMessages = sentMessagesOf(poll.client);
+        boolean sending = sentMessages != poll.sentMessages;
+        poll.sentMessages = sentMessages;
+        if (!poll.client.isConnected()) {
+            return slow;
+        } else if (status == null || !status.isReady() || sending) {
+            return fast;
+        }
+        return Math.min(Math.max(poll.intervalNanos * 2, fast), slow);
+    }
+
+    private static long sentMessagesOf(TSPLConnectionClient client) {
+        return client instanceof AbstractConnectionClient
+                ? ((AbstractConnectionClient) client).getSentMessageCount() : 0;
+    }
+
+    /**
+     * polling state of a printer.
+     */
+    private static final class Poll {
+        private final TSPLConnectionClient client;
+        private volatile boolean removed;
+        private volatile long intervalNanos;
+        private volatile PrinterStatus status;
+
+        /**
+         * only accessed by the poller thread.
+         */
+        private long dueTick;
+        private long sentMessages;
+
+        private Poll(TSPLConnectionClient client) {
+            this.client = client;
+        }
+    }
+}
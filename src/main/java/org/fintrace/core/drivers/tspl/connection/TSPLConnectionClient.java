@@ -16,16 +16,29 @@
 package org.fintrace.core.drivers.tspl.connection;
 
 
+import org.fintrace.core.drivers.tspl.commands.TSPLCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.commands.status.PrinterStatus;
+import org.fintrace.core.drivers.tspl.commands.status.TSPLStatusPollCommands;
+import org.fintrace.core.drivers.tspl.listeners.ByteDataListener;
 import org.fintrace.core.drivers.tspl.listeners.ClientListener;
 import org.fintrace.core.drivers.tspl.listeners.DataListener;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * This interface define the Connection level contract with the
  * TSPL system. Implementation can be done
  * with TCP/IP Socket, USB or other mechanism.
+ * <p>
+ * Clients may be used from any number of threads at once. Every message and label is
+ * handed to the printer as a whole, never interleaved with the bytes of another send.
+ * </p>
  *
  * @author Venkaiah Chowdary Koneru
  */
@@ -89,6 +102,160 @@ public interface TSPLConnectionClient {
      */
     void send(TSPLLabel label);
 
+    /**
+     * Instruct the client to send the already encoded TSPL2 code in the given buffer.
+     * The content is written as it is, without any copy or charset conversion. The
+     * buffer may be cleared and re-used once this method returns.
+     * <p>
+     * The default implementation decodes the buffer and sends it as a String.
+     * </p>
+     *
+     * @param buffer buffer holding the encoded commands
+     */
+    default void send(TSPLCommandBuffer buffer) {
+        send(buffer.toString());
+    }
+
+    /**
+     * Same as {@link #send(TSPLLabel)}, returning a future which completes once the
+     * label is handed over to the transport (e.g. written into the socket send buffer)
+     * or completes exceptionally when it could not be sent.
+     * <p>
+     * The default implementation sends the label with {@link #send(TSPLLabel)} and
+     * returns a completed future.
+     * </p>
+     *
+     * @param label tsc label with required elements
+     * @return completion of the submission
+     */
+    default CompletableFuture<Void> sendAsync(TSPLLabel label) {
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        try {
+            send(label);
+            sent.complete(null);
+        } catch (RuntimeException e) {
+            sent.completeExceptionally(e);
+        }
+        return sent;
+    }
+
+    /**
+     * Same as {@link #send(TSPLCommandBuffer)}, returning a future which completes once
+     * the commands are handed over to the transport or completes exceptionally when
+     * they could not be sent. The buffer may be re-used as soon as this method returns.
+     * <p>
+     * The default implementation sends the buffer with {@link #send(TSPLCommandBuffer)}
+     * and returns a completed future.
+     * </p>
+     *
+     * @param buffer buffer holding the encoded commands
+     * @return completion of the submission
+     */
+    default CompletableFuture<Void> sendAsync(TSPLCommandBuffer buffer) {
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        try {
+            send(buffer);
+            sent.complete(null);
+        } catch (RuntimeException e) {
+            sent.completeExceptionally(e);
+        }
+        return sent;
+    }
+
+    /**
+     * Polls the printer status. Queries do not wait for each other, any number of them
+     * may be outstanding; replies are matched with the queries in send order. No thread
+     * is blocked while waiting for the reply.
+     * <p>
+     * The future is completed by the thread reading the reply, use the async variants
+     * of <code>CompletableFuture</code> for slow follow-up work.
+     * </p>
+     * <p>
+     * When a query times out or fails to be sent, its reply is taken for lost: the next
+     * reply of the same shape goes to the next query, the queries waiting for replies of
+     * other shapes are not affected. Bytes received while no reply is expected are
+     * dropped.
+     * </p>
+     *
+     * @param command {@link TSPLStatusPollCommands#STATUS} or
+     *                {@link TSPLStatusPollCommands#STATUS_LONG}
+     * @param timeout time to wait for the reply, <code>0</code> to wait without limit
+     * @param unit    unit of the timeout
+     * @return the status, or a {@link java.util.concurrent.TimeoutException} if the printer
+     * did not reply in time
+     */
+    default CompletableFuture<PrinterStatus> query(TSPLStatusPollCommands command,
+                                                   long timeout, TimeUnit unit) {
+        if (command != TSPLStatusPollCommands.STATUS
+                && command != TSPLStatusPollCommands.STATUS_LONG) {
+            throw new IllegalArgumentException(command + " is not a status query");
+        }
+        ReplyShape shape = command == TSPLStatusPollCommands.STATUS
+                ? ReplyShape.STATUS : ReplyShape.STATUS_LONG;
+        return query(command, shape, PrinterStatus::parse, timeout, unit);
+    }
+
+    /**
+     * Sends a query command and parses its reply, see
+     * {@link #query(TSPLStatusPollCommands, long, TimeUnit)}. The default implementation
+     * does not support queries and fails with an
+     * <code>UnsupportedOperationException</code>.
+     *
+     * @param command command answered by the printer, sent on its own
+     * @param shape   shape of the reply
+     * @param parser  parses the reply bytes, called by the reading thread
+     * @param timeout time to wait for the reply, <code>0</code> to wait without limit
+     * @param unit    unit of the timeout
+     * @param <T>     type of the parsed reply
+     * @return the parsed reply
+     */
+    default <T> CompletableFuture<T> query(TSPLCommand command, ReplyShape shape,
+                                           Function<ByteBuffer, T> parser, long timeout,
+                                           TimeUnit unit) {
+        CompletableFuture<T> reply = new CompletableFuture<>();
+        reply.completeExceptionally(new UnsupportedOperationException(
+                getClass().getName() + " does not support queries"));
+        return reply;
+    }
+
+    /**
+     * Returns the last status reported by the printer, decoded from the reply of any
+     * status poll sent on this connection. Reading it does not touch the network.
+     *
+     * @return the last known status, <code>null</code> if no status was received since
+     * the connection was established, and always <code>null</code> for clients which
+     * do not keep it
+     */
+    default PrinterStatus getLastStatus() {
+        return null;
+    }
+
+    /**
+     * Checks the last known status without a round trip to the printer.
+     *
+     * @param maxAge oldest status to rely on
+     * @param unit   unit of the age
+     * @return <code>true</code> if a status not older than <code>maxAge</code> reported
+     * the printer ready
+     */
+    default boolean isReady(long maxAge, TimeUnit unit) {
+        PrinterStatus status = getLastStatus();
+        return status != null && status.isReady()
+                && System.nanoTime() - status.getReceivedNanos() <= unit.toNanos(maxAge);
+    }
+
+    /**
+     * Tells whether flow control holds back labels and messages because the printer
+     * reported a blocking status, see {@link PrinterStatus#isBlocking()}. Status polls
+     * and other immediate commands are always sent.
+     *
+     * @return <code>true</code> while sending is suspended, always <code>false</code> for
+     * clients without flow control
+     */
+    default boolean isSuspended() {
+        return false;
+    }
+
     /**
      * Add a ClientListener to this client. This method will not check for
      * duplicated listener. So please be careful not to add the listener twice,
@@ -117,6 +284,25 @@ public interface TSPLConnectionClient {
      */
     void removeDataListener(DataListener listener);
 
+    /**
+     * Add a ByteDataListener to this client, notified with read-only views of the
+     * exchanged bytes instead of decoded Strings. This method will not check for
+     * duplicated listener. The default implementation does not support them.
+     *
+     * @throws UnsupportedOperationException if the client does not support them
+     */
+    default void addByteDataListener(ByteDataListener listener) {
+        throw new UnsupportedOperationException(
+                getClass().getName() + " does not support byte data listeners");
+    }
+
+    /**
+     * Remove the previously added ByteDataListener.
+     * If the specified listener doesn't exist, the method will not do anything.
+     */
+    default void removeByteDataListener(ByteDataListener listener) {
+    }
+
     /** Sets the charset for transmitting Strings as bytes.
      * Does not add the corresponding CODEPAGE command. */
     void setCharset(Charset charset);
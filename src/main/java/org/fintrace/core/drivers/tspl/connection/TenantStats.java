@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the jobs of one tenant of a {@link PrintScheduler}. The wait of a job is
+ * the time from its submission until its first label is sent.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+@Builder
+@Data
+public class TenantStats {
+    private final String tenant;
+    private final int weight;
+    private final int queuedJobs;
+    private final int queuedLabels;
+    private final long sentLabels;
+    private final long startedJobs;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+
+    /**
+     * @param unit unit of the result
+     * @return the average wait of the started jobs
+     */
+    public long getAverageWait(TimeUnit unit) {
+        if (startedJobs == 0) {
+            return 0;
+        }
+        return unit.convert(totalWaitNanos / startedJobs, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit unit of the result
+     * @return the longest wait of a started job
+     */
+    public long getMaxWait(TimeUnit unit) {
+        return unit.convert(maxWaitNanos, TimeUnit.NANOSECONDS);
+    }
+}
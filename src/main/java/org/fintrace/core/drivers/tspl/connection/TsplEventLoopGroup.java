@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.connection;
+
+import org.fintrace.core.drivers.tspl.exceptions.PrinterException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of selector threads shared by any number of
+ * {@link EthernetConnectionClient}s, e.g. one or two threads for hundreds of printers.
+ * <p>
+ * Each client is pinned to one loop of the group when it is created, so all the I/O of
+ * a printer happens on the same thread and in order. The loop threads are started
+ * with the first connection. The listener notifications of the clients run on a
+ * thread pool shared by the group.
+ * </p>
+ * <pre>
+ * TsplEventLoopGroup group = new TsplEventLoopGroup(2);
+ * TSPLConnectionClient printer = new EthernetConnectionClient("10.0.0.15", 9100, group);
+ * ...
+ * group.shutdown();
+ * </pre>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public class TsplEventLoopGroup {
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final AtomicInteger runningLoops;
+    private final ExecutorService listenerExecutorService = Executors.newCachedThreadPool();
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param nThreads number of selector threads
+     */
+    public TsplEventLoopGroup(int nThreads) {
+        if (nThreads <= 0) {
+            throw new IllegalArgumentException("nThreads must be positive");
+        }
+
+        loops = new EventLoop[nThreads];
+        runningLoops = new AtomicInteger(nThreads);
+        for (int i = 0; i < nThreads; i++) {
+            loops[i] = new EventLoop("tspl-event-loop-" + i, this::loopStopped);
+        }
+    }
+
+    /**
+     * @return the loop for the next client, round robin
+     */
+    EventLoop next() {
+        if (shutdown) {
+            throw new PrinterException("Event loop group is shut down");
+        }
+        return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+    }
+
+    /**
+     * @return the thread pool running the listener notifications of the clients
+     */
+    public ExecutorService getListenerExecutorService() {
+        return listenerExecutorService;
+    }
+
+    public int getThreadCount() {
+        return loops.length;
+    }
+
+    /**
+     * Closes the connections of all the clients and stops the threads.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    private void loopStopped() {
+        if (runningLoops.decrementAndGet() == 0) {
+            // after the loops, which notify the clients about the closed connections
+            listenerExecutorService.shutdown();
+        }
+    }
+}
@@ -16,13 +16,20 @@
 package org.fintrace.core.drivers.tspl.connection;
 
 import lombok.extern.slf4j.Slf4j;
-import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.exceptions.ConnectionClientException;
 import org.fintrace.core.drivers.tspl.exceptions.PrinterException;
+import org.fintrace.core.drivers.tspl.listeners.MessageView;
 
 import javax.usb.*;
 import javax.usb.event.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
 
@@ -44,6 +51,19 @@ public class USBConnectionClient extends AbstractConnectionClient implements Usb
     private UsbPipe writePipe;
     private UsbPipe readPipe;
 
+    /**
+     * coalesced messages waiting to be submitted, also the lock for the coalescing state.
+     */
+    private final TSPLCommandBuffer pending = new TSPLCommandBuffer(US_ASCII);
+    private final List<CompletableFuture<Void>> pendingFutures = new ArrayList<>();
+    private ScheduledExecutorService flushScheduler;
+    private boolean flushScheduled;
+
+    /**
+     * bytes received from the printer, also the lock for decoding them.
+     */
+    private final ReadBuffer readBuffer = new ReadBuffer(1024);
+
     /**
      * This works as expected only when one printer is connected.
      *
@@ -97,10 +117,11 @@ public class USBConnectionClient extends AbstractConnectionClient implements Usb
      */
     @Override
     public void connect() {
-        if (isConnected)
+        if (!compareAndSetState(ConnectionState.DISCONNECTED, ConnectionState.CONNECTING))
             return;
 
         if (usbInterface == null) {
+            getAndSetState(ConnectionState.DISCONNECTED);
             throw new PrinterException("Interface has to be claimed before attempting connection");
         }
 
@@ -110,11 +131,12 @@ public class USBConnectionClient extends AbstractConnectionClient implements Usb
         try {
             readPipe.open();
             writePipe.open();
-            isConnected = true;
-
-            notifyConnection();
+            if (compareAndSetState(ConnectionState.CONNECTING, ConnectionState.CONNECTED)) {
+                notifyConnection();
+            }
         } catch (UsbException e) {
             log.error("USBException ", e);
+            getAndSetState(ConnectionState.DISCONNECTED);
         }
     }
 
@@ -123,22 +145,31 @@ public class USBConnectionClient extends AbstractConnectionClient implements Usb
      */
     @Override
     public void disconnect() {
-        if (!isConnected)
+        if (!compareAndSetState(ConnectionState.CONNECTED, ConnectionState.DISCONNECTING))
             return;
 
+        synchronized (pending) {
+            submitPending();
+        }
         try {
             writePipe.close();
             readPipe.close();
-
-            isConnected = false;
-            notifyConnectionLost();
         } catch (UsbException e) {
             log.error("USBException ", e);
         }
+        getAndSetState(ConnectionState.DISCONNECTED);
+        notifyConnectionLost();
     }
 
     @Override
     public void shutdown() {
+        synchronized (pending) {
+            if (flushScheduler != null) {
+                flushScheduler.shutdownNow();
+                flushScheduler = null;
+                flushScheduled = false;
+            }
+        }
         try {
             usbInterface.release();
             usbInterface = null;
@@ -148,37 +179,151 @@ public class USBConnectionClient extends AbstractConnectionClient implements Usb
     }
 
     /**
-     * {@inheritDoc}
+     * @param message
+     * @throws PrinterException if the transfer failed, the data listeners are notified
      */
-    @Override
-    public void send(TSPLLabel label) {
-        send(label.getTsplCode());
+    protected void send(byte[] message) {
+        if (!isConnected()) {
+            throw new PrinterException("Printer is not connected");
+        }
+        if (isWriteCoalescing()) {
+            coalesce(message, message.length);
+            return;
+        }
+
+        try {
+            writePipe.syncSubmit(message);
+        } catch (UsbException e) {
+            log.error("Exception submit", e);
+            notifyMessageSendFailed(new ConnectionClientException("Failed to send message.", e),
+                    new MessageView(ByteBuffer.wrap(message), getCharset()));
+            throw new PrinterException("Failed to send message.", e);
+        }
     }
 
     /**
-     * @param message
+     * Submits the buffer content as a single bulk transfer, without copying it.
+     *
+     * @param buffer buffer holding the encoded commands
+     * @throws PrinterException if the transfer failed, the data listeners are notified
      */
-
-    protected void send(byte[] message) {
-        if (!isConnected) {
+    @Override
+    protected void transmit(TSPLCommandBuffer buffer) {
+        if (!isConnected()) {
             throw new PrinterException("Printer is not connected");
         }
 
         try {
-            writePipe.syncSubmit(message);
+            UsbIrp irp = writePipe.createUsbIrp();
+            irp.setData(buffer.array(), 0, buffer.size());
+            writePipe.syncSubmit(irp);
         } catch (UsbException e) {
             log.error("Exception submit", e);
+            notifyMessageSendFailed(new ConnectionClientException("Failed to send message.", e),
+                    new MessageView(ByteBuffer.wrap(buffer.toByteArray()), buffer.getCharset()));
+            throw new PrinterException("Failed to send message.", e);
         }
     }
 
+    /**
+     * With write coalescing the commands are copied and submitted together with the
+     * messages sent shortly before or after them.
+     *
+     * @param buffer buffer holding the encoded commands
+     * @return future completed once the transfer holding the commands is submitted
+     */
+    @Override
+    protected CompletableFuture<Void> transmitAsync(TSPLCommandBuffer buffer) {
+        if (!isWriteCoalescing()) {
+            return super.transmitAsync(buffer);
+        }
+        if (!isConnected()) {
+            throw new PrinterException("Printer is not connected");
+        }
+        return coalesce(buffer.array(), buffer.size());
+    }
+
+    /**
+     * adds the message to the pending transfer, submitting it once it is large enough
+     * or on an immediate command, otherwise after the coalescing delay.
+     */
+    private CompletableFuture<Void> coalesce(byte[] message, int length) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (pending) {
+            pending.append(message, 0, length);
+            pendingFutures.add(future);
+
+            if (pending.size() >= getCoalescingBytes() || isImmediate(message, length)) {
+                submitPending();
+            } else if (!flushScheduled) {
+                if (flushScheduler == null) {
+                    flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "tspl-usb-flush");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                flushScheduled = true;
+                flushScheduler.schedule(this::flush, getCoalescingDelay(TimeUnit.NANOSECONDS),
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+        return future;
+    }
+
+    private void flush() {
+        synchronized (pending) {
+            flushScheduled = false;
+            submitPending();
+        }
+    }
+
+    /**
+     * submits the pending messages as a single bulk transfer, guarded by the pending lock.
+     */
+    private void submitPending() {
+        if (pendingFutures.isEmpty()) {
+            return;
+        }
+
+        ConnectionClientException failure = null;
+        // the pending messages are still written while disconnecting
+        ConnectionState state = getConnectionState();
+        if (state != ConnectionState.CONNECTED && state != ConnectionState.DISCONNECTING) {
+            failure = new ConnectionClientException("Printer is not connected");
+        } else {
+            try {
+                UsbIrp irp = writePipe.createUsbIrp();
+                irp.setData(pending.array(), 0, pending.size());
+                writePipe.syncSubmit(irp);
+            } catch (UsbException e) {
+                log.error("Exception submit", e);
+                failure = new ConnectionClientException("Failed to send message.", e);
+            }
+        }
+
+        if (failure != null) {
+            resetSession();
+        }
+        for (CompletableFuture<Void> future : pendingFutures) {
+            if (failure == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        }
+        pending.clear();
+        pendingFutures.clear();
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void usbDeviceDetached(UsbDeviceEvent event) {
-        clientListeners.forEach((clientListener) -> listenerExecutorService.execute(() ->
-                clientListener.connectionLost(USBConnectionClient.this)
-        ));
+        if (getAndSetState(ConnectionState.DISCONNECTED) != ConnectionState.DISCONNECTED) {
+            notifyConnectionLost();
+        }
     }
 
     /**
@@ -285,12 +430,28 @@ public class USBConnectionClient extends AbstractConnectionClient implements Usb
 
             @Override
             public void dataEventOccurred(UsbPipeDataEvent event) {
-                notifyMessageReceived(new String(event.getData(), US_ASCII));
+                received(event.getData());
             }
         });
         return localReadPipe;
     }
 
+    /**
+     * hands the complete replies in the received bytes to the frame decoder.
+     */
+    private void received(byte[] data) {
+        synchronized (readBuffer) {
+            try {
+                readBuffer.writable(data.length).put(data);
+                readBuffer.decode(getFrameDecoder(), frameHandler);
+            } catch (PrinterException e) {
+                log.error("Dropping the received bytes", e);
+                readBuffer.clear();
+                getFrameDecoder().reset();
+            }
+        }
+    }
+
     /**
      * gets the IN type USBPipe
      *
@@ -307,7 +468,10 @@ public class USBConnectionClient extends AbstractConnectionClient implements Usb
 
             @Override
             public void dataEventOccurred(UsbPipeDataEvent event) {
-                notifyMessageSent(new String(event.getData(), US_ASCII));
+                if (hasDataListeners()) {
+                    notifyMessageSent(new MessageView(ByteBuffer.wrap(event.getData()),
+                            getCharset()));
+                }
             }
         });
         return localWritePipe;
@@ -38,4 +38,13 @@ public class PrinterException extends RuntimeException {
         super(message);
         this.message = message;
     }
+
+    /**
+     * @param message
+     * @param cause
+     */
+    public PrinterException(String message, Throwable cause) {
+        super(message, cause);
+        this.message = message;
+    }
 }
@@ -15,6 +15,7 @@
  */
 package org.fintrace.core.drivers.tspl.listeners;
 
+import org.fintrace.core.drivers.tspl.commands.status.PrinterStatus;
 import org.fintrace.core.drivers.tspl.connection.TSPLConnectionClient;
 
 /**
@@ -53,4 +54,22 @@ public interface ClientListener {
      *               IOException.
      */
     void connectionIsFailing(TSPLConnectionClient client, Exception e);
+
+    /**
+     * This method will be invoked by client when flow control suspends sending,
+     * the printer reported a blocking status.
+     *
+     * @param client The client that suspended sending.
+     * @param status The status which suspended sending.
+     */
+    default void sendingSuspended(TSPLConnectionClient client, PrinterStatus status) {
+    }
+
+    /**
+     * This method will be invoked by client when flow control resumes sending.
+     *
+     * @param client The client that resumed sending.
+     */
+    default void sendingResumed(TSPLConnectionClient client) {
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.listeners;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Read-only view of a message exchanged with the printer, decoded only on demand.
+ * <p>
+ * The bytes are not copied, the view shares them with the client. They are never
+ * modified afterwards, so the view may be kept and used from any thread.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public final class MessageView {
+    private final ByteBuffer bytes;
+    private final Charset charset;
+    private final long timestamp;
+    private volatile String text;
+
+    /**
+     * @param bytes   the message, from its position to its limit
+     * @param charset charset of the message
+     */
+    public MessageView(ByteBuffer bytes, Charset charset) {
+        this.bytes = bytes.slice().asReadOnlyBuffer();
+        this.charset = charset;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @param message decoded message
+     * @param charset charset used to encode the message
+     * @return view of the already decoded message
+     */
+    public static MessageView of(String message, Charset charset) {
+        MessageView view = new MessageView(ByteBuffer.wrap(message.getBytes(charset)), charset);
+        view.text = message;
+        return view;
+    }
+
+    /**
+     * @return a read-only buffer over the message, positioned at its start
+     */
+    public ByteBuffer getBytes() {
+        return bytes.duplicate();
+    }
+
+    /**
+     * @return the message size in bytes
+     */
+    public int size() {
+        return bytes.remaining();
+    }
+
+    /**
+     * @param index index of the byte, starting with 0
+     * @return the byte at the given index
+     */
+    public byte get(int index) {
+        return bytes.get(index);
+    }
+
+    /**
+     * @return a copy of the message bytes
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.duplicate().get(copy);
+        return copy;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return the time the message was sent or received, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the message decoded with its charset, decoded once on the first call
+     */
+    public String asString() {
+        String decoded = text;
+        if (decoded == null) {
+            decoded = charset.decode(bytes.duplicate()).toString();
+            text = decoded;
+        }
+        return decoded;
+    }
+
+    @Override
+    public String toString() {
+        return asString();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.listeners;
+
+/**
+ * What a connection client does with a listener event when the queue of the listener
+ * is full, i.e. the listener does not keep up with the events.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public enum OverflowPolicy {
+    /**
+     * the notifying thread waits until the listener has taken an event, so a slow
+     * listener slows down the connection. An event loop thread, which serves other
+     * connections too, and a sender holding the session lock never wait: for them the
+     * oldest waiting event is discarded instead.
+     */
+    BLOCK,
+    /**
+     * the oldest waiting event is discarded, the default.
+     */
+    DROP_OLDEST,
+    /**
+     * the new event is discarded.
+     */
+    DROP_NEWEST
+}
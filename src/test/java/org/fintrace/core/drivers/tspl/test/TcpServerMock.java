@@ -28,6 +28,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.fintrace.core.drivers.tspl.DriverConstants.CR_BYTES;
@@ -45,7 +47,9 @@ public class TcpServerMock {
     // ServerSocketChannel: selectable channel for stream-oriented listening sockets
     private ServerSocketChannel serverChannel;
 
-    private boolean isRunning = false;
+    private volatile boolean isRunning = false;
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
 
     private List<String> receivedMessages = new ArrayList<>();
 
@@ -168,6 +172,8 @@ public class TcpServerMock {
                 selector.close();
         } catch (IOException e) {
             log.error("", e);
+        } finally {
+            stopped.countDown();
         }
     }
 
@@ -176,8 +182,18 @@ public class TcpServerMock {
      */
     public void stop() {
         log.info("Stop signal is received");
+        boolean started = isRunning;
         isRunning = false;
+        selector.wakeup();
         clearMessages();
+        if (started) {
+            // the port is free again once the server channel is closed
+            try {
+                stopped.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.benchmark;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.label.CompiledTemplate;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabelUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Compares {@link TSPLLabelUtils#parseAndGetLabelContent(String, Map)} as it was
+ * implemented with <code>String.replaceAll</code> against {@link CompiledTemplate}.
+ * <p>
+ * Not a unit test, run the main method from the IDE or, after
+ * <code>mvn test-compile</code>, with
+ * <code>java -cp target/classes:target/test-classes &lt;this class&gt;</code>.
+ * </p>
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public final class CompiledTemplateBenchmark {
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+
+    private static final String TEMPLATE = "SIZE 100 mm,150 mm\n"
+            + "GAP 3 mm,0 mm\n"
+            + "DIRECTION 1\n"
+            + "CLS\n"
+            + "TEXT 40,40,\"3\",0,1,1,\"<<<name>>>\"\n"
+            + "TEXT 40,80,\"3\",0,1,1,\"<<<street>>>\"\n"
+            + "TEXT 40,120,\"3\",0,1,1,\"<<<city>>>\"\n"
+            + "BARCODE 40,200,\"128\",120,1,0,3,3,\"<<<tracking>>>\"\n"
+            + "QRCODE 500,200,M,6,A,0,\"<<<tracking>>>\"\n"
+            + "BOX 20,20,780,1180,4\n"
+            + "PRINT 1,1\n";
+
+    private CompiledTemplateBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("name", "John Doe");
+        parameters.put("street", "221B Baker Street");
+        parameters.put("city", "London NW1 6XE");
+        parameters.put("tracking", "1Z999AA10123456784");
+
+        CompiledTemplate template = CompiledTemplate.compile(TEMPLATE);
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+        String[] values = new String[template.getParameterNames().size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = parameters.get(template.getParameterNames().get(i));
+        }
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += replaceAll(TEMPLATE, parameters).length;
+            sink += template.render(parameters).length;
+            buffer.clear();
+            template.render(buffer, values);
+            sink += buffer.size();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += replaceAll(TEMPLATE, parameters).length;
+        }
+        long replaceAll = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += template.render(parameters).length;
+        }
+        long compiledMap = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            buffer.clear();
+            template.render(buffer, values);
+            sink += buffer.size();
+        }
+        long compiledArray = System.nanoTime() - start;
+
+        report("String.replaceAll", replaceAll, replaceAll);
+        report("CompiledTemplate (Map, new byte[])", compiledMap, replaceAll);
+        report("CompiledTemplate (array, re-used buffer)", compiledArray, replaceAll);
+        System.out.println("(" + sink + ")");
+    }
+
+    /**
+     * the former implementation of TSPLLabelUtils.parseAndGetLabelContent
+     */
+    private static byte[] replaceAll(String labelTemplate, Map<String, String> parameters) {
+        String localTemplate = labelTemplate;
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            localTemplate = localTemplate.replaceAll("<<<" + entry.getKey()
+                    + ">>>", entry.getValue());
+        }
+        return localTemplate.getBytes(US_ASCII);
+    }
+
+    private static void report(String name, long nanos, long baseline) {
+        System.out.printf("%-45s %8.1f ns/label  x%.1f%n", name, (double) nanos / ITERATIONS,
+                (double) baseline / nanos);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.commands;
+
+import org.fintrace.core.drivers.tspl.commands.FrozenCommand;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.label.BarcodeRotation;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.commands.label.Text;
+import org.fintrace.core.drivers.tspl.commands.system.ClearBuffer;
+import org.fintrace.core.drivers.tspl.commands.system.Size;
+import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+public class FrozenCommandTest {
+
+    @Test
+    public void testFreeze() {
+        Size size = Size.builder().labelWidth(4f).labelLength(3f).build();
+        FrozenCommand frozen = size.freeze();
+
+        size.setLabelWidth(2f);
+        Assertions.assertEquals("SIZE 4,3\n", frozen.getCommand());
+        Assertions.assertArrayEquals("SIZE 4,3\n".getBytes(US_ASCII), frozen.getBytes());
+        Assertions.assertEquals(Size.class, frozen.getCommandType());
+        Assertions.assertSame(frozen, frozen.freeze());
+        Assertions.assertEquals(frozen, Size.builder().labelWidth(4f).labelLength(3f).build().freeze());
+
+        Assertions.assertThrows(LabelParserException.class, () -> Size.builder().build().freeze());
+    }
+
+    @Test
+    public void testCharset() {
+        Text text = Text.builder().xCoordinate(10).yCoordinate(10).fontName("3")
+                .rotation(BarcodeRotation.NO_ROTATION).xMultiplicationFactor(1f)
+                .yMultiplicationFactor(1f).content("Grüße").build();
+        FrozenCommand frozen = text.freeze(UTF_8);
+
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer(UTF_8);
+        frozen.writeTo(buffer);
+        Assertions.assertArrayEquals(text.getCommand().getBytes(UTF_8), buffer.toByteArray());
+
+        FrozenCommand latin1 = frozen.freeze(ISO_8859_1);
+        Assertions.assertEquals(Text.class, latin1.getCommandType());
+        Assertions.assertEquals(frozen.getCommand(), latin1.getCommand());
+    }
+
+    @Test
+    public void testFreezeLabel() {
+        Size size = Size.builder().labelWidth(4f).labelLength(3f).build();
+        TSPLLabel label = TSPLLabel.builder()
+                .element(size)
+                .element(ClearBuffer.builder().build())
+                .build();
+        TSPLLabel frozen = label.freeze();
+
+        size.setLabelLength(5f);
+        Assertions.assertEquals("SIZE 4,3\nCLS\n", frozen.getTsplCode());
+        Assertions.assertTrue(frozen.getElements().get(0) instanceof FrozenCommand);
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> frozen.getElements().add(ClearBuffer.builder().build()));
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> frozen.setElements(label.getElements()));
+        Assertions.assertEquals(frozen, frozen.freeze());
+
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+        frozen.writeTo(buffer);
+        Assertions.assertEquals("SIZE 4,3\nCLS\n", buffer.toString());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.commands;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.label.Text;
+import org.fintrace.core.drivers.tspl.commands.status.TSPLStatusPollCommands;
+import org.fintrace.core.drivers.tspl.commands.system.MeasurementSystem;
+import org.fintrace.core.drivers.tspl.commands.system.Size;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+public class TSPLCommandBufferTest {
+
+    @Test
+    public void testNumbers() {
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer(2, US_ASCII);
+        buffer.append(0).append(",").append(-42).append(",").append(Integer.MAX_VALUE)
+                .append(",").append(Integer.MIN_VALUE).append(",").append((Integer) null)
+                .append(",").append(4f).append(",").append(0.5f);
+
+        Assertions.assertEquals("0,-42,2147483647,-2147483648,null,4,0.5", buffer.toString());
+    }
+
+    @Test
+    public void testDecimals() {
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+        buffer.append(0.1f, 4).append(",").append(-2.25f, 4).append(",").append(1.23456f, 4)
+                .append(",").append(-0.00001f, 4).append(",").append(1.005f, 2)
+                .append(",").append(2.5f, 0).append(",").append(123456789L)
+                .append(",").append(Float.NaN, 3);
+        Assertions.assertEquals("0.1,-2.25,1.2346,0,1,3,123456789,NaN", buffer.toString());
+
+        // the float representation is kept without a precision
+        buffer.clear();
+        buffer.append(1.23456f).append(",").append(-0.00001f);
+        Assertions.assertEquals("1.23456,-1.0E-5", buffer.toString());
+
+        // written without Float.toString, with the same digits
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            float value = (random.nextInt(2_000_000) - 1_000_000) / 1024f;
+            if (value - (int) value != 0) {
+                buffer.clear();
+                Assertions.assertEquals(Float.toString(value), buffer.append(value).toString());
+            }
+        }
+        buffer.clear();
+        buffer.append(291.328125f).append(",").append(0.001f);
+        Assertions.assertEquals("291.32812,0.001", buffer.toString());
+
+        buffer.clear();
+        buffer.append(4.0625f, MeasurementSystem.ENGLISH).append(",")
+                .append(101.6049f, MeasurementSystem.METRIC).append(",")
+                .append(812.6f, MeasurementSystem.DOT);
+        Assertions.assertEquals("4.063,101.6,813", buffer.toString());
+
+        Assertions.assertEquals("SIZE 100.554 mm,50 mm\n", Size.builder().labelWidth(100.554f)
+                .labelLength(50f).sizeMeasurementSystem(MeasurementSystem.METRIC).build()
+                .getCommand());
+    }
+
+    @Test
+    public void testCharset() {
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer(UTF_8);
+        buffer.append("TEXT \"ë\"");
+        Assertions.assertArrayEquals(new byte[]{'T', 'E', 'X', 'T', ' ', '"', (byte) 0xC3,
+                (byte) 0xAB, '"'}, buffer.toByteArray());
+        Assertions.assertEquals("TEXT \"ë\"", buffer.toString());
+
+        Text text = Text.builder().xCoordinate(1).yCoordinate(2).fontName("3")
+                .xMultiplicationFactor(1f).yMultiplicationFactor(1f).content("ë€").build();
+        Assertions.assertEquals(text.getCommand(), TSPLCommandBuffer.encodeToString(text, UTF_8));
+        Assertions.assertEquals(text.getCommand().replace("ë€", "ë?"),
+                TSPLCommandBuffer.encodeToString(text, ISO_8859_1));
+    }
+
+    @Test
+    public void testClearAndReuse() throws IOException {
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+        buffer.append(Size.builder().labelWidth(4f).labelLength(3f).build());
+        Assertions.assertEquals("SIZE 4,3\n", buffer.toString());
+
+        buffer.clear();
+        buffer.append(TSPLStatusPollCommands.STATUS);
+        Assertions.assertEquals(4, buffer.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(out);
+        Assertions.assertArrayEquals(TSPLStatusPollCommands.STATUS.getCommand().getBytes(US_ASCII),
+                out.toByteArray());
+
+        ByteBuffer view = buffer.asByteBuffer();
+        Assertions.assertTrue(view.isReadOnly());
+        Assertions.assertEquals(4, view.remaining());
+    }
+
+    @Test
+    public void testCommandEncoding() {
+        Text text = Text.builder().xCoordinate(10).yCoordinate(20).fontName("3")
+                .xMultiplicationFactor(1.5f).yMultiplicationFactor(1f).content("ABC").build();
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+        text.writeTo(buffer);
+
+        Assertions.assertEquals("TEXT 10,20,\"3\",1.5,1,\"ABC\"\n", buffer.toString());
+        Assertions.assertEquals(text.getCommand(), buffer.toString());
+    }
+}
@@ -60,6 +60,8 @@ public class BarcodeTest {
         barcode.setWide(1);
         barcode.setContent("123456");
         Assertions.assertEquals("BARCODE 380,220, \"128\",100,0,0,1,1,\"123456\"\n", barcode.getCommand());
+        Assertions.assertNull(barcode.getHrcAlignment());
+        Assertions.assertNull(barcode.getRotation());
     }
 
     @Test
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.commands.label;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.label.CompiledTemplate;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabelUtils;
+import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+public class CompiledTemplateTest {
+    private static final String TEMPLATE = "SIZE 4,3\n"
+            + "CLS\n"
+            + "TEXT 10,10,\"3\",0,1,1,\"<<<name>>>\"\n"
+            + "BARCODE 10,50,\"128\",100,1,0,2,2,\"<<<tracking>>>\"\n"
+            + "TEXT 10,200,\"3\",0,1,1,\"<<<name>>> / <<<tracking>>>\"\n"
+            + "PRINT 1\n";
+
+    @Test
+    public void testParameters() {
+        CompiledTemplate template = CompiledTemplate.compile(TEMPLATE);
+        Assertions.assertEquals(Arrays.asList("name", "tracking"), template.getParameterNames());
+        Assertions.assertEquals(1, template.indexOf("tracking"));
+        Assertions.assertEquals(-1, template.indexOf("unknown"));
+    }
+
+    @Test
+    public void testRenderPositional() {
+        CompiledTemplate template = CompiledTemplate.compile(TEMPLATE);
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+        template.render(buffer, "John", "1Z999");
+
+        Assertions.assertEquals("SIZE 4,3\n"
+                + "CLS\n"
+                + "TEXT 10,10,\"3\",0,1,1,\"John\"\n"
+                + "BARCODE 10,50,\"128\",100,1,0,2,2,\"1Z999\"\n"
+                + "TEXT 10,200,\"3\",0,1,1,\"John / 1Z999\"\n"
+                + "PRINT 1\n", buffer.toString());
+
+        buffer.clear();
+        template.render(buffer, "Jane", "1Z000");
+        Assertions.assertTrue(buffer.toString().contains("\"Jane / 1Z000\""));
+    }
+
+    @Test
+    public void testRenderMapMatchesLegacy() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("name", "John");
+        parameters.put("tracking", "1Z999");
+
+        Assertions.assertArrayEquals(
+                TEMPLATE.replace("<<<name>>>", "John").replace("<<<tracking>>>", "1Z999")
+                        .getBytes(US_ASCII),
+                CompiledTemplate.compile(TEMPLATE).render(parameters));
+        Assertions.assertArrayEquals(CompiledTemplate.compile(TEMPLATE).render(parameters),
+                TSPLLabelUtils.parseAndGetLabelContent(TEMPLATE, parameters));
+    }
+
+    @Test
+    public void testSpecialCharacters() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("price", "$10\\20");
+
+        Assertions.assertEquals("TEXT \"$10\\20\"",
+                new String(TSPLLabelUtils.parseAndGetLabelContent("TEXT \"<<<price>>>\"",
+                        parameters), US_ASCII));
+    }
+
+    @Test
+    public void testMissingValues() {
+        CompiledTemplate template = CompiledTemplate.compile("A<<<x>>>B<<<y>>>C<<<unclosed");
+        Assertions.assertEquals(Arrays.asList("x", "y"), template.getParameterNames());
+
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("x", "1");
+        Assertions.assertEquals("A1B<<<y>>>C<<<unclosed",
+                new String(template.render(parameters), US_ASCII));
+
+        Assertions.assertThrows(LabelParserException.class,
+                () -> template.render(new TSPLCommandBuffer(), "1"));
+        Assertions.assertThrows(LabelParserException.class,
+                () -> template.render(new TSPLCommandBuffer(), "1", null));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.commands.label;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.label.BarcodeRotation;
+import org.fintrace.core.drivers.tspl.commands.label.LabelBatch;
+import org.fintrace.core.drivers.tspl.commands.label.LabelPrototype;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.commands.label.Text;
+import org.fintrace.core.drivers.tspl.commands.system.ClearBuffer;
+import org.fintrace.core.drivers.tspl.commands.system.Print;
+import org.fintrace.core.drivers.tspl.connection.TSPLConnectionClient;
+import org.fintrace.core.drivers.tspl.connection.USBConnectionClient;
+import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+public class LabelBatchTest {
+    private final Text name = Text.builder().xCoordinate(0).yCoordinate(10).fontName("3")
+            .rotation(BarcodeRotation.NO_ROTATION).xMultiplicationFactor(1f)
+            .yMultiplicationFactor(1f).content("<<<name>>>").build();
+    private final LabelPrototype prototype = LabelPrototype.builder(TSPLLabel.builder()
+            .element(ClearBuffer.builder().build())
+            .element(name)
+            .element(Print.builder().nbLabels(1).build())
+            .build())
+            .bindPosition(name, "x", null)
+            .build();
+
+    @Test
+    public void testWriteRow() {
+        LabelBatch batch = LabelBatch.builder(prototype, 2)
+                .column("x", new int[]{5, 15})
+                .column("name", new byte[][]{"John".getBytes(US_ASCII), "Jane".getBytes(US_ASCII)})
+                .build();
+        Assertions.assertEquals(2, batch.size());
+
+        TSPLCommandBuffer expected = new TSPLCommandBuffer();
+        prototype.render(expected, 15, "Jane");
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+        batch.writeRow(1, buffer);
+        Assertions.assertEquals(expected.toString(), buffer.toString());
+        Assertions.assertEquals("CLS\nTEXT 15,10,\"3\",0,1,1,\"Jane\"\nPRINT 1\n", buffer.toString());
+
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> batch.writeRow(2, buffer));
+    }
+
+    @Test
+    public void testSendTo() {
+        List<String> sent = new ArrayList<>();
+        TSPLConnectionClient client = new USBConnectionClient((short) 0) {
+            @Override
+            protected void transmit(TSPLCommandBuffer buffer) {
+                sent.add(buffer.toString());
+            }
+        };
+
+        LabelBatch batch = LabelBatch.builder(prototype, 3)
+                .column("x", new float[]{0f, 2.5f, 5f})
+                .column("name", new String[]{"A", "B", "C"})
+                .build();
+        batch.sendTo(client);
+
+        Assertions.assertEquals(Arrays.asList(
+                "CLS\nTEXT 0,10,\"3\",0,1,1,\"A\"\nPRINT 1\n",
+                "CLS\nTEXT 2.5,10,\"3\",0,1,1,\"B\"\nPRINT 1\n",
+                "CLS\nTEXT 5,10,\"3\",0,1,1,\"C\"\nPRINT 1\n"), sent);
+
+        client.setCharset(UTF_8);
+        Assertions.assertThrows(LabelParserException.class, () -> batch.sendTo(client));
+    }
+
+    @Test
+    public void testValidation() {
+        Assertions.assertThrows(LabelParserException.class,
+                () -> LabelBatch.builder(prototype, 1).column("name", new String[]{"A"}).build());
+        Assertions.assertThrows(LabelParserException.class,
+                () -> LabelBatch.builder(prototype, 2).column("name", new String[]{"A"}));
+        Assertions.assertThrows(LabelParserException.class,
+                () -> LabelBatch.builder(prototype, 1).column("name", new String[]{null}));
+        Assertions.assertThrows(LabelParserException.class,
+                () -> LabelBatch.builder(prototype, 1).column("name", new int[]{1}));
+        Assertions.assertThrows(LabelParserException.class,
+                () -> LabelBatch.builder(prototype, 1).column("unknown", new int[]{1}));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.commands.label;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.label.BarcodeRotation;
+import org.fintrace.core.drivers.tspl.commands.label.ErrorCorrectionLevel;
+import org.fintrace.core.drivers.tspl.commands.label.LabelPrototype;
+import org.fintrace.core.drivers.tspl.commands.label.QRCode;
+import org.fintrace.core.drivers.tspl.commands.label.QREncodeMode;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.commands.label.Text;
+import org.fintrace.core.drivers.tspl.commands.system.ClearBuffer;
+import org.fintrace.core.drivers.tspl.commands.system.Print;
+import org.fintrace.core.drivers.tspl.commands.system.Size;
+import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+public class LabelPrototypeTest {
+
+    private static Text text(String content) {
+        return Text.builder().xCoordinate(0).yCoordinate(0).fontName("3")
+                .rotation(BarcodeRotation.NO_ROTATION).xMultiplicationFactor(1f)
+                .yMultiplicationFactor(1f).content(content).build();
+    }
+
+    @Test
+    public void testBindings() {
+        Text name = text("Dear <<<name>>>");
+        TSPLLabel label = TSPLLabel.builder()
+                .element(Size.builder().labelWidth(4f).labelLength(3f).build())
+                .element(ClearBuffer.builder().build())
+                .element(name)
+                .element(QRCode.builder().xCoordinate(10).yCoordinate(100)
+                        .errorCorrectionLevel(ErrorCorrectionLevel.H).cellWidth(4)
+                        .mode(QREncodeMode.A).rotation(BarcodeRotation.NO_ROTATION)
+                        .content("<<<tracking>>>").build())
+                .element(Print.builder().nbLabels(1).build())
+                .build();
+
+        LabelPrototype prototype = LabelPrototype.builder(label)
+                .bindPosition(name, "x", null)
+                .build();
+
+        Assertions.assertEquals(Arrays.asList("x", "name", "tracking"),
+                prototype.getParameterNames());
+        Assertions.assertEquals(LabelPrototype.ParameterType.NUMBER, prototype.getParameterType(0));
+        Assertions.assertEquals(LabelPrototype.ParameterType.TEXT, prototype.getParameterType(1));
+
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+        prototype.render(buffer, 25, "John", "1Z999");
+        Assertions.assertEquals("SIZE 4,3\n"
+                + "CLS\n"
+                + "TEXT 25,0,\"3\",0,1,1,\"Dear John\"\n"
+                + "QRCODE 10,100,H,4,A,0,\"1Z999\"\n"
+                + "PRINT 1\n", buffer.toString());
+
+        Map<String, Object> values = new HashMap<>();
+        values.put("x", 12.5f);
+        values.put("name", "Jane");
+        values.put("tracking", "1Z000");
+        buffer.clear();
+        prototype.render(buffer, values);
+        Assertions.assertTrue(buffer.toString().contains("TEXT 12.5,0,\"3\",0,1,1,\"Dear Jane\"\n"));
+    }
+
+    @Test
+    public void testStaticLabel() {
+        TSPLLabel label = TSPLLabel.builder()
+                .element(Size.builder().labelWidth(4f).labelLength(3f).build())
+                .element(text("static"))
+                .build();
+        LabelPrototype prototype = LabelPrototype.compile(label);
+
+        Assertions.assertTrue(prototype.getParameterNames().isEmpty());
+        Assertions.assertEquals(label.getTsplCode().length(), prototype.getStaticLength());
+
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+        prototype.render(buffer);
+        Assertions.assertEquals(label.getTsplCode(), buffer.toString());
+    }
+
+    @Test
+    public void testValidation() {
+        Text name = text("<<<name>>>");
+        TSPLLabel label = TSPLLabel.builder().element(name).build();
+
+        Assertions.assertThrows(LabelParserException.class,
+                () -> LabelPrototype.compile(TSPLLabel.builder()
+                        .element(Text.builder().content("<<<name>>>").build()).build()));
+        Assertions.assertThrows(LabelParserException.class,
+                () -> LabelPrototype.builder(label).bindPosition(text("other"), "x", "y"));
+        Assertions.assertThrows(LabelParserException.class,
+                () -> LabelPrototype.builder(label).bindPosition(name, "name", null).build());
+
+        LabelPrototype prototype = LabelPrototype.builder(label).bindPosition(name, "x", "y").build();
+        Assertions.assertThrows(LabelParserException.class,
+                () -> prototype.render(new TSPLCommandBuffer(), "1", 2, "John"));
+        Assertions.assertThrows(LabelParserException.class,
+                () -> prototype.render(new TSPLCommandBuffer(), 1, 2));
+        Assertions.assertThrows(LabelParserException.class,
+                () -> prototype.render(new TSPLCommandBuffer(), new HashMap<>()));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.commands.label;
+
+import org.fintrace.core.drivers.tspl.commands.label.BarcodeRotation;
+import org.fintrace.core.drivers.tspl.commands.label.SerialRun;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.commands.label.Text;
+import org.fintrace.core.drivers.tspl.commands.system.ClearBuffer;
+import org.fintrace.core.drivers.tspl.commands.system.Print;
+import org.fintrace.core.drivers.tspl.exceptions.LabelParserException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+public class SerialRunTest {
+    private final TSPLLabel layout = TSPLLabel.builder()
+            .element(ClearBuffer.builder().build())
+            .element(Text.builder().xCoordinate(10).yCoordinate(10).fontName("3")
+                    .rotation(BarcodeRotation.NO_ROTATION).xMultiplicationFactor(1f)
+                    .yMultiplicationFactor(1f).content("SN-" + SerialRun.reference(5)).build())
+            .build();
+
+    @Test
+    public void testChunks() {
+        List<SerialRun.Chunk> chunks = SerialRun.builder()
+                .layout(layout).counterNumber(5).start(998L).count(25).chunkSize(10)
+                .build().getChunks();
+
+        Assertions.assertEquals(3, chunks.size());
+        Assertions.assertEquals(998, chunks.get(0).getFirstSerial());
+        Assertions.assertEquals(1007, chunks.get(0).getLastSerial());
+        Assertions.assertEquals(1018, chunks.get(2).getFirstSerial());
+        Assertions.assertEquals(1022, chunks.get(2).getLastSerial());
+        Assertions.assertEquals(5, chunks.get(2).getCount());
+
+        Assertions.assertEquals("SET COUNTER @5 +1\n"
+                + "@5=\"0998\"\n"
+                + "CLS\n"
+                + "TEXT 10,10,\"3\",0,1,1,\"SN-\"+@5+\"\"\n"
+                + "PRINT 10\n", chunks.get(0).getLabel().getTsplCode());
+        Assertions.assertTrue(chunks.get(2).getLabel().getTsplCode()
+                .contains("@5=\"1018\"\n"));
+        Assertions.assertTrue(chunks.get(2).getLabel().getTsplCode().endsWith("PRINT 5\n"));
+    }
+
+    @Test
+    public void testCountDown() {
+        List<SerialRun.Chunk> chunks = SerialRun.builder()
+                .layout(layout).start(100L).step(-2).count(3).width(6)
+                .build().getChunks();
+
+        Assertions.assertEquals(1, chunks.size());
+        Assertions.assertEquals(96, chunks.get(0).getLastSerial());
+        Assertions.assertTrue(chunks.get(0).getLabel().getTsplCode()
+                .startsWith("SET COUNTER @0 -2\n@0=\"000100\"\n"));
+    }
+
+    @Test
+    public void testValidation() {
+        Assertions.assertThrows(LabelParserException.class,
+                () -> SerialRun.builder().layout(layout).start(1L).build().getChunks());
+        Assertions.assertThrows(LabelParserException.class,
+                () -> SerialRun.builder().layout(layout).start(1L).step(-1).count(3)
+                        .build().getChunks());
+        Assertions.assertThrows(LabelParserException.class,
+                () -> SerialRun.builder().layout(layout).start(999L).count(2).width(3)
+                        .build().getChunks());
+        Assertions.assertThrows(LabelParserException.class,
+                () -> SerialRun.builder().layout(layout).start(1L).count(2).counterNumber(61)
+                        .build().getChunks());
+        Assertions.assertThrows(LabelParserException.class,
+                () -> SerialRun.builder().start(1L).count(2).layout(TSPLLabel.builder()
+                        .element(Print.builder().nbLabels(1).build()).build())
+                        .build().getChunks());
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.fintrace.core.drivers.tspl.test.commands.label;
 
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
 import org.fintrace.core.drivers.tspl.commands.device.Counter;
 import org.fintrace.core.drivers.tspl.commands.device.CounterExpression;
 import org.fintrace.core.drivers.tspl.commands.label.BarcodeAlignment;
@@ -66,6 +67,10 @@ public class TSPLLabelTest {
         Assertions.assertEquals(expectedCode, tsplLabel.getTsplCode());
         Assertions.assertNotNull(tsplLabel.getElements());
         Assertions.assertEquals(8, tsplLabel.getElements().size());
+
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+        tsplLabel.writeTo(buffer);
+        Assertions.assertEquals(expectedCode, buffer.toString());
     }
 
     @Test
@@ -115,5 +120,9 @@ public class TSPLLabelTest {
         Assertions.assertEquals(expectedLabel, tsplLabel.getTsplCode());
         Assertions.assertNotNull(tsplLabel.getElements());
         Assertions.assertEquals(15, tsplLabel.getElements().size());
+
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+        tsplLabel.writeTo(buffer);
+        Assertions.assertEquals(expectedLabel, buffer.toString());
     }
 }
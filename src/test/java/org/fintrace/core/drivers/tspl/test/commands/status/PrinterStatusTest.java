@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.commands.status;
+
+import org.fintrace.core.drivers.tspl.commands.status.PrinterCondition;
+import org.fintrace.core.drivers.tspl.commands.status.PrinterStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+public class PrinterStatusTest {
+
+    @Test
+    public void testReady() {
+        PrinterStatus status = PrinterStatus.parse(ByteBuffer.wrap(new byte[]{0x00}));
+        Assertions.assertTrue(status.isReady());
+        Assertions.assertFalse(status.hasError());
+        Assertions.assertFalse(status.isExtended());
+        Assertions.assertTrue(status.getConditions().isEmpty());
+        Assertions.assertTrue(status.getAge(TimeUnit.SECONDS) < 10);
+    }
+
+    @Test
+    public void testStatusByte() {
+        PrinterStatus status = PrinterStatus.parse(ByteBuffer.wrap(new byte[]{0x0D}));
+        Assertions.assertEquals(EnumSet.of(PrinterCondition.RIBBON_OUT, PrinterCondition.PAPER_OUT,
+                PrinterCondition.HEAD_OPEN), status.getConditions());
+        Assertions.assertTrue(status.hasError());
+        Assertions.assertFalse(status.isReady());
+
+        status = PrinterStatus.parse(ByteBuffer.wrap(new byte[]{0x20}));
+        Assertions.assertTrue(status.has(PrinterCondition.PRINTING));
+        Assertions.assertFalse(status.hasError());
+        Assertions.assertFalse(status.isBlocking());
+        Assertions.assertTrue(PrinterStatus.parse(ByteBuffer.wrap(new byte[]{0x10})).isBlocking());
+        Assertions.assertFalse(status.isReady());
+
+        Assertions.assertTrue(PrinterStatus.parse(ByteBuffer.wrap(new byte[]{(byte) 0x80}))
+                .has(PrinterCondition.OTHER_ERROR));
+    }
+
+    @Test
+    public void testExtendedStatus() {
+        ByteBuffer reply = ByteBuffer.wrap(new byte[]{'x', 2, '`', 'H', 'H', 'a', 3, '\r', '\n'});
+        reply.position(1);
+        PrinterStatus status = PrinterStatus.parse(reply);
+        Assertions.assertEquals(1, reply.position());
+        Assertions.assertTrue(status.isExtended());
+        Assertions.assertEquals(EnumSet.of(PrinterCondition.PAUSE, PrinterCondition.BUFFER_FULL,
+                PrinterCondition.CUTTER_JAM, PrinterCondition.HEAD_OPEN, PrinterCondition.PAPER_OUT),
+                status.getConditions());
+        Assertions.assertEquals(status.getConditionBits(), PrinterStatus.decode(reply));
+        Assertions.assertArrayEquals(new byte[]{'`', 'H', 'H', 'a'}, status.getStatusBytes());
+
+        PrinterStatus normal = PrinterStatus.parse(ByteBuffer.wrap(new byte[]{2, '@', '@', '@', '@', 3}));
+        Assertions.assertTrue(normal.isReady());
+        Assertions.assertTrue(PrinterStatus.parse(ByteBuffer.wrap(new byte[]{2, 'P', '@', '@', '@', 3}))
+                .has(PrinterCondition.PRINTING));
+    }
+
+    @Test
+    public void testMalformed() {
+        Assertions.assertEquals(-1, PrinterStatus.decode(ByteBuffer.wrap(new byte[]{'O', 'K'})));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> PrinterStatus.parse(ByteBuffer.wrap(new byte[]{'@', '@', '@', '@', '@', '@'})));
+    }
+
+    @Test
+    public void testEquality() {
+        PrinterStatus first = PrinterStatus.parse(ByteBuffer.wrap(new byte[]{0x04}));
+        PrinterStatus second = PrinterStatus.parse(ByteBuffer.wrap(new byte[]{0x04}));
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals(first.hashCode(), second.hashCode());
+        Assertions.assertNotEquals(first, PrinterStatus.parse(ByteBuffer.wrap(new byte[]{0x08})));
+        Assertions.assertEquals("PrinterStatus[PAPER_OUT]", first.toString());
+    }
+}
@@ -16,11 +16,52 @@
 package org.fintrace.core.drivers.tspl.test.connection;
 
 import lombok.extern.slf4j.Slf4j;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.device.TSPLDeviceConfigurationCommands;
+import org.fintrace.core.drivers.tspl.commands.label.Bar;
+import org.fintrace.core.drivers.tspl.commands.label.BarcodeRotation;
+import org.fintrace.core.drivers.tspl.commands.label.BoundedElement;
+import org.fintrace.core.drivers.tspl.commands.label.Box;
+import org.fintrace.core.drivers.tspl.commands.label.DataMatrix;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.commands.label.Text;
+import org.fintrace.core.drivers.tspl.commands.status.PrinterCondition;
+import org.fintrace.core.drivers.tspl.commands.status.PrinterStatus;
+import org.fintrace.core.drivers.tspl.commands.status.TSPLStatusPollCommands;
+import org.fintrace.core.drivers.tspl.commands.system.ClearBuffer;
+import org.fintrace.core.drivers.tspl.commands.system.Cut;
+import org.fintrace.core.drivers.tspl.commands.system.Gap;
+import org.fintrace.core.drivers.tspl.commands.system.Print;
+import org.fintrace.core.drivers.tspl.commands.system.Size;
+import org.fintrace.core.drivers.tspl.connection.AbstractConnectionClient;
+import org.fintrace.core.drivers.tspl.connection.ConnectionState;
+import org.fintrace.core.drivers.tspl.connection.ReplyFrameDecoder;
+import org.fintrace.core.drivers.tspl.connection.ReplyShape;
 import org.fintrace.core.drivers.tspl.connection.TSPLConnectionClient;
 import org.fintrace.core.drivers.tspl.connection.USBConnectionClient;
+import org.fintrace.core.drivers.tspl.exceptions.ConnectionClientException;
+import org.fintrace.core.drivers.tspl.exceptions.PrinterException;
+import org.fintrace.core.drivers.tspl.listeners.ClientListener;
+import org.fintrace.core.drivers.tspl.listeners.ByteDataListener;
+import org.fintrace.core.drivers.tspl.listeners.DataListener;
+import org.fintrace.core.drivers.tspl.listeners.MessageView;
+import org.fintrace.core.drivers.tspl.listeners.OverflowPolicy;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -42,4 +83,519 @@ import static java.nio.charset.StandardCharsets.UTF_8;
         Assertions.assertEquals(recover, "ë");
     }
 
+    @Test public void setupElision() {
+        List<String> sent = new ArrayList<>();
+        AbstractConnectionClient client = new USBConnectionClient(vendorId) {
+            @Override protected void send(byte[] bs) { }
+            @Override protected void transmit(TSPLCommandBuffer buffer) { sent.add(buffer.toString()); }
+        };
+        client.setSetupElision(true);
+        client.setImageReuse(false);
+
+        TSPLLabel label = TSPLLabel.builder()
+                .element(Size.builder().labelWidth(4f).labelLength(3f).build())
+                .element(Gap.builder().labelDistance(0f).labelOffsetDistance(0f).build().freeze())
+                .element(TSPLDeviceConfigurationCommands.CUTTER_OFF)
+                .element(ClearBuffer.builder().build())
+                .element(Print.builder().nbLabels(1).build())
+                .build();
+        TSPLLabel resized = TSPLLabel.builder()
+                .element(Size.builder().labelWidth(2f).labelLength(1f).build())
+                .element(Gap.builder().labelDistance(0f).labelOffsetDistance(0f).build())
+                .element(TSPLDeviceConfigurationCommands.CUTTER_BATCH)
+                .element(ClearBuffer.builder().build())
+                .element(Print.builder().nbLabels(1).build())
+                .build();
+        String full = label.getTsplCode();
+
+        client.send(label);
+        client.send(label);
+        client.send(resized);
+        Assertions.assertEquals(full, sent.get(0));
+        Assertions.assertEquals("CLS\nPRINT 1\n", sent.get(1));
+        Assertions.assertEquals("SIZE 2,1\nSET CUTTER BATCHCLS\nPRINT 1\n", sent.get(2));
+
+        client.resetSession();
+        client.send(label);
+        client.send(TSPLStatusPollCommands.RESET.getCommand());
+        client.send(label);
+        Assertions.assertEquals(full, sent.get(3));
+        Assertions.assertEquals(full, sent.get(4));
+
+        client.setSetupElision(false);
+        client.send(label);
+        client.send(label);
+        Assertions.assertEquals(full, sent.get(5));
+        Assertions.assertEquals(full, sent.get(6));
+    }
+
+    @Test public void imageReuse() {
+        List<String> sent = new ArrayList<>();
+        AbstractConnectionClient client = new USBConnectionClient(vendorId) {
+            @Override protected void send(byte[] bs) { }
+            @Override protected void transmit(TSPLCommandBuffer buffer) { sent.add(buffer.toString()); }
+        };
+        client.setSetupElision(true);
+        client.setImageReuse(true);
+
+        Size size = Size.builder().labelWidth(4f).labelLength(3f).build();
+        TSPLLabel label = TSPLLabel.builder()
+                .element(size)
+                .element(ClearBuffer.builder().build())
+                .element(Bar.builder().xCoordinate(10).yCoordinate(10).width(100).height(5).build())
+                .element(Print.builder().nbLabels(1).build())
+                .build();
+        TSPLLabel twice = TSPLLabel.builder()
+                .element(size)
+                .element(ClearBuffer.builder().build())
+                .element(Bar.builder().xCoordinate(10).yCoordinate(10).width(100).height(5).build())
+                .element(Print.builder().nbLabels(1).nbCopies(2).build())
+                .build();
+        TSPLLabel moved = TSPLLabel.builder()
+                .element(size)
+                .element(ClearBuffer.builder().build())
+                .element(Bar.builder().xCoordinate(20).yCoordinate(10).width(100).height(5).build())
+                .element(Print.builder().nbLabels(1).build())
+                .build();
+        TSPLLabel withCut = TSPLLabel.builder()
+                .element(ClearBuffer.builder().build())
+                .element(Bar.builder().xCoordinate(20).yCoordinate(10).width(100).height(5).build())
+                .element(Cut.builder().build())
+                .element(Print.builder().nbLabels(1).build())
+                .build();
+
+        client.send(label);
+        client.send(label);
+        client.send(twice);
+        client.send(moved);
+        client.send(withCut);
+        client.send(withCut);
+        client.send(moved);
+        client.send("CLS\n");
+        client.send(moved);
+
+        Assertions.assertEquals(label.getTsplCode(), sent.get(0));
+        Assertions.assertEquals("PRINT 1\n", sent.get(1));
+        Assertions.assertEquals("PRINT 1,2\n", sent.get(2));
+        Assertions.assertEquals("CLS\nBAR 20,10,100,5\nPRINT 1\n", sent.get(3));
+        Assertions.assertEquals(withCut.getTsplCode(), sent.get(4));
+        Assertions.assertEquals(withCut.getTsplCode(), sent.get(5));
+        Assertions.assertEquals("CLS\nBAR 20,10,100,5\nPRINT 1\n", sent.get(6));
+        Assertions.assertEquals(moved.getTsplCode(), sent.get(7));
+
+        size.setLabelLength(2f);
+        client.send(moved);
+        Assertions.assertEquals("SIZE 4,2\nCLS\nBAR 20,10,100,5\nPRINT 1\n", sent.get(8));
+    }
+
+    private static Text text(int y, String content) {
+        return Text.builder().xCoordinate(10).yCoordinate(y).fontName("3")
+                .rotation(BarcodeRotation.NO_ROTATION).xMultiplicationFactor(1f)
+                .yMultiplicationFactor(1f).content(content).build();
+    }
+
+    private static TSPLLabel shippingLabel(String tracking, String name) {
+        return TSPLLabel.builder()
+                .element(Size.builder().labelWidth(4f).labelLength(3f).build())
+                .element(ClearBuffer.builder().build())
+                .element(Box.builder().xCoordinate(0).yCoordinate(0).xEndCoordinate(600)
+                        .yEndCoordinate(150).lineThickness(4).build())
+                .element(DataMatrix.builder().xCoordinate(10).yCoordinate(10).width(120)
+                        .height(120).content("STATIC LOGO PLACEHOLDER").build())
+                .element(text(20, name))
+                .element(BoundedElement.builder().element(text(300, tracking))
+                        .xCoordinate(10).yCoordinate(300).width(400).height(40).build())
+                .element(Print.builder().nbLabels(1).build())
+                .build();
+    }
+
+    @Test public void incrementalUpdates() {
+        List<String> sent = new ArrayList<>();
+        AbstractConnectionClient client = new USBConnectionClient(vendorId) {
+            @Override protected void send(byte[] bs) { }
+            @Override protected void transmit(TSPLCommandBuffer buffer) { sent.add(buffer.toString()); }
+        };
+        client.setSetupElision(true);
+        client.setImageReuse(true);
+        client.setIncrementalUpdates(true);
+
+        client.send(shippingLabel("1Z001", "John"));
+        client.send(shippingLabel("1Z002", "John"));
+        Assertions.assertEquals(shippingLabel("1Z001", "John").getTsplCode(), sent.get(0));
+        // the name has no known region and might overlap the erased one, so it is redrawn
+        Assertions.assertEquals("ERASE 10,300,400,40\n" + text(20, "John").getCommand()
+                + text(300, "1Z002").getCommand() + "PRINT 1\n", sent.get(1));
+
+        // the old name can not be erased
+        client.send(shippingLabel("1Z002", "Jane"));
+        Assertions.assertTrue(sent.get(2).startsWith("CLS\n"));
+
+        client.setIncrementalUpdates(false);
+        client.send(shippingLabel("1Z003", "Jane"));
+        client.send(shippingLabel("1Z004", "Jane"));
+        Assertions.assertTrue(sent.get(4).startsWith("CLS\n"));
+    }
+
+    static class EventClient extends USBConnectionClient {
+        EventClient() { super((short) 0); getAndSetState(ConnectionState.CONNECTED); }
+        @Override protected void send(byte[] bs) { }
+        @Override protected void transmit(TSPLCommandBuffer buffer) { }
+        void sent(String message) { notifyMessageSent(message); }
+        void received(String message) { notifyMessageReceived(message); }
+        void sent(MessageView message) { notifyMessageSent(message); }
+        boolean listened() { return hasDataListeners(); }
+        void reply(byte[] bytes) { getFrameDecoder().decode(ByteBuffer.wrap(bytes), frameHandler); }
+    }
+
+    static class RecordingListener implements DataListener {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done;
+        RecordingListener(int count) { done = new CountDownLatch(count); }
+        @Override public void messageSent(String message) { events.add("sent " + message); done.countDown(); }
+        @Override public void messageReceived(String message) { events.add("received " + message); done.countDown(); }
+        @Override public void messageSendFailed(ConnectionClientException exception, String messageToSend) { }
+    }
+
+    @Test public void orderedListenerEvents() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        EventClient client = new EventClient();
+        client.setListenerExecutor(executor);
+        client.setListenerBatchSize(8);
+        RecordingListener first = new RecordingListener(2000);
+        RecordingListener second = new RecordingListener(2000);
+        client.addDataListener(first);
+        client.addDataListener(second);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            client.sent("" + i);
+            client.received("" + i);
+            expected.add("sent " + i);
+            expected.add("received " + i);
+        }
+
+        Assertions.assertTrue(first.done.await(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(second.done.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(expected, first.events);
+        Assertions.assertEquals(expected, second.events);
+        executor.shutdown();
+    }
+
+    @Test public void listenerOverflow() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        EventClient client = new EventClient();
+        client.setListenerQueueCapacity(2);
+        client.setListenerOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+        RecordingListener listener = new RecordingListener(3) {
+            @Override public void messageSent(String message) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.messageSent(message);
+            }
+        };
+        client.addDataListener(listener);
+
+        client.sent("0");
+        Assertions.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i <= 5; i++) {
+            client.received("" + i);
+        }
+        release.countDown();
+
+        Assertions.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(3, client.getDroppedListenerEvents());
+        Assertions.assertEquals(Arrays.asList("sent 0", "received 4", "received 5"),
+                listener.events);
+    }
+
+    @Test public void byteDataListener() throws InterruptedException {
+        EventClient client = new EventClient();
+        Assertions.assertFalse(client.listened());
+
+        List<MessageView> views = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        client.addByteDataListener(new ByteDataListener() {
+            @Override public void messageSent(MessageView message) { views.add(message); done.countDown(); }
+            @Override public void messageReceived(MessageView message) { }
+            @Override public void messageSendFailed(ConnectionClientException exception, MessageView messageToSend) { }
+        });
+        RecordingListener strings = new RecordingListener(1);
+        client.addDataListener(strings);
+        Assertions.assertTrue(client.listened());
+
+        byte[] label = "CLS\nTEXT 10,10,\"3\",0,1,1,\"Grüße\"\nPRINT 1\n".getBytes(UTF_8);
+        client.sent(new MessageView(ByteBuffer.wrap(label, 4, label.length - 4), UTF_8));
+
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(strings.done.await(10, TimeUnit.SECONDS));
+        MessageView view = views.get(0);
+        Assertions.assertEquals(label.length - 4, view.size());
+        Assertions.assertEquals('T', view.get(0));
+        Assertions.assertTrue(view.getBytes().isReadOnly());
+        Assertions.assertEquals("TEXT 10,10,\"3\",0,1,1,\"Grüße\"\nPRINT 1\n", view.asString());
+        Assertions.assertEquals("sent " + view.asString(), strings.events.get(0));
+    }
+
+    @Test public void receivedWithClientCharset() throws InterruptedException {
+        EventClient client = new EventClient();
+        client.setCharset(UTF_8);
+        RecordingListener strings = new RecordingListener(1);
+        client.addDataListener(strings);
+
+        client.reply("Grüße\n".getBytes(UTF_8));
+        Assertions.assertTrue(strings.done.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals("received Grüße\n", strings.events.get(0));
+    }
+
+    @Test public void pipelinedQueries() throws Exception {
+        EventClient client = new EventClient();
+        CompletableFuture<PrinterStatus> first = client.query(TSPLStatusPollCommands.STATUS, 5, TimeUnit.SECONDS);
+        CompletableFuture<String> model = client.query(() -> "~!T\n", ReplyShape.LINE,
+                reply -> US_ASCII.decode(reply).toString().trim(), 5, TimeUnit.SECONDS);
+        // a raw status poll keeps its place in the order of the replies
+        client.send(TSPLStatusPollCommands.STATUS.getCommand());
+        CompletableFuture<PrinterStatus> second = client.query(TSPLStatusPollCommands.STATUS, 5, TimeUnit.SECONDS);
+        CompletableFuture<PrinterStatus> extended = client.query(TSPLStatusPollCommands.STATUS_LONG, 5, TimeUnit.SECONDS);
+
+        client.reply(new byte[]{0, 'T', 'T', 'P', '\r', '\n', 0x04, 0x10,
+                2, '@', '@', '@', 'A', 3, '\r', '\n'});
+
+        Assertions.assertTrue(first.get().isReady());
+        Assertions.assertEquals("TTP", model.get());
+        Assertions.assertArrayEquals(new byte[]{0x10}, second.get().getStatusBytes());
+        Assertions.assertFalse(second.get().isReady());
+        Assertions.assertTrue(extended.get().isExtended());
+        Assertions.assertFalse(extended.get().isReady());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> client.query(TSPLStatusPollCommands.RESET, 1, TimeUnit.SECONDS));
+    }
+
+    @Test public void queryTimeout() throws Exception {
+        EventClient client = new EventClient();
+        CompletableFuture<PrinterStatus> late = client.query(TSPLStatusPollCommands.STATUS, 50, TimeUnit.MILLISECONDS);
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, late::get);
+        Assertions.assertTrue(e.getCause() instanceof TimeoutException);
+
+        // a late reply before the next query is dropped
+        client.reply(new byte[]{0x01});
+        CompletableFuture<PrinterStatus> next = client.query(TSPLStatusPollCommands.STATUS, 5, TimeUnit.SECONDS);
+        Assertions.assertFalse(next.isDone());
+        client.reply(new byte[]{0x00});
+        Assertions.assertTrue(next.get().isReady());
+    }
+
+    @Test public void missingReply() throws Exception {
+        EventClient client = new EventClient();
+        CompletableFuture<PrinterStatus> lost = client.query(TSPLStatusPollCommands.STATUS, 50, TimeUnit.MILLISECONDS);
+        CompletableFuture<String> model = client.query(() -> "~!T\n", ReplyShape.LINE,
+                reply -> US_ASCII.decode(reply).toString().trim(), 5, TimeUnit.SECONDS);
+
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, lost::get);
+        Assertions.assertTrue(e.getCause() instanceof TimeoutException);
+        // only the lost status reply is forgotten, the text query still waits for its own
+        Assertions.assertFalse(model.isDone());
+        Assertions.assertEquals(1, ((ReplyFrameDecoder) client.getFrameDecoder()).getExpectedCount());
+
+        CompletableFuture<PrinterStatus> next = client.query(TSPLStatusPollCommands.STATUS, 5, TimeUnit.SECONDS);
+        client.reply("TTP\r\n".getBytes(US_ASCII));
+        Assertions.assertEquals("TTP", model.get());
+        client.reply(new byte[]{0x10});
+        Assertions.assertArrayEquals(new byte[]{0x10}, next.get().getStatusBytes());
+    }
+
+    @Test public void lostPollsHalveOnce() throws Exception {
+        EventClient client = new EventClient();
+        client.setPacingWindow(8);
+        for (int i = 0; i < 4; i++) {
+            client.send(bar(i));
+        }
+        CompletableFuture<PrinterStatus> first = client.query(TSPLStatusPollCommands.STATUS, 50, TimeUnit.MILLISECONDS);
+        CompletableFuture<PrinterStatus> second = client.query(TSPLStatusPollCommands.STATUS, 50, TimeUnit.MILLISECONDS);
+        Assertions.assertThrows(ExecutionException.class, first::get);
+        Assertions.assertThrows(ExecutionException.class, second::get);
+        Assertions.assertEquals(2, client.getPacingWindow());
+
+        // the next reply acknowledges the labels sent before the next poll
+        CompletableFuture<PrinterStatus> next = client.query(TSPLStatusPollCommands.STATUS, 5, TimeUnit.SECONDS);
+        client.reply(new byte[]{0x00});
+        Assertions.assertTrue(next.get().isReady());
+        Assertions.assertEquals(0, client.getLabelsInFlight());
+    }
+
+    @Test public void minimalClient() throws Exception {
+        List<String> sent = new ArrayList<>();
+        TSPLConnectionClient client = new TSPLConnectionClient() {
+            @Override public void init() { }
+            @Override public void connect() { }
+            @Override public void disconnect() { }
+            @Override public void shutdown() { }
+            @Override public boolean isConnected() { return true; }
+            @Override public void send(String tsplMessage) { sent.add(tsplMessage); }
+            @Override public void send(TSPLLabel label) { throw new PrinterException("no labels"); }
+            @Override public void addClientListener(ClientListener listener) { }
+            @Override public void removeClientListener(ClientListener listener) { }
+            @Override public void addDataListener(DataListener listener) { }
+            @Override public void removeDataListener(DataListener listener) { }
+            @Override public void setCharset(java.nio.charset.Charset charset) { }
+            @Override public java.nio.charset.Charset getCharset() { return US_ASCII; }
+        };
+
+        TSPLCommandBuffer buffer = new TSPLCommandBuffer(16, US_ASCII);
+        buffer.append("CLS\r\n");
+        client.sendAsync(buffer).get();
+        Assertions.assertEquals(Collections.singletonList("CLS\r\n"), sent);
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                () -> client.sendAsync(TSPLLabel.builder().build()).get());
+        Assertions.assertTrue(e.getCause() instanceof PrinterException);
+        e = Assertions.assertThrows(ExecutionException.class,
+                () -> client.query(TSPLStatusPollCommands.STATUS, 1, TimeUnit.SECONDS).get());
+        Assertions.assertTrue(e.getCause() instanceof UnsupportedOperationException);
+        Assertions.assertNull(client.getLastStatus());
+        Assertions.assertFalse(client.isSuspended());
+    }
+
+    @Test public void lastKnownStatus() throws Exception {
+        EventClient client = new EventClient();
+        Assertions.assertNull(client.getLastStatus());
+        Assertions.assertFalse(client.isReady(1, TimeUnit.MINUTES));
+
+        // raw status polls update the last known status as well
+        client.send(TSPLStatusPollCommands.STATUS.getCommand());
+        client.reply(new byte[]{0x00});
+        Assertions.assertTrue(client.getLastStatus().isReady());
+        Assertions.assertTrue(client.isReady(1, TimeUnit.MINUTES));
+        Thread.sleep(5);
+        Assertions.assertFalse(client.isReady(1, TimeUnit.MILLISECONDS));
+
+        CompletableFuture<PrinterStatus> status = client.query(TSPLStatusPollCommands.STATUS, 5, TimeUnit.SECONDS);
+        client.reply(new byte[]{0x01});
+        Assertions.assertEquals(status.get(), client.getLastStatus());
+        Assertions.assertTrue(client.getLastStatus().has(PrinterCondition.HEAD_OPEN));
+        Assertions.assertFalse(client.isReady(1, TimeUnit.MINUTES));
+    }
+
+    @Test public void flowControl() throws Exception {
+        EventClient client = new EventClient();
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        client.addClientListener(new ClientListener() {
+            @Override public void connectionEstablished(TSPLConnectionClient c) { }
+            @Override public void connectionLost(TSPLConnectionClient c) { }
+            @Override public void connectionIsFailing(TSPLConnectionClient c, Exception e) { }
+            @Override public void sendingSuspended(TSPLConnectionClient c, PrinterStatus status) {
+                events.add("suspended " + status);
+            }
+            @Override public void sendingResumed(TSPLConnectionClient c) { events.add("resumed"); }
+        });
+        client.setFlowControl(true);
+
+        client.send(TSPLStatusPollCommands.STATUS.getCommand());
+        client.reply(new byte[]{0x04});
+        Assertions.assertTrue(client.isSuspended());
+
+        CountDownLatch sent = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            client.send("CLS\n");
+            sent.countDown();
+        });
+        producer.start();
+        Assertions.assertFalse(sent.await(100, TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(0, client.getSentMessageCount());
+
+        // status polls still go out while suspended
+        CompletableFuture<PrinterStatus> status = client.query(TSPLStatusPollCommands.STATUS, 5, TimeUnit.SECONDS);
+        client.reply(new byte[]{0x20});
+        Assertions.assertTrue(status.get().has(PrinterCondition.PRINTING));
+        Assertions.assertTrue(sent.await(10, TimeUnit.SECONDS));
+        Assertions.assertFalse(client.isSuspended());
+        Assertions.assertEquals(1, client.getSentMessageCount());
+
+        client.setFlowControlTimeout(50, TimeUnit.MILLISECONDS);
+        client.send(TSPLStatusPollCommands.STATUS.getCommand());
+        client.reply(new byte[]{0x10});
+        Assertions.assertThrows(PrinterException.class, () -> client.send("CLS\n"));
+
+        client.setFlowControl(false);
+        Assertions.assertFalse(client.isSuspended());
+        client.send("CLS\n");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (events.size() < 4 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Assertions.assertEquals(Arrays.asList("suspended PrinterStatus[PAPER_OUT]", "resumed",
+                "suspended PrinterStatus[PAUSE]", "resumed"), events);
+    }
+
+    private static TSPLLabel bar(int x) {
+        return TSPLLabel.builder()
+                .element(Bar.builder().xCoordinate(x).yCoordinate(10).width(100).height(5).build())
+                .element(Print.builder().nbLabels(1).build())
+                .build();
+    }
+
+    private static void poll(EventClient client, int status) {
+        client.send(TSPLStatusPollCommands.STATUS.getCommand());
+        client.reply(new byte[]{(byte) status});
+    }
+
+    @Test public void pacingWindow() throws Exception {
+        EventClient client = new EventClient();
+        client.setPacingWindow(8);
+        Assertions.assertEquals(4, client.getPacingWindow());
+        for (int i = 0; i < 4; i++) {
+            client.send(bar(i));
+        }
+        Assertions.assertEquals(4, client.getLabelsInFlight());
+
+        CountDownLatch sent = new CountDownLatch(1);
+        new Thread(() -> {
+            client.send(bar(4));
+            sent.countDown();
+        }).start();
+        Assertions.assertFalse(sent.await(100, TimeUnit.MILLISECONDS));
+
+        // a ready printer has printed the labels sent before the poll
+        poll(client, 0x00);
+        Assertions.assertTrue(sent.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(5, client.getPacingWindow());
+        Assertions.assertEquals(1, client.getLabelsInFlight());
+
+        // still printing with the whole window in flight is progress, not congestion
+        for (int i = 0; i < 4; i++) {
+            client.send(bar(i));
+        }
+        Assertions.assertEquals(5, client.getLabelsInFlight());
+        for (int round = 0; round < 3; round++) {
+            poll(client, 0x20);
+            client.send(bar(round));
+        }
+        Assertions.assertEquals(8, client.getPacingWindow());
+        Assertions.assertEquals(1, client.getLabelsInFlight());
+
+        // a blocking status halves the window, once a round
+        for (int i = 0; i < 3; i++) {
+            client.send(bar(i));
+        }
+        poll(client, 0x10);
+        Assertions.assertEquals(4, client.getPacingWindow());
+        poll(client, 0x10);
+        Assertions.assertEquals(4, client.getPacingWindow());
+
+        client.setFlowControlTimeout(50, TimeUnit.MILLISECONDS);
+        Assertions.assertThrows(PrinterException.class, () -> client.send(bar(5)));
+        Assertions.assertEquals(4, client.getLabelsInFlight());
+
+        poll(client, 0x00);
+        Assertions.assertEquals(5, client.getPacingWindow());
+        Assertions.assertEquals(0, client.getLabelsInFlight());
+
+        client.setPacingWindow(0);
+        Assertions.assertEquals(0, client.getPacingWindow());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> client.setPacingWindow(-1));
+    }
 }
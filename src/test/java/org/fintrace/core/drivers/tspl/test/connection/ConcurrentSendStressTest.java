@@ -0,0 +1,291 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.connection;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.label.BarcodeRotation;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.commands.label.Text;
+import org.fintrace.core.drivers.tspl.commands.system.ClearBuffer;
+import org.fintrace.core.drivers.tspl.commands.system.Print;
+import org.fintrace.core.drivers.tspl.commands.system.Size;
+import org.fintrace.core.drivers.tspl.connection.ConnectionState;
+import org.fintrace.core.drivers.tspl.connection.EthernetConnectionClient;
+import org.fintrace.core.drivers.tspl.connection.TsplEventLoopGroup;
+import org.fintrace.core.drivers.tspl.connection.USBConnectionClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sends from many threads at once and checks that no message is ever split or
+ * interleaved with another one.
+ *
+ * @author Venkaiah Chowdary Koneru
+ */
+public class ConcurrentSendStressTest {
+
+    private static final int THREADS = 8;
+    private static final int MESSAGES = 400;
+    private static final Pattern LINE = Pattern.compile("T(\\d+) (\\d+) ([a-z]*)");
+
+    private ServerSocket server;
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    private final ExecutorService senders = Executors.newFixedThreadPool(THREADS);
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    Thread reader = new Thread(() -> read(socket));
+                    reader.setDaemon(true);
+                    reader.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void read(Socket socket) {
+        byte[] chunk = new byte[4096];
+        try (InputStream in = socket.getInputStream()) {
+            int read;
+            while ((read = in.read(chunk)) >= 0) {
+                synchronized (received) {
+                    received.write(chunk, 0, read);
+                }
+            }
+        } catch (IOException e) {
+            // closed by the client
+        }
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        senders.shutdownNow();
+        server.close();
+    }
+
+    private static String payload(int thread, int seq) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < (thread * 31 + seq * 7) % 600; i++) {
+            sb.append((char) ('a' + thread));
+        }
+        return sb.toString();
+    }
+
+    private static void await(EthernetConnectionClient client, ConnectionState state)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (client.getConnectionState() != state) {
+            assertTrue(System.nanoTime() < deadline, "still " + client.getConnectionState());
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void framesAreNeverSplit() throws Exception {
+        TsplEventLoopGroup group = new TsplEventLoopGroup(1);
+        EthernetConnectionClient client = new EthernetConnectionClient("localhost",
+                server.getLocalPort(), group);
+        // a small outbox keeps the senders blocking and racing for room
+        client.setOutboxCapacity(4 * 1024);
+        client.setWriteCoalescing(2 * 1024, 1, TimeUnit.MILLISECONDS);
+        client.connect();
+        await(client, ConnectionState.CONNECTED);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<CompletableFuture<Void>>>> results = new ArrayList<>();
+        long expectedBytes = 0;
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            for (int seq = 0; seq < MESSAGES; seq++) {
+                expectedBytes += ("T" + thread + " " + seq + " " + payload(thread, seq) + "\n").length();
+            }
+            results.add(senders.submit(() -> {
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                TSPLCommandBuffer buffer = new TSPLCommandBuffer();
+                start.await();
+                for (int seq = 0; seq < MESSAGES; seq++) {
+                    String line = "T" + thread + " " + seq + " " + payload(thread, seq) + "\n";
+                    if (seq % 2 == 0) {
+                        client.send(line);
+                    } else {
+                        buffer.clear();
+                        futures.add(client.sendAsync(buffer.append(line)));
+                    }
+                }
+                return futures;
+            }));
+        }
+        start.countDown();
+        for (Future<List<CompletableFuture<Void>>> result : results) {
+            CompletableFuture.allOf(result.get(30, TimeUnit.SECONDS).toArray(new CompletableFuture[0]))
+                    .get(30, TimeUnit.SECONDS);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (size() < expectedBytes && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expectedBytes, size());
+        assertEquals(0, client.getOutboxBytes());
+
+        int[] next = new int[THREADS];
+        String wire;
+        synchronized (received) {
+            wire = new String(received.toByteArray(), US_ASCII);
+        }
+        for (String line : wire.split("\n")) {
+            Matcher matcher = LINE.matcher(line);
+            assertTrue(matcher.matches(), "split message: " + line);
+            int thread = Integer.parseInt(matcher.group(1));
+            int seq = Integer.parseInt(matcher.group(2));
+            assertEquals(next[thread]++, seq, "out of order for thread " + thread);
+            assertEquals(payload(thread, seq), matcher.group(3));
+        }
+        for (int count : next) {
+            assertEquals(MESSAGES, count);
+        }
+
+        client.disconnect();
+        await(client, ConnectionState.DISCONNECTED);
+        group.shutdown();
+    }
+
+    private int size() {
+        synchronized (received) {
+            return received.size();
+        }
+    }
+
+    @Test
+    public void connectionStateMachine() throws Exception {
+        TsplEventLoopGroup group = new TsplEventLoopGroup(1);
+        EthernetConnectionClient client = new EthernetConnectionClient("localhost",
+                server.getLocalPort(), group);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> toggles = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            toggles.add(senders.submit(() -> {
+                start.await();
+                for (int i = 0; i < 200; i++) {
+                    client.connect();
+                    client.disconnect();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> toggle : toggles) {
+            toggle.get(30, TimeUnit.SECONDS);
+        }
+
+        // every toggle ends with a disconnect, so the client settles disconnected
+        client.disconnect();
+        await(client, ConnectionState.DISCONNECTED);
+
+        // and still connects afterwards
+        client.connect();
+        await(client, ConnectionState.CONNECTED);
+        client.send("T0 0 \n");
+        client.disconnect();
+        await(client, ConnectionState.DISCONNECTED);
+        group.shutdown();
+    }
+
+    /**
+     * records every transfer, as the USB pipe would receive it.
+     */
+    static class RecordingClient extends USBConnectionClient {
+        final List<String> transfers = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingClient() { super((short) 0); getAndSetState(ConnectionState.CONNECTED); }
+        @Override protected void send(byte[] bs) { transfers.add(new String(bs, US_ASCII)); }
+        @Override protected void transmit(TSPLCommandBuffer buffer) { transfers.add(buffer.toString()); }
+    }
+
+    @Test
+    public void labelsAreNeverSplit() throws Exception {
+        RecordingClient client = new RecordingClient();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            results.add(senders.submit(() -> {
+                start.await();
+                for (int seq = 0; seq < MESSAGES; seq++) {
+                    client.send(TSPLLabel.builder()
+                            .element(Size.builder().labelWidth(4f).labelLength(thread + 1f).build())
+                            .element(ClearBuffer.builder().build())
+                            .element(Text.builder().xCoordinate(10).yCoordinate(10).fontName("3")
+                                    .rotation(BarcodeRotation.NO_ROTATION).xMultiplicationFactor(1f)
+                                    .yMultiplicationFactor(1f).content("T" + thread + " " + seq).build())
+                            .element(Print.builder().nbLabels(1).build())
+                            .build());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+
+        assertEquals(THREADS * MESSAGES, client.transfers.size());
+        int[] next = new int[THREADS];
+        Pattern text = Pattern.compile("TEXT 10,10,\"3\",0,1,1,\"T(\\d+) (\\d+)\"\n");
+        for (String transfer : client.transfers) {
+            assertTrue(transfer.startsWith("SIZE ") || transfer.startsWith("CLS"), transfer);
+            assertTrue(transfer.endsWith("PRINT 1\n"), transfer);
+            Matcher matcher = text.matcher(transfer);
+            assertTrue(matcher.find(), transfer);
+            int thread = Integer.parseInt(matcher.group(1));
+            assertEquals(next[thread]++, Integer.parseInt(matcher.group(2)));
+            // the size of the label belongs to its thread, unless elided
+            assertTrue(!transfer.startsWith("SIZE ") || transfer.startsWith("SIZE 4," + (thread + 1) + "\n"),
+                    transfer);
+        }
+    }
+}
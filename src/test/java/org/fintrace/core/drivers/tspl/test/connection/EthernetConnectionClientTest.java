@@ -16,8 +16,14 @@
 package org.fintrace.core.drivers.tspl.test.connection;
 
 import lombok.extern.slf4j.Slf4j;
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.label.Bar;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
 import org.fintrace.core.drivers.tspl.commands.status.TSPLStatusPollCommands;
+import org.fintrace.core.drivers.tspl.connection.BackpressurePolicy;
 import org.fintrace.core.drivers.tspl.connection.EthernetConnectionClient;
+import org.fintrace.core.drivers.tspl.connection.ReplyFrameDecoder;
+import org.fintrace.core.drivers.tspl.connection.ReplyShape;
 import org.fintrace.core.drivers.tspl.connection.TSPLConnectionClient;
 import org.fintrace.core.drivers.tspl.exceptions.ConnectionClientException;
 import org.fintrace.core.drivers.tspl.listeners.ClientListener;
@@ -28,8 +34,21 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.fintrace.core.drivers.tspl.DriverConstants.LF;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author Venkaiah Chowdary Koneru
@@ -121,4 +140,165 @@ public class EthernetConnectionClientTest {
             log.error("", e);
         }
     }
+
+    @Test
+    public void sendAsync() throws Exception {
+        EthernetConnectionClient client = (EthernetConnectionClient) connectionClient;
+        client.setOutboxCapacity(64);
+        client.setImageReuse(false);
+        assertEquals(BackpressurePolicy.BLOCK, client.getBackpressurePolicy());
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(connectionClient.sendAsync(TSPLLabel.builder()
+                    .element(Bar.builder().xCoordinate(i).yCoordinate(10)
+                            .width(100).height(5).build())
+                    .build()));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .get(10, TimeUnit.SECONDS);
+        assertTrue(futures.stream().noneMatch(CompletableFuture::isCompletedExceptionally));
+        assertEquals(0, client.getOutboxBytes());
+
+        assertThrows(IllegalArgumentException.class, () -> client.setOutboxCapacity(0));
+    }
+
+    @Test
+    public void writeCoalescing() throws Exception {
+        EthernetConnectionClient client = (EthernetConnectionClient) connectionClient;
+        client.setWriteCoalescing(64 * 1024, 1, TimeUnit.SECONDS);
+
+        CompletableFuture<Void> label = connectionClient.sendAsync(TSPLLabel.builder()
+                .element(Bar.builder().xCoordinate(10).yCoordinate(10)
+                        .width(100).height(5).build())
+                .build());
+        Thread.sleep(200);
+        assertFalse(label.isDone());
+        assertTrue(client.getOutboxBytes() > 0);
+
+        // status polls are not delayed and take the pending label with them
+        TSPLCommandBuffer poll = new TSPLCommandBuffer()
+                .append(TSPLStatusPollCommands.STATUS.getCommand()).append(LF);
+        CompletableFuture<Void> status = connectionClient.sendAsync(poll);
+        status.get(500, TimeUnit.MILLISECONDS);
+        assertTrue(label.isDone());
+        assertEquals(0, client.getOutboxBytes());
+    }
+
+    @Test
+    public void queryWhileSenderBlocked() throws Exception {
+        EthernetConnectionClient client = (EthernetConnectionClient) connectionClient;
+        client.setOutboxCapacity(16);
+        client.setWriteCoalescing(64 * 1024, 10, TimeUnit.SECONDS);
+        TSPLLabel label = TSPLLabel.builder()
+                .element(Bar.builder().xCoordinate(10).yCoordinate(10)
+                        .width(100).height(5).build())
+                .build();
+
+        CompletableFuture<Void> first = connectionClient.sendAsync(label);
+        CompletableFuture<CompletableFuture<Void>> second =
+                CompletableFuture.supplyAsync(() -> connectionClient.sendAsync(label));
+        Thread.sleep(200);
+        assertFalse(second.isDone());
+
+        // the sender waits for room in the outbox without holding up the status query
+        CompletableFuture.supplyAsync(() -> connectionClient.query(TSPLStatusPollCommands.STATUS,
+                1, TimeUnit.SECONDS)).get(500, TimeUnit.MILLISECONDS);
+        second.get(1, TimeUnit.SECONDS).get(1, TimeUnit.SECONDS);
+        assertTrue(first.isDone());
+    }
+
+    @Test
+    public void blockedSendersNeverOverfill() throws Exception {
+        EthernetConnectionClient client = (EthernetConnectionClient) connectionClient;
+        client.setOutboxCapacity(100);
+        client.setWriteCoalescing(64 * 1024, 10, TimeUnit.SECONDS);
+        String message = "SOUND 1,1" + LF + "SOUND 2,2" + LF + "SOUND 3,3" + LF;
+        assertEquals(30, message.length());
+        connectionClient.send(message);
+        connectionClient.send(message);
+
+        // a query holds the session lock while the senders check for room
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch unlock = new CountDownLatch(1);
+        client.setFrameDecoder(new ReplyFrameDecoder() {
+            @Override
+            public void expect(ReplyShape shape) {
+                locked.countDown();
+                try {
+                    unlock.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.expect(shape);
+            }
+        });
+        ExecutorService executor = Executors.newCachedThreadPool();
+        executor.submit(() -> connectionClient.query(() -> "~!T" + LF, ReplyShape.LINE,
+                reply -> reply, 10, TimeUnit.SECONDS));
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        int senders = 8;
+        AtomicInteger sent = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < senders; i++) {
+            futures.add(executor.submit(() -> {
+                connectionClient.send(message);
+                sent.incrementAndGet();
+            }));
+        }
+        Thread.sleep(200);
+        unlock.countDown();
+        Thread.sleep(200);
+
+        // one more message fits, the others wait for room without overfilling the outbox
+        assertEquals(1, sent.get());
+        assertEquals(94, client.getOutboxBytes());
+
+        // immediate commands flush the outbox, letting the next senders in
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (sent.get() < senders && System.nanoTime() < deadline) {
+            connectionClient.query(TSPLStatusPollCommands.STATUS, 1, TimeUnit.SECONDS);
+            Thread.sleep(50);
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void droppedMessage() throws Exception {
+        EthernetConnectionClient client = (EthernetConnectionClient) connectionClient;
+        client.setOutboxCapacity(16);
+        client.setWriteCoalescing(64 * 1024, 10, TimeUnit.SECONDS);
+        client.setBackpressurePolicy(BackpressurePolicy.DROP);
+        CountDownLatch failed = new CountDownLatch(1);
+        client.addDataListener(new DataListener() {
+            @Override
+            public void messageSent(String message) {
+            }
+
+            @Override
+            public void messageReceived(String message) {
+            }
+
+            @Override
+            public void messageSendFailed(ConnectionClientException exception, String messageToSend) {
+                failed.countDown();
+            }
+        });
+        TSPLLabel label = TSPLLabel.builder()
+                .element(Bar.builder().xCoordinate(10).yCoordinate(10)
+                        .width(100).height(5).build())
+                .build();
+
+        CompletableFuture<Void> first = connectionClient.sendAsync(label);
+        CompletableFuture<Void> dropped = connectionClient.sendAsync(label);
+        assertFalse(first.isDone());
+        assertTrue(dropped.isCancelled());
+        assertEquals(1, client.getDroppedMessages());
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+    }
 }
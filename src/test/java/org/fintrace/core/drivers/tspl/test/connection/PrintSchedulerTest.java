@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.connection;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.commands.system.Print;
+import org.fintrace.core.drivers.tspl.connection.ConnectionState;
+import org.fintrace.core.drivers.tspl.connection.PrintJob;
+import org.fintrace.core.drivers.tspl.connection.PrintScheduler;
+import org.fintrace.core.drivers.tspl.connection.TenantStats;
+import org.fintrace.core.drivers.tspl.connection.USBConnectionClient;
+import org.fintrace.core.drivers.tspl.exceptions.PrinterException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+public class PrintSchedulerTest {
+
+    @Test
+    public void urgentJobPreemptsAtLabelBoundary() throws Exception {
+        GatedClient client = new GatedClient();
+        try (PrintScheduler scheduler = new PrintScheduler(client)) {
+            CompletableFuture<Void> bulk = scheduler.submit(job(0, null, 1, 2, 3));
+            client.entered.await(5, TimeUnit.SECONDS);
+            CompletableFuture<Void> urgent = scheduler.submit(job(10, null, 100));
+            assertEquals(2, scheduler.getQueuedJobs());
+            assertEquals(3, scheduler.getQueuedLabels());
+
+            client.gate.countDown();
+            bulk.get(5, TimeUnit.SECONDS);
+            urgent.get(5, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList(1, 100, 2, 3), client.printed);
+            assertEquals(2, scheduler.getCompletedJobs());
+            assertEquals(0, scheduler.getQueuedLabels());
+        }
+    }
+
+    @Test
+    public void earliestDeadlineFirst() throws Exception {
+        GatedClient client = new GatedClient();
+        try (PrintScheduler scheduler = new PrintScheduler(client)) {
+            scheduler.submit(job(0, null, 1));
+            client.entered.await(5, TimeUnit.SECONDS);
+            scheduler.submit(job(0, null, 2));
+            scheduler.submit(job(0, Duration.ofMinutes(10), 3));
+            scheduler.submit(job(0, Duration.ofMinutes(1), 4));
+            CompletableFuture<Void> last = scheduler.submit(job(-1, Duration.ofSeconds(1), 5));
+
+            client.gate.countDown();
+            last.get(5, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList(1, 4, 3, 2, 5), client.printed);
+            assertEquals(0, scheduler.getMissedDeadlines());
+        }
+    }
+
+    @Test
+    public void missedDeadlines() throws Exception {
+        GatedClient client = new GatedClient();
+        try (PrintScheduler scheduler = new PrintScheduler(client)) {
+            CompletableFuture<Void> late = scheduler.submit(job(0, Duration.ofMillis(1), 1));
+            client.entered.await(5, TimeUnit.SECONDS);
+            Thread.sleep(20);
+            client.gate.countDown();
+            late.get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, scheduler.getMissedDeadlines());
+            assertTrue(scheduler.getMaxLateness(TimeUnit.MILLISECONDS) >= 10);
+        }
+    }
+
+    @Test
+    public void failedLabelFailsItsJob() throws Exception {
+        GatedClient client = new GatedClient();
+        client.failing = 2;
+        client.gate.countDown();
+        try (PrintScheduler scheduler = new PrintScheduler(client)) {
+            CompletableFuture<Void> failed = scheduler.submit(job(0, null, 1, 2, 3));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof PrinterException);
+
+            scheduler.submit(job(0, null, 4)).get(5, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList(1, 4), client.printed);
+            assertEquals(1, scheduler.getFailedJobs());
+            assertEquals(1, scheduler.getCompletedJobs());
+        }
+    }
+
+    @Test
+    public void weightedFairQueuing() throws Exception {
+        GatedClient client = new GatedClient();
+        try (PrintScheduler scheduler = new PrintScheduler(client)) {
+            scheduler.setTenantWeight("packing", 2);
+            scheduler.submit(job("picking", 1));
+            client.entered.await(5, TimeUnit.SECONDS);
+            CompletableFuture<Void> picking = scheduler.submit(job("picking", 2, 3, 4, 5, 6, 7, 8, 9));
+            scheduler.submit(job("packing", 100, 101, 102, 103));
+            scheduler.submit(job("returns", 200, 201));
+            assertEquals(8, scheduler.getTenantStats("picking").getQueuedLabels());
+
+            client.gate.countDown();
+            picking.get(5, TimeUnit.SECONDS);
+            // packing sends two labels for one of the others, picking can not hold them back
+            assertEquals(Arrays.asList(1, 100, 200, 101, 2, 102, 201, 103, 3, 4, 5, 6, 7, 8, 9),
+                    client.printed);
+
+            TenantStats packing = scheduler.getTenantStats("packing");
+            assertEquals(2, packing.getWeight());
+            assertEquals(4, packing.getSentLabels());
+            assertEquals(0, packing.getQueuedLabels());
+            assertEquals(1, packing.getStartedJobs());
+            assertTrue(scheduler.getTenantStats("picking").getMaxWait(TimeUnit.NANOSECONDS) > 0);
+            assertEquals(9, scheduler.getTenantStats().get("picking").getSentLabels());
+            assertEquals(3, scheduler.getTenantStats().size());
+        }
+    }
+
+    @Test
+    public void urgentJobBorrowsTurnsOfItsTenant() throws Exception {
+        GatedClient client = new GatedClient();
+        try (PrintScheduler scheduler = new PrintScheduler(client)) {
+            scheduler.setMaxBorrowedLabels(2);
+            scheduler.submit(job("bulk", 1));
+            client.entered.await(5, TimeUnit.SECONDS);
+            scheduler.submit(job("bulk", 2, 3, 4));
+            scheduler.submit(job("picking", 10, 11));
+            scheduler.submit(job("packing", 20, 21));
+            CompletableFuture<Void> urgent = scheduler.submit(PrintJob.builder().tenant("ops")
+                    .priority(10).label(label(900)).label(label(901)).label(label(902)).build());
+
+            client.gate.countDown();
+            urgent.get(5, TimeUnit.SECONDS);
+            scheduler.submit(job("bulk", 5)).get(5, TimeUnit.SECONDS);
+            // the urgent job does not wait for the turns of the other tenants, but its
+            // tenant gets at most two labels ahead of its share
+            assertEquals(Arrays.asList(1, 900, 901, 10, 20, 902), client.printed.subList(0, 6));
+            assertEquals(12, client.printed.size());
+        }
+    }
+
+    private static TSPLLabel label(int label) {
+        return TSPLLabel.builder().element(Print.builder().nbLabels(label).build()).build();
+    }
+
+    private static PrintJob job(String tenant, int... labels) {
+        PrintJob.PrintJobBuilder builder = PrintJob.builder().tenant(tenant);
+        for (int label : labels) {
+            builder.label(TSPLLabel.builder().element(Print.builder().nbLabels(label).build()).build());
+        }
+        return builder.build();
+    }
+
+    private static PrintJob job(int priority, Duration deadline, int... labels) {
+        PrintJob.PrintJobBuilder builder = PrintJob.builder().priority(priority).deadline(deadline);
+        for (int label : labels) {
+            builder.label(TSPLLabel.builder().element(Print.builder().nbLabels(label).build()).build());
+        }
+        return builder.build();
+    }
+
+    /**
+     * holds the first label until the gate opens.
+     */
+    static class GatedClient extends USBConnectionClient {
+        final List<Integer> printed = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        volatile int failing;
+
+        GatedClient() {
+            super((short) 0);
+            getAndSetState(ConnectionState.CONNECTED);
+            setSetupElision(false);
+            setImageReuse(false);
+        }
+
+        @Override
+        protected void send(byte[] bs) {
+        }
+
+        @Override
+        protected void transmit(TSPLCommandBuffer buffer) {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            int label = Integer.parseInt(buffer.toString().trim().substring("PRINT ".length()));
+            if (label == failing) {
+                throw new PrinterException("Printer is not connected");
+            }
+            printed.add(label);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.connection;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.connection.ConnectionState;
+import org.fintrace.core.drivers.tspl.connection.PrintSpool;
+import org.fintrace.core.drivers.tspl.connection.USBConnectionClient;
+import org.fintrace.core.drivers.tspl.exceptions.PrinterException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+public class PrintSpoolTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void replaysUncommittedFrames() throws IOException {
+        try (PrintSpool spool = new PrintSpool(directory, 4096)) {
+            long first = append(spool, "PRINT 1\n");
+            append(spool, "PRINT 2\n");
+            append(spool, "PRINT 3\n");
+            spool.commit(first);
+
+            assertEquals(list("PRINT 2\n", "PRINT 3\n"), replay(spool));
+            assertTrue(spool.hasPending());
+
+            spool.commit(spool.getEndOffset());
+            assertFalse(spool.hasPending());
+            assertEquals(list(), replay(spool));
+        }
+    }
+
+    @Test
+    public void recoversAfterRestart() throws IOException {
+        long end;
+        try (PrintSpool spool = new PrintSpool(directory, 4096)) {
+            spool.commit(append(spool, "PRINT 1\n"));
+            append(spool, "PRINT 2\n");
+            end = spool.getEndOffset();
+        }
+
+        try (PrintSpool spool = new PrintSpool(directory, 4096)) {
+            assertEquals(end, spool.getEndOffset());
+            assertEquals(list("PRINT 2\n"), replay(spool));
+            append(spool, "PRINT 3\n");
+            assertEquals(list("PRINT 2\n", "PRINT 3\n"), replay(spool));
+        }
+    }
+
+    @Test
+    public void dropsTornRecord() throws IOException {
+        long first;
+        try (PrintSpool spool = new PrintSpool(directory, 4096)) {
+            first = append(spool, "PRINT 1\n");
+            append(spool, "PRINT 2\n");
+        }
+        try (RandomAccessFile segment = new RandomAccessFile(segments().get(0).toFile(), "rw")) {
+            // last byte of the second frame
+            segment.seek(first + 8 + 7);
+            segment.write('X');
+        }
+
+        try (PrintSpool spool = new PrintSpool(directory, 4096)) {
+            assertEquals(first, spool.getEndOffset());
+            assertEquals(list("PRINT 1\n"), replay(spool));
+            append(spool, "PRINT 4\n");
+            assertEquals(list("PRINT 1\n", "PRINT 4\n"), replay(spool));
+        }
+    }
+
+    @Test
+    public void rollsOverAndCompacts() throws Exception {
+        List<String> frames = new ArrayList<>();
+        try (PrintSpool spool = new PrintSpool(directory, 256)) {
+            for (int i = 0; i < 100; i++) {
+                frames.add("TEXT 10,10,\"3\",0,1,1,\"" + i + "\"\n");
+                append(spool, frames.get(i));
+            }
+            assertTrue(spool.getSegmentCount() > 10);
+            assertEquals(frames, replay(spool));
+            assertThrows(IllegalArgumentException.class, () -> spool.append(new byte[256], 0, 256));
+
+            spool.commit(spool.getEndOffset());
+            spool.compact();
+            assertEquals(1, spool.getSegmentCount());
+            assertTrue(segments().size() <= 2);
+        }
+
+        try (PrintSpool spool = new PrintSpool(directory, 256)) {
+            assertFalse(spool.hasPending());
+            append(spool, "PRINT 1\n");
+            assertEquals(list("PRINT 1\n"), replay(spool));
+        }
+    }
+
+    @Test
+    public void clientReplaysUnsentMessages() throws Exception {
+        SpooledClient client = new SpooledClient();
+        PrintSpool spool = new PrintSpool(directory, 4096);
+        client.setSpool(spool);
+
+        client.send("PRINT 1\n");
+        assertFalse(spool.hasPending());
+
+        client.fail = true;
+        assertThrows(PrinterException.class, () -> client.send("PRINT 2\n"));
+        assertTrue(spool.hasPending());
+
+        client.fail = false;
+        client.reconnected();
+        client.send("PRINT 3\n");
+        assertEquals(list("PRINT 1\n", "PRINT 2\n", "PRINT 3\n"), client.written);
+        assertFalse(spool.hasPending());
+        assertEquals(0, client.replaySpool());
+
+        // unsent when the process ended
+        client.fail = true;
+        assertThrows(PrinterException.class, () -> client.send("PRINT 4\n"));
+        spool.close();
+
+        SpooledClient restarted = new SpooledClient();
+        try (PrintSpool reopened = new PrintSpool(directory, 4096)) {
+            restarted.setSpool(reopened);
+            assertEquals(list("PRINT 4\n"), restarted.written);
+            assertFalse(reopened.hasPending());
+        }
+    }
+
+    @Test
+    public void failedFrameIsReplayed() throws Exception {
+        SpooledClient client = new SpooledClient();
+        PrintSpool spool = new PrintSpool(directory, 4096);
+        client.setSpool(spool);
+
+        client.deferred = true;
+        client.send("PRINT 1\n");
+        client.send("PRINT 2\n");
+        client.deferred = false;
+        client.pending.get(0).completeExceptionally(new PrinterException("Failed to send message."));
+        client.pending.get(1).complete(null);
+        // the second frame does not commit past the failed first one
+        assertTrue(spool.hasPending());
+
+        // only the failed frame is sent again, in front of the next message, and it waits
+        // for room in the transport like any message
+        client.send("PRINT 3\n");
+        assertEquals(list("PRINT 1\n", "PRINT 2\n", "PRINT 1\n", "PRINT 3\n"), client.written);
+        assertEquals(4, client.awaited.get());
+        assertFalse(spool.hasPending());
+        assertEquals(0, client.replaySpool());
+        spool.close();
+    }
+
+    static class SpooledClient extends USBConnectionClient {
+        final List<String> written = Collections.synchronizedList(new ArrayList<>());
+        final List<CompletableFuture<Void>> pending = new ArrayList<>();
+        volatile boolean fail;
+        volatile boolean deferred;
+        final AtomicInteger awaited = new AtomicInteger();
+
+        SpooledClient() {
+            super((short) 0);
+            getAndSetState(ConnectionState.CONNECTED);
+        }
+
+        void reconnected() {
+            notifyConnection();
+        }
+
+        @Override
+        protected void send(byte[] bs) {
+        }
+
+        @Override
+        protected void awaitTransmit(int length) {
+            awaited.incrementAndGet();
+        }
+
+        @Override
+        protected void transmit(TSPLCommandBuffer buffer) {
+            if (fail) {
+                throw new PrinterException("Printer is not connected");
+            }
+            written.add(buffer.toString());
+        }
+
+        @Override
+        protected CompletableFuture<Void> transmitAsync(TSPLCommandBuffer buffer) {
+            if (!deferred) {
+                return super.transmitAsync(buffer);
+            }
+            transmit(buffer);
+            CompletableFuture<Void> sent = new CompletableFuture<>();
+            pending.add(sent);
+            return sent;
+        }
+    }
+
+    private static long append(PrintSpool spool, String frame) {
+        byte[] bytes = frame.getBytes(US_ASCII);
+        return spool.append(bytes, 0, bytes.length);
+    }
+
+    private static List<String> replay(PrintSpool spool) {
+        List<String> frames = new ArrayList<>();
+        spool.replay((frame, offset) -> {
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            frames.add(new String(bytes, US_ASCII));
+        });
+        return frames;
+    }
+
+    private static List<String> list(String... frames) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, frames);
+        return list;
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.spool")) {
+            stream.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.connection;
+
+import org.fintrace.core.drivers.tspl.connection.ReplyFrameDecoder;
+import org.fintrace.core.drivers.tspl.connection.ReplyShape;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.fintrace.core.drivers.tspl.commands.status.TSPLStatusPollCommands.STATUS;
+import static org.fintrace.core.drivers.tspl.commands.status.TSPLStatusPollCommands.STATUS_LONG;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+public class ReplyFrameDecoderTest {
+
+    private final List<String> frames = new ArrayList<>();
+    private final ReplyFrameDecoder decoder = new ReplyFrameDecoder();
+
+    private void receive(ByteBuffer buffer, String bytes) {
+        buffer.put(bytes.getBytes(US_ASCII));
+        buffer.flip();
+        decoder.decode(buffer, (shape, frame) -> {
+            byte[] data = new byte[frame.remaining()];
+            frame.get(data);
+            frames.add(shape.getName() + ":" + new String(data, US_ASCII));
+        });
+        buffer.compact();
+    }
+
+    @Test
+    public void replyShapes() {
+        byte[] status = STATUS.getCommand().getBytes(US_ASCII);
+        assertSame(ReplyShape.STATUS, ReplyShape.of(status, status.length));
+        byte[] statusLong = STATUS_LONG.getCommand().getBytes(US_ASCII);
+        assertSame(ReplyShape.STATUS_LONG, ReplyShape.of(statusLong, statusLong.length));
+        assertSame(ReplyShape.LINE, ReplyShape.of("~!T\n".getBytes(US_ASCII), 4));
+        assertNull(ReplyShape.of("CLS\n".getBytes(US_ASCII), 4));
+    }
+
+    @Test
+    public void framing() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        decoder.expect(ReplyShape.STATUS);
+        decoder.expect(ReplyShape.STATUS_LONG);
+        decoder.expect(ReplyShape.LINE);
+
+        // a status byte without terminator, the long status split over reads
+        receive(buffer, "\u0000\u0002@@");
+        receive(buffer, "@@\u0003\r\nTTP-2");
+        receive(buffer, "44 Pro\r\n\r\nunsolicited\n");
+
+        assertEquals("STATUS:\u0000", frames.get(0));
+        assertEquals("STATUS_LONG:\u0002@@@@\u0003\r\n", frames.get(1));
+        assertEquals("LINE:TTP-244 Pro\r\n", frames.get(2));
+        // the lone line break is skipped
+        assertEquals("UNSOLICITED:unsolicited\n", frames.get(3));
+        assertEquals(4, frames.size());
+        assertEquals(0, decoder.getExpectedCount());
+    }
+
+    @Test
+    public void lineBreakBeforeStatus() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        decoder.expect(ReplyShape.LINE);
+        decoder.expect(ReplyShape.STATUS);
+        decoder.expect(ReplyShape.LINE);
+        decoder.expect(ReplyShape.STATUS);
+
+        // ~!T, then a status of paper jam and ribbon out: 0x0A
+        receive(buffer, "TTP-244 Pro\r\n\n");
+        // a line ending with CR alone, then a status of 0x0D
+        receive(buffer, "TTP-244 Pro\r\r");
+
+        assertEquals("LINE:TTP-244 Pro\r\n", frames.get(0));
+        assertEquals("STATUS:\n", frames.get(1));
+        assertEquals("LINE:TTP-244 Pro\r", frames.get(2));
+        assertEquals("STATUS:\r", frames.get(3));
+        assertEquals(0, decoder.getExpectedCount());
+
+        // the LF of a CR LF split over two reads is not a line of its own
+        decoder.expect(ReplyShape.LINE);
+        decoder.expect(ReplyShape.LINE);
+        receive(buffer, "A\r");
+        receive(buffer, "\nB\n");
+        assertEquals("LINE:A\r", frames.get(4));
+        assertEquals("LINE:B\n", frames.get(5));
+    }
+
+    @Test
+    public void multiLineBlock() {
+        ReplyShape files = ReplyShape.delimited("FILES", (byte) '\r', (byte) '\n', (byte) '\r', (byte) '\n');
+        assertArrayEquals(new byte[]{'\r', '\n', '\r', '\n'}, files.getTerminator());
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        decoder.expect(files);
+        receive(buffer, "LOGO.BMP\r\nFONT.TTF\r");
+        receive(buffer, "\n\r");
+        assertEquals(0, frames.size());
+        receive(buffer, "\n");
+        assertEquals("FILES:LOGO.BMP\r\nFONT.TTF\r\n\r\n", frames.get(0));
+
+        decoder.expect(files);
+        decoder.reset();
+        assertEquals(0, decoder.getExpectedCount());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.connection;
+
+import org.fintrace.core.drivers.tspl.commands.TSPLCommandBuffer;
+import org.fintrace.core.drivers.tspl.commands.status.PrinterCondition;
+import org.fintrace.core.drivers.tspl.connection.ConnectionState;
+import org.fintrace.core.drivers.tspl.connection.StatusPoller;
+import org.fintrace.core.drivers.tspl.connection.USBConnectionClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+public class StatusPollerTest {
+
+    private final StatusPoller poller = new StatusPoller(5, TimeUnit.MILLISECONDS);
+
+    /**
+     * answers status polls with the current status byte.
+     */
+    static class PrinterClient extends USBConnectionClient {
+        volatile byte status;
+        volatile int polls;
+
+        PrinterClient() { super((short) 0); getAndSetState(ConnectionState.CONNECTED); }
+        @Override protected void send(byte[] bs) { }
+        @Override protected void transmit(TSPLCommandBuffer buffer) {
+            if (buffer.size() > 2 && buffer.array()[0] == 27 && buffer.array()[2] == '?') {
+                polls++;
+                getFrameDecoder().decode(ByteBuffer.wrap(new byte[]{status}), frameHandler);
+            }
+        }
+        void connected(boolean connected) {
+            getAndSetState(connected ? ConnectionState.CONNECTED : ConnectionState.DISCONNECTED);
+        }
+    }
+
+    @AfterEach
+    public void shutdown() {
+        poller.shutdown();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void adaptiveInterval() throws InterruptedException {
+        poller.setIntervals(20, 160, TimeUnit.MILLISECONDS);
+        PrinterClient idle = new PrinterClient();
+        PrinterClient printing = new PrinterClient();
+        printing.status = 0x20;
+        poller.add(idle);
+        poller.add(printing);
+
+        // an idle, ready printer backs off to the slow interval
+        await(() -> poller.getInterval(idle, TimeUnit.MILLISECONDS) == 160);
+        assertTrue(idle.isReady(1, TimeUnit.SECONDS));
+        assertEquals(20, poller.getInterval(printing, TimeUnit.MILLISECONDS));
+        assertTrue(printing.getLastStatus().has(PrinterCondition.PRINTING));
+
+        // sending labels speeds the polls up again
+        idle.send("CLS\n");
+        await(() -> poller.getInterval(idle, TimeUnit.MILLISECONDS) == 20);
+
+        // so does an error
+        printing.status = 0x04;
+        await(() -> printing.getLastStatus().has(PrinterCondition.PAPER_OUT));
+        printing.status = 0x00;
+        await(() -> poller.getInterval(printing, TimeUnit.MILLISECONDS) == 160);
+
+        // disconnected printers are polled slowly
+        idle.connected(false);
+        await(() -> poller.getInterval(idle, TimeUnit.MILLISECONDS) == 160);
+        assertTrue(idle.getLastStatus() != null);
+    }
+
+    @Test
+    public void manyPrinters() throws InterruptedException {
+        poller.setIntervals(10, 10, TimeUnit.MILLISECONDS);
+        List<PrinterClient> printers = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            PrinterClient printer = new PrinterClient();
+            printers.add(printer);
+            poller.add(printer);
+            poller.add(printer);
+        }
+        assertEquals(500, poller.getClientCount());
+        await(() -> printers.stream().allMatch(p -> p.polls >= 3));
+
+        PrinterClient removed = printers.get(0);
+        poller.remove(removed);
+        assertEquals(-1, poller.getInterval(removed, TimeUnit.MILLISECONDS));
+        Thread.sleep(20);
+        int polls = removed.polls;
+        Thread.sleep(100);
+        assertEquals(polls, removed.polls);
+        assertTrue(poller.getPollCount() >= 1500);
+    }
+
+    @Test
+    public void invalidSettings() {
+        assertThrows(IllegalArgumentException.class,
+                () -> poller.setIntervals(2, 1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class,
+                () -> poller.setPollTimeout(0, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class,
+                () -> new StatusPoller(0, TimeUnit.MILLISECONDS));
+    }
+}
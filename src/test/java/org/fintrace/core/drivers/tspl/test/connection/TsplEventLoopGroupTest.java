@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 fintrace (https://fintrace.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintrace.core.drivers.tspl.test.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.fintrace.core.drivers.tspl.commands.label.Bar;
+import org.fintrace.core.drivers.tspl.commands.label.TSPLLabel;
+import org.fintrace.core.drivers.tspl.connection.EthernetConnectionClient;
+import org.fintrace.core.drivers.tspl.connection.TsplEventLoopGroup;
+import org.fintrace.core.drivers.tspl.exceptions.ConnectionClientException;
+import org.fintrace.core.drivers.tspl.listeners.DataListener;
+import org.fintrace.core.drivers.tspl.listeners.OverflowPolicy;
+import org.fintrace.core.drivers.tspl.test.TcpServerMock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Venkaiah Chowdary Koneru
+ */
+@Slf4j
+public class TsplEventLoopGroupTest {
+
+    private TcpServerMock server;
+
+    @BeforeEach
+    public void startTCPEmulator() throws IOException, InterruptedException {
+        server = new TcpServerMock(9101);
+        new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                log.error("Error starting mock server", e);
+            }
+        }).start();
+
+        while (!server.isRunning()) {
+            Thread.sleep(100);
+        }
+    }
+
+    @AfterEach
+    public void clear() {
+        server.stop();
+    }
+
+    @Test
+    public void sharedLoop() throws Exception {
+        TsplEventLoopGroup group = new TsplEventLoopGroup(1);
+        List<EthernetConnectionClient> clients = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            EthernetConnectionClient client = new EthernetConnectionClient("localhost", 9101, group);
+            client.init();
+            client.connect();
+            clients.add(client);
+        }
+        for (EthernetConnectionClient client : clients) {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!client.isConnected() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(client.isConnected());
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            for (EthernetConnectionClient client : clients) {
+                futures.add(client.sendAsync(TSPLLabel.builder()
+                        .element(Bar.builder().xCoordinate(i).yCoordinate(10)
+                                .width(100).height(5).build())
+                        .build()));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, group.getThreadCount());
+        assertTrue(futures.stream().noneMatch(CompletableFuture::isCompletedExceptionally));
+
+        group.shutdown();
+        for (EthernetConnectionClient client : clients) {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (client.isConnected() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertFalse(client.isConnected());
+        }
+        assertTrue(group.isShutdown());
+    }
+
+    @Test
+    public void slowListenerOnSharedLoop() throws Exception {
+        TsplEventLoopGroup group = new TsplEventLoopGroup(1);
+        EthernetConnectionClient slow = new EthernetConnectionClient("localhost", 9101, group);
+        EthernetConnectionClient other = new EthernetConnectionClient("localhost", 9101, group);
+        CountDownLatch release = new CountDownLatch(1);
+        slow.setListenerQueueCapacity(1);
+        slow.setListenerOverflowPolicy(OverflowPolicy.BLOCK);
+        slow.addDataListener(new DataListener() {
+            @Override
+            public void messageSent(String message) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void messageReceived(String message) {
+            }
+
+            @Override
+            public void messageSendFailed(ConnectionClientException exception, String messageToSend) {
+            }
+        });
+        for (EthernetConnectionClient client : Arrays.asList(slow, other)) {
+            client.init();
+            client.connect();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!client.isConnected() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(client.isConnected());
+        }
+
+        try {
+            // the loop notifies the sent messages, it does not wait for the stuck listener
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(slow.sendAsync(label(i)));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .get(5, TimeUnit.SECONDS);
+            other.sendAsync(label(0)).get(5, TimeUnit.SECONDS);
+            assertTrue(slow.getDroppedListenerEvents() > 0);
+        } finally {
+            release.countDown();
+            group.shutdown();
+        }
+    }
+
+    private static TSPLLabel label(int x) {
+        return TSPLLabel.builder()
+                .element(Bar.builder().xCoordinate(x).yCoordinate(10).width(100).height(5).build())
+                .build();
+    }
+}